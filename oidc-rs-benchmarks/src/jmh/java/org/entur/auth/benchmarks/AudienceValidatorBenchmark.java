@@ -0,0 +1,70 @@
+package org.entur.auth.benchmarks;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.entur.auth.spring.common.server.AudienceValidator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Audience validation runs for every request. Run with {@code -prof gc}, as configured in the
+ * build, to check that {@code gc.alloc.rate.norm} stays at zero bytes per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AudienceValidatorBenchmark {
+    /** Number of configured audiences, the token's audience being the last one. */
+    @Param({"1", "4", "50"})
+    private int audiences;
+
+    private AudienceValidator audienceValidator;
+    private Jwt jwt;
+    private Jwt jwtWithOtherAudience;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Set<String> configured =
+                IntStream.range(1, audiences)
+                        .mapToObj(index -> "https://api" + index + ".dev.entur.io")
+                        .collect(Collectors.toSet());
+        configured.add(BenchmarkIssuers.AUDIENCE);
+        audienceValidator = new AudienceValidator(configured);
+
+        jwt = BenchmarkIssuers.jwt(BenchmarkIssuers.TokenSize.SMALL);
+        jwtWithOtherAudience =
+                Jwt.withTokenValue(jwt.getTokenValue())
+                        .headers(headers -> headers.putAll(jwt.getHeaders()))
+                        .claims(claims -> claims.putAll(jwt.getClaims()))
+                        .audience(List.of("https://other.dev.entur.io"))
+                        .build();
+    }
+
+    @Benchmark
+    public OAuth2TokenValidatorResult validAudience() {
+        return audienceValidator.validate(jwt);
+    }
+
+    @Benchmark
+    public OAuth2TokenValidatorResult invalidAudience() {
+        return audienceValidator.validate(jwtWithOtherAudience);
+    }
+}
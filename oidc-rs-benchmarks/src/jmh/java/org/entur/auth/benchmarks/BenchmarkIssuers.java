@@ -0,0 +1,127 @@
+package org.entur.auth.benchmarks;
+
+import static org.entur.auth.junit.jwt.EnturProvider.TENANT_INTERNAL;
+import static org.entur.auth.junit.jwt.EnturProvider.TENANT_PARTNER;
+import static org.entur.auth.junit.jwt.EnturProvider.TENANT_PERSON;
+import static org.entur.auth.junit.jwt.EnturProvider.TENANT_TRAVELLER;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import lombok.Getter;
+import lombok.NonNull;
+import org.entur.auth.junit.jwt.EnturProvider;
+import org.entur.auth.junit.jwt.JwtTokenFactory;
+import org.entur.auth.junit.jwt.KeyAlgorithm;
+import org.entur.auth.junit.tenant.WireMockAuthenticationServer;
+import org.entur.auth.spring.common.server.IssuerProperties;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Mock authorization servers for benchmarks: starts WireMock serving one JWKS per issuer and mints
+ * a token from the {@code partner} issuer, which is configured in every setup.
+ */
+final class BenchmarkIssuers implements AutoCloseable {
+    static final String AUDIENCE = "https://api.dev.entur.io";
+
+    private static final List<String> PREDEFINED_TENANTS =
+            List.of(TENANT_PARTNER, TENANT_INTERNAL, TENANT_TRAVELLER, TENANT_PERSON);
+
+    /** Size of the minted token: only registered claims, or a realistic set of custom claims. */
+    enum TokenSize {
+        SMALL,
+        LARGE
+    }
+
+    private final WireMockAuthenticationServer server;
+    private final @Getter List<IssuerProperties> issuerProperties;
+    private final @Getter String token;
+
+    BenchmarkIssuers(
+            final int issuerCount,
+            final @NonNull KeyAlgorithm keyAlgorithm,
+            final @NonNull TokenSize tokenSize) {
+        var provider = new EnturProvider();
+        var tenants =
+                IntStream.range(0, issuerCount)
+                        .mapToObj(
+                                index ->
+                                        index < PREDEFINED_TENANTS.size()
+                                                ? PREDEFINED_TENANTS.get(index)
+                                                : "tenant" + index)
+                        .toList();
+        var tokenFactory = new JwtTokenFactory(keyAlgorithm, provider, tenants.toArray(String[]::new));
+
+        server = new WireMockAuthenticationServer();
+        tokenFactory.createCertificates().forEach(server::setJsonStubMappings);
+
+        var baseUrl = "http://localhost:" + server.getPort();
+        issuerProperties = new ArrayList<>();
+        tenants.forEach(
+                tenant ->
+                        issuerProperties.add(
+                                IssuerProperties.builder()
+                                        .issuerUrl(provider.getIssuerUrl(tenant))
+                                        .certificateUrl(baseUrl + provider.getCertPath(tenant))
+                                        .build()));
+
+        token =
+                tokenFactory
+                        .jwtTokenBuilder()
+                        .provider(provider)
+                        .domain(TENANT_PARTNER)
+                        .subject("subject")
+                        .audience(new String[] {AUDIENCE})
+                        .claims(claims(tokenSize))
+                        .expiresAt(Instant.now().plus(1, ChronoUnit.DAYS))
+                        .create();
+    }
+
+    /**
+     * Custom claims for the given token size. The large token carries the claims seen on partner
+     * tokens in production, with a long permission list.
+     */
+    static Map<String, Object> claims(final @NonNull TokenSize tokenSize) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(EnturProvider.CLAIM_ORGANISATION_ID, 1L);
+        if (tokenSize == TokenSize.LARGE) {
+            claims.put(EnturProvider.CLAIM_CUSTOMER_NUMBER, "1234567890");
+            claims.put(EnturProvider.CLAIM_PERMISSIONS, permissions(100));
+            claims.put("azp", "benchmark-client");
+            claims.put("scope", "openid profile email read write");
+            claims.put("preferred_username", "benchmark-user");
+            claims.put("email", "benchmark@entur.org");
+            claims.put("email_verified", true);
+        }
+        return claims;
+    }
+
+    /** A decoded token from the {@code partner} issuer, for benchmarking claim handling alone. */
+    static Jwt jwt(final @NonNull TokenSize tokenSize) {
+        var issuedAt = Instant.now();
+        return Jwt.withTokenValue("token")
+                .header("alg", "RS256")
+                .issuer(new EnturProvider().getIssuerUrl(TENANT_PARTNER))
+                .subject("subject")
+                .audience(List.of(AUDIENCE))
+                .claims(jwtClaims -> jwtClaims.putAll(claims(tokenSize)))
+                .issuedAt(issuedAt)
+                .expiresAt(issuedAt.plus(1, ChronoUnit.DAYS))
+                .build();
+    }
+
+    private static String[] permissions(final int count) {
+        return IntStream.range(0, count)
+                .mapToObj(index -> "permission:resource-" + index + ":read")
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public void close() {
+        server.close();
+    }
+}
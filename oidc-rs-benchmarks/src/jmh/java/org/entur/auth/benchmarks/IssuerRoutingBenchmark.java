@@ -0,0 +1,137 @@
+package org.entur.auth.benchmarks;
+
+import static org.entur.auth.junit.jwt.EnturProvider.TENANT_PARTNER;
+
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.JWSAlgorithmFamilyJWSKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.entur.auth.junit.jwt.EnturProvider;
+import org.entur.auth.junit.jwt.JwtTokenFactory;
+import org.entur.auth.junit.tenant.WireMockAuthenticationServer;
+import org.entur.auth.spring.common.server.DefaultAuthProviders;
+import org.entur.auth.spring.common.server.EnturAuthProperties;
+import org.entur.auth.spring.common.server.IssuerProperties;
+import org.entur.auth.spring.common.server.TenantJwtGrantedAuthoritiesConverter;
+import org.entur.auth.spring.config.server.IssuerAuthenticationManagerResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationProvider;
+import org.springframework.security.oauth2.server.resource.authentication.JwtIssuerAuthenticationManagerResolver;
+
+/**
+ * Compares issuer routing through Spring's {@link JwtIssuerAuthenticationManagerResolver} and
+ * {@link NimbusJwtDecoder}, which parse every token twice, with {@link
+ * IssuerAuthenticationManagerResolver}, which parses it once.
+ *
+ * <p>Both pipelines share the same JWK source, so the difference is the parsing alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IssuerRoutingBenchmark {
+    private WireMockAuthenticationServer server;
+    private MockHttpServletRequest request;
+    private BearerTokenAuthenticationToken authentication;
+
+    private IssuerAuthenticationManagerResolver singleParseResolver;
+    private JwtIssuerAuthenticationManagerResolver springResolver;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        var provider = new EnturProvider();
+        var tokenFactory = new JwtTokenFactory(provider, TENANT_PARTNER);
+
+        server = new WireMockAuthenticationServer();
+        tokenFactory.createCertificates().forEach(server::setJsonStubMappings);
+
+        var token =
+                tokenFactory
+                        .jwtTokenBuilder()
+                        .provider(provider)
+                        .domain(TENANT_PARTNER)
+                        .subject("subject")
+                        .claims(Map.of(EnturProvider.CLAIM_ORGANISATION_ID, 1L))
+                        .expiresAt(Instant.now().plus(1, ChronoUnit.DAYS))
+                        .create();
+        authentication = new BearerTokenAuthenticationToken(token);
+        request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+
+        var issuerUrl = provider.getIssuerUrl(TENANT_PARTNER);
+        var authoritiesConverter = new TenantJwtGrantedAuthoritiesConverter(new DefaultAuthProviders());
+        singleParseResolver =
+                IssuerAuthenticationManagerResolver.builder()
+                        .enturAuthProperties(new EnturAuthProperties())
+                        .authoritiesConverter(authoritiesConverter)
+                        .build();
+        singleParseResolver.addIssuer(
+                IssuerProperties.builder()
+                        .issuerUrl(issuerUrl)
+                        .certificateUrl(
+                                "http://localhost:" + server.getPort() + provider.getCertPath(TENANT_PARTNER))
+                        .build());
+
+        JWKSource<SecurityContext> jwkSource = singleParseResolver.getRemoteJWKSets().get(0)::get;
+        springResolver =
+                new JwtIssuerAuthenticationManagerResolver(
+                        Map.of(issuerUrl, createSpringAuthenticationManager(jwkSource, authoritiesConverter))
+                                ::get);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        singleParseResolver.close();
+        server.close();
+    }
+
+    @Benchmark
+    public Authentication springIssuerResolver() {
+        return springResolver.resolve(request).authenticate(authentication);
+    }
+
+    @Benchmark
+    public Authentication singleParseIssuerResolver() {
+        return singleParseResolver.resolve(request).authenticate(authentication);
+    }
+
+    private static AuthenticationManager createSpringAuthenticationManager(
+            JWKSource<SecurityContext> jwkSource,
+            TenantJwtGrantedAuthoritiesConverter authoritiesConverter) {
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        try {
+            jwtProcessor.setJWSKeySelector(JWSAlgorithmFamilyJWSKeySelector.fromJWKSource(jwkSource));
+        } catch (Exception ex) {
+            throw new RuntimeException(ex.getMessage(), ex);
+        }
+
+        var jwtAuthenticationConverter = new JwtAuthenticationConverter();
+        jwtAuthenticationConverter.setJwtGrantedAuthoritiesConverter(authoritiesConverter);
+        var authenticationProvider = new JwtAuthenticationProvider(new NimbusJwtDecoder(jwtProcessor));
+        authenticationProvider.setJwtAuthenticationConverter(jwtAuthenticationConverter);
+        return authenticationProvider::authenticate;
+    }
+}
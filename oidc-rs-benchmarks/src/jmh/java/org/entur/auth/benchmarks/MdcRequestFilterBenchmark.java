@@ -0,0 +1,61 @@
+package org.entur.auth.benchmarks;
+
+import jakarta.servlet.FilterChain;
+import java.util.concurrent.TimeUnit;
+import org.entur.auth.spring.common.mdc.MdcProperties;
+import org.entur.auth.spring.config.mdc.MdcRequestFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+/** {@link MdcRequestFilter} with the default mappings around an empty filter chain. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MdcRequestFilterBenchmark {
+    @Param({"SMALL", "LARGE"})
+    private BenchmarkIssuers.TokenSize tokenSize;
+
+    private final FilterChain chain = (request, response) -> {};
+
+    private MdcRequestFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        filter = new MdcRequestFilter(new MdcProperties());
+        request = new MockHttpServletRequest();
+        response = new MockHttpServletResponse();
+
+        SecurityContextHolder.getContext()
+                .setAuthentication(new JwtAuthenticationToken(BenchmarkIssuers.jwt(tokenSize)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public void doFilter() throws Exception {
+        filter.doFilter(request, response, chain);
+    }
+}
@@ -0,0 +1,82 @@
+package org.entur.auth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.entur.auth.junit.jwt.KeyAlgorithm;
+import org.entur.auth.spring.common.server.DefaultAuthProviders;
+import org.entur.auth.spring.common.server.EnturAuthProperties;
+import org.entur.auth.spring.common.server.TenantJwtGrantedAuthoritiesConverter;
+import org.entur.auth.spring.config.server.ReactiveIssuerAuthenticationManagerResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+
+/** Full reactive validation path: issuer routing, signature verification and claim conversion. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReactiveIssuerAuthenticationManagerResolverBenchmark {
+    @Param({"1", "4", "50"})
+    private int issuers;
+
+    @Param({"RS256", "ES256", "EdDSA"})
+    private KeyAlgorithm algorithm;
+
+    @Param({"SMALL", "LARGE"})
+    private BenchmarkIssuers.TokenSize tokenSize;
+
+    private BenchmarkIssuers benchmarkIssuers;
+    private ReactiveIssuerAuthenticationManagerResolver resolver;
+    private MockServerWebExchange exchange;
+    private BearerTokenAuthenticationToken authentication;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        benchmarkIssuers = new BenchmarkIssuers(issuers, algorithm, tokenSize);
+
+        resolver =
+                ReactiveIssuerAuthenticationManagerResolver.builder()
+                        .enturAuthProperties(new EnturAuthProperties())
+                        .authoritiesConverter(
+                                new TenantJwtGrantedAuthoritiesConverter(new DefaultAuthProviders()))
+                        .build();
+        benchmarkIssuers.getIssuerProperties().forEach(resolver::addIssuer);
+
+        var token = benchmarkIssuers.getToken();
+        authentication = new BearerTokenAuthenticationToken(token);
+        exchange =
+                MockServerWebExchange.from(
+                        MockServerHttpRequest.get("/").header(HttpHeaders.AUTHORIZATION, "Bearer " + token));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        resolver.close();
+        benchmarkIssuers.close();
+    }
+
+    @Benchmark
+    public Authentication authenticate() {
+        return resolver
+                .resolve(exchange)
+                .flatMap(authenticationManager -> authenticationManager.authenticate(authentication))
+                .block();
+    }
+}
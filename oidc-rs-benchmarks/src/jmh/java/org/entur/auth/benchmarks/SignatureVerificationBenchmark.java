@@ -0,0 +1,77 @@
+package org.entur.auth.benchmarks;
+
+import static org.entur.auth.junit.jwt.EnturProvider.TENANT_PARTNER;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeUnit;
+import org.entur.auth.junit.jwt.EnturProvider;
+import org.entur.auth.junit.jwt.JwtTokenFactory;
+import org.entur.auth.junit.jwt.KeyAlgorithm;
+import org.entur.auth.spring.common.server.CachingJWSVerifierFactory;
+import org.entur.auth.spring.common.server.JWKSetIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Signature verification alone, with the key and verifier looked up as in token validation, to
+ * compare the cost of RS256, ES256 and EdDSA without parsing and claim handling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureVerificationBenchmark {
+    @Param({"RS256", "ES256", "EdDSA"})
+    private KeyAlgorithm algorithm;
+
+    private SignedJWT signedJwt;
+    private JWSVerifier verifier;
+
+    @Setup(Level.Trial)
+    public void setup() throws ParseException, JOSEException {
+        var provider = new EnturProvider();
+        var tokenFactory = new JwtTokenFactory(algorithm, provider, TENANT_PARTNER);
+        var token =
+                tokenFactory
+                        .jwtTokenBuilder()
+                        .provider(provider)
+                        .domain(TENANT_PARTNER)
+                        .subject("subject")
+                        .audience(new String[] {BenchmarkIssuers.AUDIENCE})
+                        .expiresAt(Instant.now().plus(1, ChronoUnit.DAYS))
+                        .create();
+        var jwkSet =
+                JWKSet.parse(tokenFactory.createCertificates().get(provider.getCertPath(TENANT_PARTNER)));
+
+        signedJwt = SignedJWT.parse(token);
+        var key = new JWKSetIndex(jwkSet).select(signedJwt.getHeader()).get(0);
+        verifier = new CachingJWSVerifierFactory().createJWSVerifier(signedJwt.getHeader(), key);
+        if (!signedJwt.verify(verifier)) {
+            throw new IllegalStateException("Signature of " + algorithm + " token not verified");
+        }
+    }
+
+    @Benchmark
+    public boolean verify() throws JOSEException {
+        return verifier.verify(
+                signedJwt.getHeader(), signedJwt.getSigningInput(), signedJwt.getSignature());
+    }
+}
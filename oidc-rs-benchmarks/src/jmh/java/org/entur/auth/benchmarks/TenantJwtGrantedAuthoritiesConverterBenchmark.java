@@ -0,0 +1,47 @@
+package org.entur.auth.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.entur.auth.spring.common.server.DefaultAuthProviders;
+import org.entur.auth.spring.common.server.TenantJwtGrantedAuthoritiesConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TenantJwtGrantedAuthoritiesConverterBenchmark {
+    @Param({"SMALL", "LARGE"})
+    private BenchmarkIssuers.TokenSize tokenSize;
+
+    private TenantJwtGrantedAuthoritiesConverter converter;
+    private Jwt jwt;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        converter = new TenantJwtGrantedAuthoritiesConverter(new DefaultAuthProviders());
+        jwt = BenchmarkIssuers.jwt(tokenSize);
+        converter.addIssuer(jwt.getClaimAsString(JwtClaimNames.ISS));
+    }
+
+    @Benchmark
+    public Collection<GrantedAuthority> convert() {
+        return converter.convert(jwt);
+    }
+}
@@ -2,10 +2,15 @@ package org.entur.auth.junit.jwt;
 
 import io.jsonwebtoken.JwtBuilder;
 import io.jsonwebtoken.Jwts;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.EdECPublicKey;
 import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Base64;
@@ -20,9 +25,9 @@ import lombok.NonNull;
  * Factory for generating signed JSON Web Tokens (JWTs) and exposing public keys (JWKS) for multiple
  * tenants and authentication providers.
  *
- * <p>Maintains an in-memory cache of RSA key pairs per provider and tenant domain. Provides methods
- * to add tenants, check tenant existence, generate tokens, and expose the public keys as JSON Web
- * Key Sets (JWKS).
+ * <p>Maintains an in-memory cache of key pairs per provider and tenant domain. Provides methods to
+ * add tenants, check tenant existence, generate tokens, and expose the public keys as JSON Web Key
+ * Sets (JWKS). Keys are RSA 2048-bit unless another {@link KeyAlgorithm} is given.
  */
 public class JwtTokenFactory {
     /** Nested map of key pairs indexed first by provider name, then by tenant domain. */
@@ -31,7 +36,7 @@ public class JwtTokenFactory {
     /** Lookup map from provider name to its {@link Provider} instance. */
     private final Map<String, Provider> providerMap = new HashMap<>();
 
-    /** RSA key-pair generator (2048-bit). */
+    /** Key-pair generator for the configured {@link KeyAlgorithm}. */
     private final KeyPairGenerator keyGen;
 
     /**
@@ -41,7 +46,32 @@ public class JwtTokenFactory {
      * @throws AlgorithmDoNotExistsException if the RSA algorithm is unavailable
      */
     public JwtTokenFactory() {
-        keyGen = setupKeyPairGenerator();
+        this(KeyAlgorithm.RS256);
+    }
+
+    /**
+     * Constructs a new {@code JwtTokenFactory} with no tenants, generating key pairs for the given
+     * signature algorithm.
+     *
+     * @param keyAlgorithm the signature algorithm used for tenant key pairs
+     * @throws AlgorithmDoNotExistsException if the algorithm is unavailable
+     */
+    public JwtTokenFactory(@NonNull KeyAlgorithm keyAlgorithm) {
+        keyGen = setupKeyPairGenerator(keyAlgorithm);
+    }
+
+    /**
+     * Constructs a new {@code JwtTokenFactory} for the given signature algorithm, registers the given
+     * provider, and generates key pairs for the specified tenants.
+     *
+     * @param keyAlgorithm the signature algorithm used for tenant key pairs
+     * @param provider the authentication provider to register
+     * @param tenants one or more tenant domains for which to generate key pairs
+     * @throws AlgorithmDoNotExistsException if the algorithm is unavailable
+     */
+    public JwtTokenFactory(@NonNull KeyAlgorithm keyAlgorithm, Provider provider, String... tenants) {
+        this(keyAlgorithm);
+        addTenants(provider, tenants);
     }
 
     /**
@@ -71,11 +101,11 @@ public class JwtTokenFactory {
     }
 
     /**
-     * Registers the given provider (if not already present) and generates RSA key pairs for each of
-     * the provided tenant domains.
+     * Registers the given provider (if not already present) and generates key pairs for each of the
+     * provided tenant domains.
      *
      * @param provider the authentication provider to register
-     * @param tenants one or more tenant domains to initialize with RSA key pairs
+     * @param tenants one or more tenant domains to initialize with key pairs
      */
     public void addTenants(Provider provider, String... tenants) {
         synchronized (keyPairsByTenantByProvider) {
@@ -179,16 +209,11 @@ public class JwtTokenFactory {
             for (Entry<String, Map<String, KeyPair>> keyPairsByTenantByProviderEntry :
                     keyPairsByTenantByProvider.entrySet()) {
                 for (Entry<String, KeyPair> entry : keyPairsByTenantByProviderEntry.getValue().entrySet()) {
-                    RSAPublicKey pk = (RSAPublicKey) entry.getValue().getPublic();
-                    String n = Base64.getUrlEncoder().encodeToString(pk.getModulus().toByteArray());
-                    String e = Base64.getUrlEncoder().encodeToString(pk.getPublicExponent().toByteArray());
                     String certEndpoint =
                             providerMap.get(keyPairsByTenantByProviderEntry.getKey()).getCertPath(entry.getKey());
 
                     String response =
-                            String.format(
-                                    "{\"keys\":[{\"kid\":\"%s\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"n\":\"%s\",\"e\":\"%s\"}]}",
-                                    Provider.KEY_ID_DEFAULT, n, e);
+                            String.format("{\"keys\":[%s]}", createJwk(entry.getValue().getPublic()));
 
                     certs.put(certEndpoint, response);
                 }
@@ -199,19 +224,80 @@ public class JwtTokenFactory {
     }
 
     /**
-     * Creates and configures a 2048-bit RSA {@link KeyPairGenerator}.
+     * Serializes a public key as a JSON Web Key (JWK) with the default key id.
      *
-     * @return a ready-to-use {@code KeyPairGenerator} for RSA 2048
-     * @throws AlgorithmDoNotExistsException if the RSA algorithm is not supported
+     * @param publicKey the RSA, EC P-256 or Ed25519 public key
+     * @return the JWK JSON string
      */
-    private static KeyPairGenerator setupKeyPairGenerator() {
+    private static String createJwk(PublicKey publicKey) {
+        if (publicKey instanceof EdECPublicKey pk) {
+            // The X.509 encoding ends with the 32 bytes of the public key
+            byte[] encoded = pk.getEncoded();
+            byte[] key = Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length);
+            String x = Base64.getUrlEncoder().withoutPadding().encodeToString(key);
+
+            return String.format(
+                    "{\"kid\":\"%s\",\"kty\":\"OKP\",\"alg\":\"EdDSA\",\"use\":\"sig\",\"crv\":\"Ed25519\",\"x\":\"%s\"}",
+                    Provider.KEY_ID_DEFAULT, x);
+        }
+
+        if (publicKey instanceof ECPublicKey pk) {
+            String x = encodeCoordinate(pk.getW().getAffineX());
+            String y = encodeCoordinate(pk.getW().getAffineY());
+
+            return String.format(
+                    "{\"kid\":\"%s\",\"kty\":\"EC\",\"alg\":\"ES256\",\"use\":\"sig\",\"crv\":\"P-256\",\"x\":\"%s\",\"y\":\"%s\"}",
+                    Provider.KEY_ID_DEFAULT, x, y);
+        }
+
+        RSAPublicKey pk = (RSAPublicKey) publicKey;
+        String n = Base64.getUrlEncoder().encodeToString(pk.getModulus().toByteArray());
+        String e = Base64.getUrlEncoder().encodeToString(pk.getPublicExponent().toByteArray());
+
+        return String.format(
+                "{\"kid\":\"%s\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"n\":\"%s\",\"e\":\"%s\"}",
+                Provider.KEY_ID_DEFAULT, n, e);
+    }
+
+    /**
+     * Encodes a P-256 curve coordinate as an unsigned, 32-byte, base64url value.
+     *
+     * @param coordinate the affine coordinate
+     * @return the base64url encoded coordinate
+     */
+    private static String encodeCoordinate(BigInteger coordinate) {
+        byte[] bytes = coordinate.toByteArray();
+        byte[] fixed = new byte[32];
+        int length = Math.min(bytes.length, fixed.length);
+        System.arraycopy(bytes, bytes.length - length, fixed, fixed.length - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(fixed);
+    }
+
+    /**
+     * Creates and configures a {@link KeyPairGenerator} for the given algorithm: 2048-bit RSA for
+     * RS256, the P-256 curve for ES256, or Ed25519 for EdDSA.
+     *
+     * @param keyAlgorithm the signature algorithm
+     * @return a ready-to-use {@code KeyPairGenerator}
+     * @throws AlgorithmDoNotExistsException if the algorithm is not supported
+     */
+    private static KeyPairGenerator setupKeyPairGenerator(KeyAlgorithm keyAlgorithm) {
         KeyPairGenerator keyGen;
         try {
-            keyGen = KeyPairGenerator.getInstance("RSA");
-            keyGen.initialize(2048);
+            switch (keyAlgorithm) {
+                case ES256 -> {
+                    keyGen = KeyPairGenerator.getInstance("EC");
+                    keyGen.initialize(new ECGenParameterSpec("secp256r1"));
+                }
+                case EdDSA -> keyGen = KeyPairGenerator.getInstance("Ed25519");
+                default -> {
+                    keyGen = KeyPairGenerator.getInstance("RSA");
+                    keyGen.initialize(2048);
+                }
+            }
 
             return keyGen;
-        } catch (NoSuchAlgorithmException e) {
+        } catch (GeneralSecurityException e) {
             throw new AlgorithmDoNotExistsException(e);
         }
     }
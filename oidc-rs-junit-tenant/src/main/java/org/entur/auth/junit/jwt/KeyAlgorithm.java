@@ -0,0 +1,13 @@
+package org.entur.auth.junit.jwt;
+
+/** Signature algorithms supported by {@link JwtTokenFactory} when generating tenant key pairs. */
+public enum KeyAlgorithm {
+    /** RSA 2048-bit key pairs, tokens signed with RS256. */
+    RS256,
+
+    /** EC P-256 key pairs, tokens signed with ES256. */
+    ES256,
+
+    /** Ed25519 key pairs, tokens signed with EdDSA. */
+    EdDSA
+}
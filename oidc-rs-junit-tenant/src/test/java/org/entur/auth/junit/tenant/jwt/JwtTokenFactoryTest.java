@@ -8,6 +8,7 @@ import com.auth0.jwt.interfaces.DecodedJWT;
 import java.time.Instant;
 import java.util.Map;
 import org.entur.auth.junit.jwt.JwtTokenFactory;
+import org.entur.auth.junit.jwt.KeyAlgorithm;
 import org.entur.auth.junit.jwt.Provider;
 import org.junit.jupiter.api.Test;
 
@@ -45,4 +46,42 @@ public class JwtTokenFactoryTest {
         assertEquals("https://api.dev.entur.io", decode.getAudience().get(0));
         assertTrue(decode.getIssuer().contains(DOMAIN_TENANT));
     }
+
+    @Test
+    void testEs256Works() {
+        JwtTokenFactory ecFactory = new JwtTokenFactory(KeyAlgorithm.ES256, provider, DOMAIN_TENANT);
+        String token =
+                ecFactory
+                        .jwtTokenBuilder()
+                        .provider(provider)
+                        .domain(DOMAIN_TENANT)
+                        .expiresAt(Instant.now().plusSeconds(5 * 60))
+                        .create();
+
+        DecodedJWT decode = JWT.decode(token);
+        String certificate = ecFactory.createCertificates().get(provider.getCertPath(DOMAIN_TENANT));
+
+        assertEquals("ES256", decode.getAlgorithm());
+        assertTrue(certificate.contains("\"kty\":\"EC\""));
+        assertTrue(certificate.contains("\"crv\":\"P-256\""));
+    }
+
+    @Test
+    void testEdDsaWorks() {
+        JwtTokenFactory edFactory = new JwtTokenFactory(KeyAlgorithm.EdDSA, provider, DOMAIN_TENANT);
+        String token =
+                edFactory
+                        .jwtTokenBuilder()
+                        .provider(provider)
+                        .domain(DOMAIN_TENANT)
+                        .expiresAt(Instant.now().plusSeconds(5 * 60))
+                        .create();
+
+        DecodedJWT decode = JWT.decode(token);
+        String certificate = edFactory.createCertificates().get(provider.getCertPath(DOMAIN_TENANT));
+
+        assertEquals("EdDSA", decode.getAlgorithm());
+        assertTrue(certificate.contains("\"kty\":\"OKP\""));
+        assertTrue(certificate.contains("\"crv\":\"Ed25519\""));
+    }
 }
@@ -1,24 +1,78 @@
 package org.entur.auth.spring.common.health.indicator.jwks;
 
 import static org.springframework.boot.health.contributor.Status.DOWN;
+import static org.springframework.boot.health.contributor.Status.UNKNOWN;
 import static org.springframework.boot.health.contributor.Status.UP;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.entur.auth.spring.common.server.JWKSourceWithIssuer;
+import org.entur.auth.spring.common.server.JwksReadiness;
 import org.springframework.boot.health.contributor.Health;
 import org.springframework.boot.health.contributor.HealthIndicator;
+import org.springframework.boot.health.contributor.Status;
 
+/**
+ * Reports the JWKS status of every issuer, as recorded by its JWK source on each retrieval.
+ *
+ * <p>A check reads the state pushed by the sources and does no I/O. An issuer is up while its keys
+ * are usable, down when retrieval fails beyond the outage tolerance or returns no keys, and unknown
+ * until its JWKS has been retrieved. The status, key count, age of the last successful retrieval
+ * and latency of the last retrieval of every issuer are included as details, keyed by issuer.
+ */
 @RequiredArgsConstructor
 public final class JwksHealthIndicator implements HealthIndicator {
-    private final @NonNull List<@NonNull JWKSourceWithIssuer<?>> sources;
-    private final @NonNull JwksHealthCache cache;
+    /** Current sources, read on every check so issuers added or removed at runtime are included. */
+    private final @NonNull Supplier<@NonNull List<@NonNull JWKSourceWithIssuer<?>>> sources;
+
+    public JwksHealthIndicator(final @NonNull List<@NonNull JWKSourceWithIssuer<?>> sources) {
+        this(() -> sources);
+    }
 
     @Override
     public Health health() {
-        if (sources.isEmpty()) return Health.unknown().build();
+        var current = sources.get();
+        if (current.isEmpty()) return Health.unknown().build();
+
+        var status = UP;
+        var details = new LinkedHashMap<String, Object>();
+        for (var source : current) {
+            var readiness = source.getJwksReadiness();
+            var snapshot = readiness == null ? null : readiness.snapshot();
+            var sourceStatus = status(snapshot);
+            if (DOWN.equals(sourceStatus)) {
+                status = DOWN;
+            } else if (UNKNOWN.equals(sourceStatus) && UP.equals(status)) {
+                status = UNKNOWN;
+            }
+            details.put(source.getIssuerUrl(), details(sourceStatus, snapshot));
+        }
+        return Health.status(status).withDetails(details).build();
+    }
+
+    private static @NonNull Status status(final JwksReadiness.Snapshot snapshot) {
+        if (snapshot == null || !snapshot.retrieved()) return UNKNOWN;
+
+        return snapshot.ready() ? UP : DOWN;
+    }
 
-        return Health.status(sources.stream().map(cache::get).allMatch(UP::equals) ? UP : DOWN).build();
+    private static @NonNull Map<String, Object> details(
+            final @NonNull Status status, final JwksReadiness.Snapshot snapshot) {
+        var details = new LinkedHashMap<String, Object>();
+        details.put("status", status.getCode());
+        if (snapshot != null) {
+            details.put("keys", snapshot.keys());
+            if (snapshot.age() != null) {
+                details.put("lastFetchAge", snapshot.age().toString());
+            }
+            if (snapshot.latency() != null) {
+                details.put("fetchLatency", snapshot.latency().toString());
+            }
+        }
+        return details;
     }
 }
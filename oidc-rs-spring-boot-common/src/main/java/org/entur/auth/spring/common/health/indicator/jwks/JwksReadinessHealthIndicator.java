@@ -0,0 +1,21 @@
+package org.entur.auth.spring.common.health.indicator.jwks;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.entur.auth.spring.common.server.SupportsReadiness;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.HealthIndicator;
+
+/**
+ * Reports whether every issuer has usable keys, to be included in the readiness group. Reads the
+ * readiness tracked from JWKS retrievals, without any I/O.
+ */
+@RequiredArgsConstructor
+public final class JwksReadinessHealthIndicator implements HealthIndicator {
+    private final @NonNull SupportsReadiness readiness;
+
+    @Override
+    public Health health() {
+        return readiness.getReadiness() ? Health.up().build() : Health.outOfService().build();
+    }
+}
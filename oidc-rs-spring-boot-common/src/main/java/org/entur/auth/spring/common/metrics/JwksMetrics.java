@@ -0,0 +1,222 @@
+package org.entur.auth.spring.common.metrics;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.CachingJWKSetSource;
+import com.nimbusds.jose.jwk.source.JWKSetSourceWithHealthStatusReporting;
+import com.nimbusds.jose.jwk.source.OutageTolerantJWKSetSource;
+import com.nimbusds.jose.jwk.source.RateLimitedJWKSetSource;
+import com.nimbusds.jose.jwk.source.RetryingJWKSetSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.events.EventListener;
+import com.nimbusds.jose.util.health.HealthReport;
+import com.nimbusds.jose.util.health.HealthReportListener;
+import com.nimbusds.jose.util.health.HealthStatus;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.NonNull;
+
+/**
+ * Micrometer meters for the JWKS cache of every issuer.
+ *
+ * <p>Refresh outcomes are fed by the {@link HealthReportListener} hook of the JWK source, and the
+ * cache, rate limiting, retrying and outage tolerance stages report through their event listeners.
+ * Together they show how often the JWKS is fetched, how long a fetch takes and how stale the cache
+ * gets, which is what {@code cache-lifespan}, {@code refresh-ahead-time} and {@code
+ * jwks-throttle-wait} are tuned by.
+ */
+public final class JwksMetrics {
+    public static final String REFRESH_METER = "entur.auth.jwks.refresh";
+    public static final String REFRESH_DURATION_METER = "entur.auth.jwks.refresh.duration";
+    public static final String LAST_SUCCESS_AGE_METER = "entur.auth.jwks.last.success.age";
+    public static final String KEYS_METER = "entur.auth.jwks.keys";
+    public static final String RATE_LIMITED_METER = "entur.auth.jwks.rate.limited";
+    public static final String OUTAGE_SERVED_METER = "entur.auth.jwks.outage.served";
+    public static final String RETRIES_METER = "entur.auth.jwks.retries";
+
+    private final @NonNull MeterRegistry meterRegistry;
+    private final @NonNull Map<String, IssuerJwksMetrics> issuers = new ConcurrentHashMap<>();
+
+    public JwksMetrics(final @NonNull MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Meters of an issuer. An issuer that is removed and added again keeps its meters, so its gauges
+     * stay registered.
+     */
+    public @NonNull IssuerJwksMetrics forIssuer(final @NonNull String issuerUrl) {
+        return issuers.computeIfAbsent(
+                issuerUrl, issuer -> new IssuerJwksMetrics(meterRegistry, issuer));
+    }
+
+    /**
+     * Combine the application's health report listener with the meters of an issuer.
+     *
+     * @param healthReportListener the application's listener, may be {@code null}
+     * @param issuerJwksMetrics the meters of the issuer, may be {@code null}
+     * @return a listener notifying both, {@code null} if both are {@code null}
+     */
+    public static HealthReportListener<
+                    JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+            withMetrics(
+                    final HealthReportListener<
+                                    JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+                            healthReportListener,
+                    final IssuerJwksMetrics issuerJwksMetrics) {
+        if (issuerJwksMetrics == null) {
+            return healthReportListener;
+        }
+        if (healthReportListener == null) {
+            return issuerJwksMetrics;
+        }
+        return healthReport -> {
+            issuerJwksMetrics.notify(healthReport);
+            healthReportListener.notify(healthReport);
+        };
+    }
+
+    public static final class IssuerJwksMetrics
+            implements HealthReportListener<
+                    JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext> {
+        private final @NonNull Clock clock;
+        private final @NonNull Counter refreshSuccess;
+        private final @NonNull Counter refreshFailure;
+        private final @NonNull Timer refreshDuration;
+        private final @NonNull Counter rateLimited;
+        private final @NonNull Counter outageServed;
+        private final @NonNull Counter retries;
+        private final @NonNull AtomicLong lastSuccess = new AtomicLong(-1);
+        private final @NonNull AtomicLong keys = new AtomicLong();
+        private final @NonNull AtomicLong refreshStart = new AtomicLong(-1);
+
+        private IssuerJwksMetrics(
+                final @NonNull MeterRegistry meterRegistry, final @NonNull String issuer) {
+            this.clock = meterRegistry.config().clock();
+            this.refreshSuccess = refreshCounter(meterRegistry, issuer, "success");
+            this.refreshFailure = refreshCounter(meterRegistry, issuer, "failure");
+            this.refreshDuration =
+                    Timer.builder(REFRESH_DURATION_METER)
+                            .description("JWKS retrieval latency")
+                            .tag("issuer", issuer)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry);
+            this.rateLimited =
+                    counter(
+                            meterRegistry,
+                            RATE_LIMITED_METER,
+                            "JWKS refreshes rejected by rate limiting",
+                            issuer);
+            this.outageServed =
+                    counter(
+                            meterRegistry,
+                            OUTAGE_SERVED_METER,
+                            "JWKS served from cache during an outage",
+                            issuer);
+            this.retries = counter(meterRegistry, RETRIES_METER, "JWKS retrieval retries", issuer);
+
+            Gauge.builder(LAST_SUCCESS_AGE_METER, this, IssuerJwksMetrics::lastSuccessAge)
+                    .description("Time since the JWKS was last retrieved")
+                    .baseUnit("seconds")
+                    .tag("issuer", issuer)
+                    .register(meterRegistry);
+            Gauge.builder(KEYS_METER, keys, AtomicLong::get)
+                    .description("Keys in the cached JWKS")
+                    .tag("issuer", issuer)
+                    .register(meterRegistry);
+        }
+
+        private static Counter refreshCounter(
+                final MeterRegistry meterRegistry, final String issuer, final String result) {
+            return Counter.builder(REFRESH_METER)
+                    .description("JWKS retrievals")
+                    .tag("issuer", issuer)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+
+        private static Counter counter(
+                final MeterRegistry meterRegistry,
+                final String name,
+                final String description,
+                final String issuer) {
+            return Counter.builder(name)
+                    .description(description)
+                    .tag("issuer", issuer)
+                    .register(meterRegistry);
+        }
+
+        private double lastSuccessAge() {
+            long timestamp = lastSuccess.get();
+            return timestamp < 0 ? Double.NaN : (clock.wallTime() - timestamp) / 1000.0;
+        }
+
+        @Override
+        public void notify(
+                final HealthReport<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+                        healthReport) {
+            if (healthReport.getHealthStatus() == HealthStatus.HEALTHY) {
+                refreshSuccess.increment();
+                lastSuccess.set(healthReport.getTimestamp());
+            } else {
+                refreshFailure.increment();
+            }
+        }
+
+        /** Record a completed retrieval, for sources that time retrievals themselves. */
+        public void refreshed(final @NonNull JWKSet jwkSet, final @NonNull Duration duration) {
+            refreshDuration.record(duration);
+            keys.set(jwkSet.size());
+        }
+
+        public void rateLimited() {
+            rateLimited.increment();
+        }
+
+        public void outageServed() {
+            outageServed.increment();
+        }
+
+        public void retried() {
+            retries.increment();
+        }
+
+        /** Times retrievals and counts keys, for {@code cache} and {@code refreshAheadCache}. */
+        public <C extends SecurityContext>
+                EventListener<CachingJWKSetSource<C>, C> cacheEventListener() {
+            return event -> {
+                if (event instanceof CachingJWKSetSource.RefreshInitiatedEvent<?>) {
+                    refreshStart.set(clock.monotonicTime());
+                } else if (event instanceof CachingJWKSetSource.RefreshCompletedEvent<?> completed) {
+                    long start = refreshStart.getAndSet(-1);
+                    if (start >= 0) {
+                        refreshDuration.record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                    keys.set(completed.getJWKSet().size());
+                }
+            };
+        }
+
+        public <C extends SecurityContext>
+                EventListener<RateLimitedJWKSetSource<C>, C> rateLimitedEventListener() {
+            return event -> rateLimited();
+        }
+
+        public <C extends SecurityContext>
+                EventListener<OutageTolerantJWKSetSource<C>, C> outageEventListener() {
+            return event -> outageServed();
+        }
+
+        public <C extends SecurityContext>
+                EventListener<RetryingJWKSetSource<C>, C> retryEventListener() {
+            return event -> retried();
+        }
+    }
+}
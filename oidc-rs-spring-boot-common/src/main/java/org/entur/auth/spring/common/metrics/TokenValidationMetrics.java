@@ -0,0 +1,131 @@
+package org.entur.auth.spring.common.metrics;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import org.entur.auth.spring.common.server.ClaimsPreCheck;
+
+/**
+ * Micrometer meters for bearer token validation.
+ *
+ * <p>Meters are tagged by configured issuer and {@link TokenValidationOutcome} only, so the number
+ * of time series is bounded by the number of issuers. Tokens from unknown issuers share the {@value
+ * #UNKNOWN_ISSUER_TAG} issuer tag.
+ */
+public final class TokenValidationMetrics {
+    public static final String VALIDATION_METER = "entur.auth.token.validation";
+    public static final String CACHE_METER = "entur.auth.token.cache";
+    public static final String PRE_CHECK_METER = "entur.auth.token.precheck";
+    public static final String REJECTED_CACHE_METER = "entur.auth.token.rejected.cache";
+    public static final String UNKNOWN_ISSUER_TAG = "unknown";
+
+    private final @NonNull MeterRegistry meterRegistry;
+    private final @NonNull IssuerMetrics unknownIssuer;
+    private final @NonNull Counter rejectedCacheHits;
+
+    public TokenValidationMetrics(final @NonNull MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.unknownIssuer = new IssuerMetrics(meterRegistry, UNKNOWN_ISSUER_TAG);
+        this.rejectedCacheHits =
+                Counter.builder(REJECTED_CACHE_METER)
+                        .description("Tokens rejected from the rejected token cache")
+                        .register(meterRegistry);
+    }
+
+    /** Meters of a configured issuer, registered once so the request path only reads them. */
+    public @NonNull IssuerMetrics forIssuer(final @NonNull String issuerUrl) {
+        return new IssuerMetrics(meterRegistry, issuerUrl);
+    }
+
+    /** Meters shared by every token whose issuer is not configured. */
+    public @NonNull IssuerMetrics unknownIssuer() {
+        return unknownIssuer;
+    }
+
+    /** Count a token rejected from the cache, before its issuer is known. */
+    public void rejectedCacheHit() {
+        rejectedCacheHits.increment();
+    }
+
+    public static final class IssuerMetrics {
+        private final @NonNull Clock clock;
+        private final @NonNull Map<TokenValidationOutcome, Timer> timers =
+                new EnumMap<>(TokenValidationOutcome.class);
+        private final @NonNull Map<ClaimsPreCheck.Rejection, Counter> preCheckRejections =
+                new EnumMap<>(ClaimsPreCheck.Rejection.class);
+        private final @NonNull Counter cacheHits;
+        private final @NonNull Counter cacheMisses;
+
+        private IssuerMetrics(
+                final @NonNull MeterRegistry meterRegistry, final @NonNull String issuer) {
+            this.clock = meterRegistry.config().clock();
+            for (TokenValidationOutcome outcome : TokenValidationOutcome.values()) {
+                timers.put(
+                        outcome,
+                        Timer.builder(VALIDATION_METER)
+                                .description("Bearer token validation")
+                                .tag("issuer", issuer)
+                                .tag("outcome", outcome.getTag())
+                                .register(meterRegistry));
+            }
+            for (ClaimsPreCheck.Rejection rejection : ClaimsPreCheck.Rejection.values()) {
+                preCheckRejections.put(
+                        rejection,
+                        Counter.builder(PRE_CHECK_METER)
+                                .description("Tokens rejected on their claims before signature verification")
+                                .tag("issuer", issuer)
+                                .tag("reason", rejection.getTag())
+                                .register(meterRegistry));
+            }
+            this.cacheHits = cacheCounter(meterRegistry, issuer, "hit");
+            this.cacheMisses = cacheCounter(meterRegistry, issuer, "miss");
+        }
+
+        private static Counter cacheCounter(
+                final MeterRegistry meterRegistry, final String issuer, final String result) {
+            return Counter.builder(CACHE_METER)
+                    .description("Verified token cache lookups")
+                    .tag("issuer", issuer)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * @return the start time to pass to {@link #success} or {@link #failure}
+         */
+        public long start() {
+            return clock.monotonicTime();
+        }
+
+        public void success(final long start) {
+            record(start, TokenValidationOutcome.SUCCESS);
+        }
+
+        public void failure(final long start, final @NonNull Throwable exception) {
+            record(start, TokenValidationOutcome.of(exception));
+            for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+                if (cause instanceof ClaimsPreCheck.ClaimsPreCheckException preCheckException) {
+                    preCheckRejections.get(preCheckException.getRejection()).increment();
+                    return;
+                }
+            }
+        }
+
+        public void record(final long start, final @NonNull TokenValidationOutcome outcome) {
+            timers.get(outcome).record(clock.monotonicTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        public void cacheHit() {
+            cacheHits.increment();
+        }
+
+        public void cacheMiss() {
+            cacheMisses.increment();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.entur.auth.spring.common.metrics;
+
+import com.nimbusds.jose.KeySourceException;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.entur.auth.spring.common.server.TokenRejectedException;
+import org.entur.auth.spring.common.server.TokenRejection;
+
+/** Outcome of a bearer token validation, used as a bounded metric tag. */
+@RequiredArgsConstructor
+public enum TokenValidationOutcome {
+    SUCCESS("success"),
+    EXPIRED("expired"),
+    BAD_SIGNATURE("bad-signature"),
+    BAD_AUDIENCE("bad-audience"),
+    UNKNOWN_ISSUER("unknown-issuer"),
+    JWKS_UNAVAILABLE("jwks-unavailable"),
+    INVALID("invalid");
+
+    private final @Getter @NonNull String tag;
+
+    /**
+     * Classify a failed validation by the exceptions in its cause chain, and otherwise by the {@link
+     * TokenRejection} of the exception.
+     *
+     * @param exception the exception thrown by the authentication manager
+     * @return the outcome, {@link #INVALID} for failures without a more specific outcome
+     */
+    public static @NonNull TokenValidationOutcome of(final @NonNull Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TokenRejectedException rejectedException) {
+                return of(rejectedException.getRejection());
+            }
+            if (cause instanceof KeySourceException) {
+                return JWKS_UNAVAILABLE;
+            }
+        }
+        return of(TokenRejection.of(exception));
+    }
+
+    private static TokenValidationOutcome of(final TokenRejection rejection) {
+        return switch (rejection) {
+            case EXPIRED -> EXPIRED;
+            case BAD_SIGNATURE -> BAD_SIGNATURE;
+            case BAD_AUDIENCE -> BAD_AUDIENCE;
+            case UNKNOWN_ISSUER -> UNKNOWN_ISSUER;
+            case MALFORMED, NOT_YET_VALID, BAD_ISSUER, INVALID -> INVALID;
+        };
+    }
+}
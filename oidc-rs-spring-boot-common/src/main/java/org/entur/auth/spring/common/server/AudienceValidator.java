@@ -1,14 +1,23 @@
 package org.entur.auth.spring.common.server;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import org.springframework.security.oauth2.core.OAuth2Error;
 import org.springframework.security.oauth2.core.OAuth2TokenValidator;
 import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
 
 public class AudienceValidator implements OAuth2TokenValidator<Jwt> {
+    public static final String ERROR_DESCRIPTION = "Not valid audience";
+
+    private static final OAuth2TokenValidatorResult SUCCESS = OAuth2TokenValidatorResult.success();
+
     private final Set<String> audiences;
-    OAuth2Error error = new OAuth2Error("401", "Not valid audience", null);
+    private final OAuth2Error error =
+            new TokenRejectionError(TokenRejection.BAD_AUDIENCE, "401", ERROR_DESCRIPTION, null);
+    private final OAuth2TokenValidatorResult failure = OAuth2TokenValidatorResult.failure(error);
 
     public AudienceValidator(Set<String> audiences) {
         this.audiences = audiences != null ? Set.copyOf(audiences) : Set.of();
@@ -17,17 +26,39 @@ public class AudienceValidator implements OAuth2TokenValidator<Jwt> {
     /**
      * Verify the validity jwt token has one of the defined audiences.
      *
+     * <p>The {@code aud} claim is read as converted when the token was decoded, and each of its
+     * values is looked up in the configured audiences, so validation does not allocate.
+     *
      * @param jwt an Jwt token
      * @return OAuth2TokenValidationResult the success or failure detail of the validation
      */
     @Override
     public OAuth2TokenValidatorResult validate(Jwt jwt) {
+        return hasAudience(jwt.getClaims().get(JwtClaimNames.AUD)) ? SUCCESS : failure;
+    }
 
-        if (audiences.stream()
-                .anyMatch(audience -> jwt.getAudience() != null && jwt.getAudience().contains(audience))) {
-            return OAuth2TokenValidatorResult.success();
-        } else {
-            return OAuth2TokenValidatorResult.failure(error);
+    private boolean hasAudience(Object claim) {
+        if (claim instanceof List<?> list) {
+            for (int i = 0; i < list.size(); i++) {
+                if (isAudience(list.get(i))) {
+                    return true;
+                }
+            }
+            return false;
         }
+        if (claim instanceof Collection<?> collection) {
+            for (Object audience : collection) {
+                if (isAudience(audience)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return isAudience(claim);
+    }
+
+    private boolean isAudience(Object audience) {
+        // Immutable sets reject null lookups
+        return audience != null && audiences.contains(audience);
     }
 }
@@ -0,0 +1,9 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.Data;
+
+@Data
+public class BootstrapProperties {
+    private int parallelism = 4;
+    private int deadline = 30;
+}
@@ -0,0 +1,184 @@
+package org.entur.auth.spring.common.server;
+
+import static com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator.noRefresh;
+import static com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator.referenceComparison;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyType;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
+import com.nimbusds.jose.proc.JWSKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import java.security.Key;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.NonNull;
+
+/**
+ * {@link JWSKeySelector} selecting keys from a {@link JWKSetIndex} of the current JWK set.
+ *
+ * <p>The index is rebuilt only when the JWK set returned by the source changes. When no key
+ * matches, the JWK set is refreshed once, in the same way as {@link
+ * com.nimbusds.jose.jwk.source.JWKSetBasedJWKSource}, through an {@link UnknownKeyIdRefresh} when
+ * one is given.
+ */
+public final class CachingJWSKeySelector<C extends SecurityContext> implements JWSKeySelector<C> {
+    /** The algorithms of the key types a JWK set index can select, RSA, EC and Ed25519. */
+    public static final Set<JWSAlgorithm> ASYMMETRIC_ALGORITHMS =
+            Stream.of(
+                            JWSAlgorithm.Family.RSA.stream(),
+                            JWSAlgorithm.Family.EC.stream(),
+                            Ed25519Verifier.SUPPORTED_ALGORITHMS.stream())
+                    .flatMap(algorithms -> algorithms)
+                    .collect(Collectors.toUnmodifiableSet());
+
+    private final @NonNull Set<JWSAlgorithm> algorithms;
+    private final @NonNull JWKSetSource<C> jwkSetSource;
+    private final UnknownKeyIdRefresh unknownKeyIdRefresh;
+    private final @NonNull AtomicReference<JWKSetIndex> index = new AtomicReference<>();
+
+    public CachingJWSKeySelector(
+            final @NonNull Set<JWSAlgorithm> algorithms, final @NonNull JWKSetSource<C> jwkSetSource) {
+        this(algorithms, jwkSetSource, null);
+    }
+
+    /**
+     * @param unknownKeyIdRefresh coalesces and rate limits the refreshes on unknown key ids, {@code
+     *     null} to refresh on every unknown key id, subject to the rate limit of the source
+     */
+    public CachingJWSKeySelector(
+            final @NonNull Set<JWSAlgorithm> algorithms,
+            final @NonNull JWKSetSource<C> jwkSetSource,
+            final UnknownKeyIdRefresh unknownKeyIdRefresh) {
+        this.algorithms = Set.copyOf(algorithms);
+        this.jwkSetSource = jwkSetSource;
+        this.unknownKeyIdRefresh = unknownKeyIdRefresh;
+    }
+
+    /**
+     * Create a key selector accepting the algorithm families of the keys currently published by the
+     * source, like {@link
+     * com.nimbusds.jose.proc.JWSAlgorithmFamilyJWSKeySelector#fromJWKSource(com.nimbusds.jose.jwk.source.JWKSource)}.
+     *
+     * @param jwkSetSource the JWK set source
+     * @return the key selector
+     * @throws KeySourceException if the JWK set could not be retrieved or holds no RSA, EC or Ed25519
+     *     keys
+     */
+    public static <C extends SecurityContext> CachingJWSKeySelector<C> fromJWKSetSource(
+            final @NonNull JWKSetSource<C> jwkSetSource) throws KeySourceException {
+        return fromJWKSetSource(jwkSetSource, null);
+    }
+
+    /**
+     * @param unknownKeyIdRefresh coalesces and rate limits the refreshes on unknown key ids, may be
+     *     {@code null}
+     */
+    public static <C extends SecurityContext> CachingJWSKeySelector<C> fromJWKSetSource(
+            final @NonNull JWKSetSource<C> jwkSetSource, final UnknownKeyIdRefresh unknownKeyIdRefresh)
+            throws KeySourceException {
+        var jwkSet = jwkSetSource.getJWKSet(noRefresh(), System.currentTimeMillis(), null);
+        return new CachingJWSKeySelector<>(
+                algorithmsFromJWKSet(jwkSet), jwkSetSource, unknownKeyIdRefresh);
+    }
+
+    /**
+     * Create a key selector that retrieves nothing until the first token, for lazily loaded JWK sets.
+     *
+     * <p>Any RSA, EC or EdDSA algorithm is accepted, and the keys are selected by the token's {@code
+     * alg} header from the JWK set retrieved on first use, so the key type of the issuer need not be
+     * known in advance. Symmetric algorithms are never accepted.
+     *
+     * @param jwkSetSource the JWK set source
+     * @return the key selector
+     */
+    public static <C extends SecurityContext> CachingJWSKeySelector<C> lazy(
+            final @NonNull JWKSetSource<C> jwkSetSource) {
+        return lazy(jwkSetSource, null);
+    }
+
+    /**
+     * @param unknownKeyIdRefresh coalesces and rate limits the refreshes on unknown key ids, may be
+     *     {@code null}
+     */
+    public static <C extends SecurityContext> CachingJWSKeySelector<C> lazy(
+            final @NonNull JWKSetSource<C> jwkSetSource, final UnknownKeyIdRefresh unknownKeyIdRefresh) {
+        return new CachingJWSKeySelector<>(ASYMMETRIC_ALGORITHMS, jwkSetSource, unknownKeyIdRefresh);
+    }
+
+    /**
+     * The algorithm families of the public RSA, EC and Ed25519 signing keys in a JWK set.
+     *
+     * @param jwkSet the JWK set
+     * @return the accepted algorithms
+     * @throws KeySourceException if the JWK set holds no RSA, EC or Ed25519 keys
+     */
+    public static Set<JWSAlgorithm> algorithmsFromJWKSet(final @NonNull JWKSet jwkSet)
+            throws KeySourceException {
+        Set<JWSAlgorithm> algorithms = new HashSet<>();
+        for (JWK jwk : jwkSet.getKeys()) {
+            if (jwk.isPrivate()
+                    || (jwk.getKeyUse() != null && !KeyUse.SIGNATURE.equals(jwk.getKeyUse()))) {
+                continue;
+            }
+            if (KeyType.RSA.equals(jwk.getKeyType())) {
+                algorithms.addAll(JWSAlgorithm.Family.RSA);
+            } else if (KeyType.EC.equals(jwk.getKeyType())) {
+                algorithms.addAll(JWSAlgorithm.Family.EC);
+            } else if (jwk instanceof OctetKeyPair okp && Curve.Ed25519.equals(okp.getCurve())) {
+                algorithms.addAll(Ed25519Verifier.SUPPORTED_ALGORITHMS);
+            }
+        }
+
+        if (algorithms.isEmpty()) {
+            throw new KeySourceException("Couldn't retrieve JWKs");
+        }
+        return algorithms;
+    }
+
+    @Override
+    public List<? extends Key> selectJWSKeys(final @NonNull JWSHeader header, final C context)
+            throws KeySourceException {
+        if (!algorithms.contains(header.getAlgorithm())) {
+            return Collections.emptyList();
+        }
+
+        var currentTime = System.currentTimeMillis();
+        var jwkSetIndex = index(jwkSetSource.getJWKSet(noRefresh(), currentTime, context));
+        var keys = jwkSetIndex.select(header);
+        if (!keys.isEmpty()) {
+            return keys;
+        }
+
+        var current = jwkSetIndex.getJwkSet();
+        var refreshed =
+                unknownKeyIdRefresh != null
+                        ? unknownKeyIdRefresh.refresh(
+                                current,
+                                () -> jwkSetSource.getJWKSet(referenceComparison(current), currentTime, context))
+                        : jwkSetSource.getJWKSet(referenceComparison(current), currentTime, context);
+        return index(refreshed).select(header);
+    }
+
+    private @NonNull JWKSetIndex index(final @NonNull JWKSet jwkSet) {
+        var current = index.get();
+        if (current != null && current.getJwkSet() == jwkSet) {
+            return current;
+        }
+
+        var rebuilt = new JWKSetIndex(jwkSet);
+        index.set(rebuilt);
+        return rebuilt;
+    }
+}
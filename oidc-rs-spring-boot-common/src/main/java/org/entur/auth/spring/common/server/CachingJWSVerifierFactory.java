@@ -0,0 +1,68 @@
+package org.entur.auth.spring.common.server;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.factories.DefaultJWSVerifierFactory;
+import com.nimbusds.jose.jca.JCAContext;
+import com.nimbusds.jose.proc.JWSVerifierFactory;
+import java.security.Key;
+import java.security.PublicKey;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.NonNull;
+
+/**
+ * {@link JWSVerifierFactory} reusing the verifier created for a key.
+ *
+ * <p>Verifiers are cached by key identity and dropped when the key is no longer referenced, which
+ * happens when the {@link JWKSetIndex} holding it is replaced after a JWK set refresh. Ed25519 keys
+ * are verified by {@link Ed25519Verifier}, other keys by {@link DefaultJWSVerifierFactory}.
+ */
+public final class CachingJWSVerifierFactory implements JWSVerifierFactory {
+    private final @NonNull DefaultJWSVerifierFactory delegate = new DefaultJWSVerifierFactory();
+    private final @NonNull Set<JWSAlgorithm> supportedAlgorithms =
+            Set.copyOf(
+                    Stream.concat(
+                                    delegate.supportedJWSAlgorithms().stream(),
+                                    Ed25519Verifier.SUPPORTED_ALGORITHMS.stream())
+                            .collect(Collectors.toSet()));
+    private final @NonNull Cache<Key, JWSVerifier> verifiers =
+            Caffeine.newBuilder().weakKeys().build();
+
+    @Override
+    public JWSVerifier createJWSVerifier(final @NonNull JWSHeader header, final @NonNull Key key)
+            throws JOSEException {
+        var verifier = verifiers.getIfPresent(key);
+        if (verifier != null && verifier.supportedJWSAlgorithms().contains(header.getAlgorithm())) {
+            return verifier;
+        }
+
+        if (Ed25519Verifier.isEd25519(key)) {
+            if (!Ed25519Verifier.SUPPORTED_ALGORITHMS.contains(header.getAlgorithm())) {
+                throw new JOSEException(
+                        "Unsupported JWS algorithm for Ed25519 key: " + header.getAlgorithm());
+            }
+            verifier = new Ed25519Verifier((PublicKey) key);
+        } else {
+            // Let the delegate reject algorithms that do not fit the key
+            verifier = delegate.createJWSVerifier(header, key);
+        }
+        verifiers.put(key, verifier);
+        return verifier;
+    }
+
+    @Override
+    public Set<JWSAlgorithm> supportedJWSAlgorithms() {
+        return supportedAlgorithms;
+    }
+
+    @Override
+    public JCAContext getJCAContext() {
+        return delegate.getJCAContext();
+    }
+}
@@ -0,0 +1,198 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2ErrorCodes;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+
+/**
+ * Rejects tokens on their unverified claims before the signature is verified.
+ *
+ * <p>Checks {@code exp} and {@code nbf} with the same clock skew as the Spring Security validators,
+ * {@code iss} against the issuer and {@code aud} against the configured audiences. A token passing
+ * these checks is still fully validated after its signature has been verified, so the checks only
+ * save the signature verification of tokens that would be rejected anyway.
+ */
+public final class ClaimsPreCheck {
+    private final @NonNull Clock clock;
+    private final @NonNull Duration clockSkew;
+    private final @NonNull String issuerUrl;
+    private final @NonNull Set<String> audiences;
+
+    /**
+     * @param issuerUrl the expected {@code iss} claim
+     * @param audiences accepted audiences, none to skip the audience check
+     */
+    public ClaimsPreCheck(
+            final @NonNull Clock clock,
+            final @NonNull Duration clockSkew,
+            final @NonNull String issuerUrl,
+            final @NonNull Collection<String> audiences) {
+        this.clock = clock;
+        this.clockSkew = clockSkew;
+        this.issuerUrl = issuerUrl;
+        this.audiences = Set.copyOf(audiences);
+    }
+
+    public ClaimsPreCheck(
+            final @NonNull PreCheckProperties properties,
+            final @NonNull String issuerUrl,
+            final @NonNull Collection<String> audiences) {
+        this(Clock.systemUTC(), Duration.ofSeconds(properties.getClockSkew()), issuerUrl, audiences);
+    }
+
+    /**
+     * Check the claims of a parsed token. Tokens whose claims cannot be read are left to the full
+     * validation.
+     *
+     * @throws ClaimsPreCheckException if the token is rejected
+     */
+    public void verify(final @NonNull JWT jwt) {
+        final JWTClaimsSet claims;
+        try {
+            claims = jwt.getJWTClaimsSet();
+        } catch (ParseException ex) {
+            return;
+        }
+
+        var rejection = check(claims);
+        if (rejection != null) {
+            throw new ClaimsPreCheckException(rejection, claims);
+        }
+    }
+
+    /**
+     * @return the reason the claims are rejected, {@code null} if they pass
+     */
+    public Rejection check(final @NonNull JWTClaimsSet claims) {
+        Date expiresAt = claims.getExpirationTime();
+        Date notBefore = claims.getNotBeforeTime();
+        return check(
+                expiresAt != null ? expiresAt.toInstant() : null,
+                notBefore != null ? notBefore.toInstant() : null,
+                claims.getIssuer(),
+                claims.getAudience());
+    }
+
+    /**
+     * @return the reason the claims of a decoded token are rejected, {@code null} if they pass
+     */
+    public Rejection check(final @NonNull Jwt jwt) {
+        var audience = jwt.getAudience();
+        return check(
+                jwt.getExpiresAt(),
+                jwt.getNotBefore(),
+                jwt.getClaimAsString(JwtClaimNames.ISS),
+                audience != null ? audience : List.of());
+    }
+
+    private Rejection check(
+            final Instant expiresAt,
+            final Instant notBefore,
+            final String issuer,
+            final @NonNull List<String> tokenAudiences) {
+        var now = clock.instant();
+
+        if (expiresAt != null && now.minus(clockSkew).isAfter(expiresAt)) {
+            return Rejection.EXPIRED;
+        }
+
+        if (notBefore != null && now.plus(clockSkew).isBefore(notBefore)) {
+            return Rejection.NOT_YET_VALID;
+        }
+
+        if (!issuerUrl.equals(issuer)) {
+            return Rejection.BAD_ISSUER;
+        }
+
+        if (!audiences.isEmpty() && !hasAudience(tokenAudiences)) {
+            return Rejection.BAD_AUDIENCE;
+        }
+        return null;
+    }
+
+    private boolean hasAudience(final List<String> tokenAudiences) {
+        for (int i = 0; i < tokenAudiences.size(); i++) {
+            var audience = tokenAudiences.get(i);
+            if (audience != null && audiences.contains(audience)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Reason a token is rejected, used as a bounded metric tag. */
+    @RequiredArgsConstructor
+    public enum Rejection {
+        EXPIRED("expired"),
+        NOT_YET_VALID("not-yet-valid"),
+        BAD_ISSUER("bad-issuer"),
+        BAD_AUDIENCE("bad-audience");
+
+        private final @Getter @NonNull String tag;
+    }
+
+    /**
+     * Thrown for a rejected token. Carries the same error as the Spring Security validator that would
+     * have rejected the token after signature verification, and no stack trace.
+     */
+    public static final class ClaimsPreCheckException extends JwtValidationException {
+        private static final long serialVersionUID = 1L;
+
+        private final @Getter @NonNull Rejection rejection;
+
+        ClaimsPreCheckException(
+                final @NonNull Rejection rejection, final @NonNull JWTClaimsSet claims) {
+            this(rejection, error(rejection, claims));
+        }
+
+        private ClaimsPreCheckException(
+                final @NonNull Rejection rejection, final @NonNull OAuth2Error error) {
+            super(
+                    "An error occurred while attempting to decode the Jwt: " + error.getDescription(),
+                    List.of(error));
+            this.rejection = rejection;
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+        private static OAuth2Error error(final Rejection rejection, final JWTClaimsSet claims) {
+            var tokenRejection = TokenRejection.of(rejection);
+            return switch (rejection) {
+                case EXPIRED -> invalidToken(
+                        tokenRejection, "Jwt expired at " + claims.getExpirationTime().toInstant());
+                case NOT_YET_VALID -> invalidToken(
+                        tokenRejection, "Jwt used before " + claims.getNotBeforeTime().toInstant());
+                case BAD_ISSUER -> invalidToken(tokenRejection, "The iss claim is not valid");
+                case BAD_AUDIENCE -> new TokenRejectionError(
+                        tokenRejection, "401", AudienceValidator.ERROR_DESCRIPTION, null);
+            };
+        }
+
+        private static OAuth2Error invalidToken(
+                final TokenRejection rejection, final String description) {
+            return new TokenRejectionError(
+                    rejection,
+                    OAuth2ErrorCodes.INVALID_TOKEN,
+                    description,
+                    "https://tools.ietf.org/html/rfc6750#section-3.1");
+        }
+    }
+}
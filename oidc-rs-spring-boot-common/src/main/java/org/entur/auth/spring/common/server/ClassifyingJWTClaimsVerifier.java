@@ -0,0 +1,43 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.proc.BadJWTException;
+import com.nimbusds.jwt.proc.DefaultJWTClaimsVerifier;
+import com.nimbusds.jwt.util.DateUtils;
+
+/**
+ * Nimbus' default claims verifier, rejecting tokens used before their {@code nbf} claim with a
+ * {@link NotYetValidJWTException}.
+ *
+ * <p>Nimbus has a type of its own for expired tokens only, so the {@code nbf} claim is checked
+ * against the clock here, with the same clock skew, before the default checks run.
+ *
+ * @param <C> the security context
+ */
+public final class ClassifyingJWTClaimsVerifier<C extends SecurityContext>
+        extends DefaultJWTClaimsVerifier<C> {
+
+    /** Verifies the timestamps of the claims only, as the default verifier of Nimbus' processor. */
+    public ClassifyingJWTClaimsVerifier() {
+        super(null, null);
+    }
+
+    @Override
+    public void verify(final JWTClaimsSet claimsSet, final C context) throws BadJWTException {
+        var notBefore = claimsSet.getNotBeforeTime();
+        if (notBefore != null && !DateUtils.isBefore(notBefore, currentTime(), getMaxClockSkew())) {
+            throw new NotYetValidJWTException();
+        }
+        super.verify(claimsSet, context);
+    }
+
+    /** Thrown for a token used before its {@code nbf} claim. */
+    public static final class NotYetValidJWTException extends BadJWTException {
+        private static final long serialVersionUID = 1L;
+
+        NotYetValidJWTException() {
+            super("JWT before use time");
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.entur.auth.spring.common.server;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import lombok.NonNull;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * Classifies the failures of the wrapped validators by the claims of the token, instead of by the
+ * descriptions of their errors.
+ *
+ * <p>The errors are passed on with the same code, description and URI, as {@link
+ * TokenRejectionError} carrying the {@link TokenRejection} the claims were rejected for. Failures
+ * the claims do not explain keep the reason of their own errors.
+ */
+public final class ClassifyingJwtValidator implements OAuth2TokenValidator<Jwt> {
+    /** The clock skew of the timestamp validator of {@code JwtValidators.createDefault()}. */
+    private static final Duration CLOCK_SKEW = Duration.ofSeconds(60);
+
+    private final @NonNull OAuth2TokenValidator<Jwt> delegate;
+    private final @NonNull ClaimsPreCheck claimsCheck;
+
+    /**
+     * @param delegate the validators, with the default clock skew of Spring Security
+     * @param issuerUrl the expected {@code iss} claim
+     * @param audiences accepted audiences, none if the audience is not validated
+     */
+    public ClassifyingJwtValidator(
+            final @NonNull OAuth2TokenValidator<Jwt> delegate,
+            final @NonNull String issuerUrl,
+            final @NonNull Collection<String> audiences) {
+        this(delegate, new ClaimsPreCheck(Clock.systemUTC(), CLOCK_SKEW, issuerUrl, audiences));
+    }
+
+    ClassifyingJwtValidator(
+            final @NonNull OAuth2TokenValidator<Jwt> delegate,
+            final @NonNull ClaimsPreCheck claimsCheck) {
+        this.delegate = delegate;
+        this.claimsCheck = claimsCheck;
+    }
+
+    @Override
+    public OAuth2TokenValidatorResult validate(final Jwt jwt) {
+        var result = delegate.validate(jwt);
+        if (!result.hasErrors()) {
+            return result;
+        }
+
+        var reason = claimsCheck.check(jwt);
+        var rejection =
+                reason != null ? TokenRejection.of(reason) : TokenRejection.of(result.getErrors());
+        return OAuth2TokenValidatorResult.failure(
+                result.getErrors().stream()
+                        .<OAuth2Error>map(error -> new TokenRejectionError(rejection, error))
+                        .toList());
+    }
+}
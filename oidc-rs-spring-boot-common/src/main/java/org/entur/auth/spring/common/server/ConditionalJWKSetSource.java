@@ -0,0 +1,99 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator;
+import com.nimbusds.jose.jwk.source.JWKSetParseException;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
+import com.nimbusds.jose.jwk.source.JWKSetUnavailableException;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.Resource;
+import com.nimbusds.jose.util.ResourceRetriever;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.text.ParseException;
+import lombok.NonNull;
+
+/**
+ * JWK set source retrieving the JWKS from a URL, as {@link
+ * com.nimbusds.jose.jwk.source.URLBasedJWKSetSource} does, but parsing it only when it has changed.
+ *
+ * <p>With a {@link ConditionalResourceRetriever}, a JWKS that has not been modified is answered
+ * with the resource retrieved before, and the JWK set parsed from it is returned as it is.
+ *
+ * <p>A retriever created by the source is closed with it, a shared retriever is left open.
+ *
+ * @param <C> the security context
+ */
+public final class ConditionalJWKSetSource<C extends SecurityContext> implements JWKSetSource<C> {
+    private final @NonNull URL url;
+    private final @NonNull ResourceRetriever resourceRetriever;
+    private final boolean ownsResourceRetriever;
+
+    private volatile ParsedJWKSet parsed;
+
+    /**
+     * @param url the JWKS URL
+     * @param resourceRetriever retrieves the JWKS, shared with other sources and closed by its owner
+     */
+    public ConditionalJWKSetSource(
+            final @NonNull URL url, final @NonNull ResourceRetriever resourceRetriever) {
+        this(url, resourceRetriever, false);
+    }
+
+    /**
+     * @param url the JWKS URL
+     * @param connectTimeout the HTTP connect timeout, in milliseconds, zero for infinite
+     * @param readTimeout the HTTP read timeout, in milliseconds, zero for infinite
+     */
+    public ConditionalJWKSetSource(
+            final @NonNull URL url, final int connectTimeout, final int readTimeout) {
+        this(url, new ConditionalResourceRetriever(connectTimeout, readTimeout), true);
+    }
+
+    private ConditionalJWKSetSource(
+            final @NonNull URL url,
+            final @NonNull ResourceRetriever resourceRetriever,
+            final boolean ownsResourceRetriever) {
+        this.url = url;
+        this.resourceRetriever = resourceRetriever;
+        this.ownsResourceRetriever = ownsResourceRetriever;
+    }
+
+    @Override
+    public JWKSet getJWKSet(
+            final JWKSetCacheRefreshEvaluator refreshEvaluator, final long currentTime, final C context)
+            throws KeySourceException {
+        final Resource resource;
+        try {
+            resource = resourceRetriever.retrieveResource(url);
+        } catch (IOException ex) {
+            throw new JWKSetUnavailableException(
+                    "Couldn't retrieve JWK set from URL: " + ex.getMessage(), ex);
+        }
+
+        var last = parsed;
+        if (last != null && last.resource() == resource) {
+            return last.jwkSet();
+        }
+
+        final JWKSet jwkSet;
+        try {
+            jwkSet = JWKSet.parse(resource.getContent());
+        } catch (ParseException ex) {
+            throw new JWKSetParseException("Unable to parse JWK set", ex);
+        }
+        parsed = new ParsedJWKSet(resource, jwkSet);
+        return jwkSet;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownsResourceRetriever && resourceRetriever instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    private record ParsedJWKSet(@NonNull Resource resource, @NonNull JWKSet jwkSet) {}
+}
@@ -0,0 +1,177 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.util.AbstractRestrictedResourceRetriever;
+import com.nimbusds.jose.util.BoundedInputStream;
+import com.nimbusds.jose.util.IOUtils;
+import com.nimbusds.jose.util.Resource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import lombok.NonNull;
+
+/**
+ * Resource retriever making conditional requests, for a JWKS that rarely changes.
+ *
+ * <p>The {@code ETag} and {@code Last-Modified} of the last resource retrieved from a URL are sent
+ * back as {@code If-None-Match} and {@code If-Modified-Since}. A {@code 304 Not Modified} answer
+ * returns the same {@link Resource} instance as before, so callers can tell that nothing changed
+ * without comparing the content. Responses may be gzip encoded.
+ *
+ * <p>Requests are sent with an {@link HttpClient}, which keeps connections alive between retrievals
+ * and prefers HTTP/2. One retriever can be shared by the JWK sources of all issuers, so they share
+ * its connection pool.
+ */
+public final class ConditionalResourceRetriever extends AbstractRestrictedResourceRetriever
+        implements Closeable {
+    private final HttpClient httpClient;
+    private final boolean ownsHttpClient;
+    private final Map<String, RetrievedResource> lastRetrieved = new ConcurrentHashMap<>();
+
+    /**
+     * @param connectTimeout the HTTP connect timeout, in milliseconds, zero for infinite
+     * @param readTimeout the HTTP read timeout, in milliseconds, zero for infinite
+     */
+    public ConditionalResourceRetriever(final int connectTimeout, final int readTimeout) {
+        this(httpClient(connectTimeout), true, connectTimeout, readTimeout);
+    }
+
+    /**
+     * @param httpClient the client sending every request, with its own connect timeout
+     * @param connectTimeout the HTTP connect timeout of the client, in milliseconds
+     * @param readTimeout the HTTP read timeout, in milliseconds, zero for infinite
+     */
+    public ConditionalResourceRetriever(
+            final @NonNull HttpClient httpClient, final int connectTimeout, final int readTimeout) {
+        this(httpClient, false, connectTimeout, readTimeout);
+    }
+
+    private ConditionalResourceRetriever(
+            final @NonNull HttpClient httpClient,
+            final boolean ownsHttpClient,
+            final int connectTimeout,
+            final int readTimeout) {
+        super(connectTimeout, readTimeout, 0);
+        this.httpClient = httpClient;
+        this.ownsHttpClient = ownsHttpClient;
+    }
+
+    /**
+     * @param connectTimeout the HTTP connect timeout, in milliseconds, zero for infinite
+     * @return a client preferring HTTP/2 and following redirects, as {@code HttpURLConnection} does
+     */
+    public static @NonNull HttpClient httpClient(final int connectTimeout) {
+        var builder =
+                HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_2)
+                        .followRedirects(HttpClient.Redirect.NORMAL);
+        if (connectTimeout > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeout));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Resource retrieveResource(final @NonNull URL url) throws IOException {
+        var key = url.toString();
+        var previous = lastRetrieved.get(key);
+
+        final HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(url.toURI()).GET();
+        } catch (URISyntaxException ex) {
+            throw new IOException("Invalid URL: " + key, ex);
+        }
+        request.header("Accept-Encoding", "gzip");
+        if (getReadTimeout() > 0) {
+            request.timeout(Duration.ofMillis(getReadTimeout()));
+        }
+        if (getHeaders() != null) {
+            for (Map.Entry<String, List<String>> header : getHeaders().entrySet()) {
+                for (String value : header.getValue()) {
+                    request.header(header.getKey(), value);
+                }
+            }
+        }
+        if (previous != null) {
+            if (previous.etag() != null) {
+                request.header("If-None-Match", previous.etag());
+            }
+            if (previous.lastModified() != null) {
+                request.header("If-Modified-Since", previous.lastModified());
+            }
+        }
+
+        final HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted retrieving " + key);
+        }
+
+        int statusCode = response.statusCode();
+        if (statusCode == 304 && previous != null) {
+            response.body().close();
+            return previous.resource();
+        }
+        if (statusCode < 200 || statusCode > 299) {
+            response.body().close();
+            throw new IOException("HTTP " + statusCode + " retrieving " + key);
+        }
+
+        final String content;
+        try (InputStream inputStream = inputStream(response)) {
+            content = IOUtils.readInputStreamToString(inputStream, StandardCharsets.UTF_8);
+        }
+
+        var headers = response.headers();
+        var resource = new Resource(content, headers.firstValue("Content-Type").orElse(null));
+        lastRetrieved.put(
+                key,
+                new RetrievedResource(
+                        resource,
+                        headers.firstValue("ETag").orElse(null),
+                        headers.firstValue("Last-Modified").orElse(null)));
+        return resource;
+    }
+
+    /**
+     * Forget the retrieved resources. A client created by the retriever is closed as well, on Java
+     * versions where {@link HttpClient} can be closed, and otherwise stops once it is unreachable.
+     */
+    @Override
+    public void close() throws IOException {
+        lastRetrieved.clear();
+        if (ownsHttpClient && httpClient instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException | RuntimeException ex) {
+                throw ex;
+            } catch (Exception ex) {
+                throw new IOException("Unable to close HTTP client", ex);
+            }
+        }
+    }
+
+    private InputStream inputStream(final HttpResponse<InputStream> response) throws IOException {
+        InputStream inputStream = response.body();
+        if ("gzip".equalsIgnoreCase(response.headers().firstValue("Content-Encoding").orElse(null))) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
+        return getSizeLimit() > 0 ? new BoundedInputStream(inputStream, getSizeLimit()) : inputStream;
+    }
+
+    private record RetrievedResource(@NonNull Resource resource, String etag, String lastModified) {}
+}
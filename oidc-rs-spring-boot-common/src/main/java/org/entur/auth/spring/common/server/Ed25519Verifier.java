@@ -0,0 +1,125 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSVerifier;
+import com.nimbusds.jose.crypto.impl.BaseJWSProvider;
+import com.nimbusds.jose.crypto.impl.CriticalHeaderParamsDeferral;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.util.Base64URL;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.interfaces.EdECPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Set;
+import lombok.NonNull;
+
+/**
+ * {@link JWSVerifier} for EdDSA signatures with Ed25519 keys, using the Ed25519 implementation of
+ * the JDK.
+ *
+ * <p>Nimbus only verifies Ed25519 with an {@link OctetKeyPair} and Google Tink on the classpath,
+ * and its {@link com.nimbusds.jose.jwk.KeyConverter} does not convert OKP keys. The JDK has
+ * verified Ed25519 since Java 15, so the keys are converted to {@link EdECPublicKey} by {@link
+ * #toPublicKey(OctetKeyPair)} and verified like RSA and EC keys.
+ */
+public final class Ed25519Verifier extends BaseJWSProvider implements JWSVerifier {
+    /** The algorithms verified with Ed25519 keys. */
+    public static final Set<JWSAlgorithm> SUPPORTED_ALGORITHMS = Set.of(JWSAlgorithm.EdDSA);
+
+    private static final String ED25519 = "Ed25519";
+
+    /** DER prefix of an X.509 SubjectPublicKeyInfo for Ed25519, followed by the 32 key bytes. */
+    private static final byte[] X509_PREFIX = {
+        0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00
+    };
+
+    private static final int KEY_LENGTH = 32;
+
+    private final @NonNull PublicKey publicKey;
+    private final @NonNull CriticalHeaderParamsDeferral critPolicy =
+            new CriticalHeaderParamsDeferral();
+
+    /**
+     * @param publicKey the Ed25519 public key
+     * @throws JOSEException if the key is not an Ed25519 key
+     */
+    public Ed25519Verifier(final @NonNull PublicKey publicKey) throws JOSEException {
+        super(SUPPORTED_ALGORITHMS);
+        if (!isEd25519(publicKey)) {
+            throw new JOSEException("Ed25519Verifier requires an Ed25519 public key");
+        }
+        this.publicKey = publicKey;
+    }
+
+    /**
+     * @param key a Java key
+     * @return whether the key is an Ed25519 public key
+     */
+    public static boolean isEd25519(final @NonNull Key key) {
+        return key instanceof EdECPublicKey edKey
+                && ED25519.equalsIgnoreCase(edKey.getParams().getName());
+    }
+
+    /**
+     * Convert the public part of an Ed25519 JWK to a Java public key.
+     *
+     * @param jwk an OKP JWK
+     * @return the public key
+     * @throws JOSEException if the JWK is not an Ed25519 key or the JDK does not support Ed25519
+     */
+    public static @NonNull PublicKey toPublicKey(final @NonNull OctetKeyPair jwk)
+            throws JOSEException {
+        if (!Curve.Ed25519.equals(jwk.getCurve())) {
+            throw new JOSEException("Unsupported curve of OKP key: " + jwk.getCurve());
+        }
+
+        var x = jwk.getX().decode();
+        if (x.length != KEY_LENGTH) {
+            throw new JOSEException("Invalid length of Ed25519 key: " + x.length);
+        }
+
+        var encoded = new byte[X509_PREFIX.length + KEY_LENGTH];
+        System.arraycopy(X509_PREFIX, 0, encoded, 0, X509_PREFIX.length);
+        System.arraycopy(x, 0, encoded, X509_PREFIX.length, KEY_LENGTH);
+        try {
+            return KeyFactory.getInstance(ED25519).generatePublic(new X509EncodedKeySpec(encoded));
+        } catch (GeneralSecurityException ex) {
+            throw new JOSEException("Unable to convert Ed25519 key: " + ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public boolean verify(
+            final @NonNull JWSHeader header,
+            final byte[] signingInput,
+            final @NonNull Base64URL signature)
+            throws JOSEException {
+        if (!SUPPORTED_ALGORITHMS.contains(header.getAlgorithm())) {
+            throw new JOSEException("Unsupported JWS algorithm: " + header.getAlgorithm());
+        }
+        if (!critPolicy.headerPasses(header)) {
+            return false;
+        }
+
+        try {
+            // Signature instances are not thread-safe, the verifier is shared between requests
+            var verifier = Signature.getInstance(ED25519);
+            verifier.initVerify(publicKey);
+            verifier.update(signingInput);
+            return verifier.verify(signature.decode());
+        } catch (SignatureException ex) {
+            return false;
+        } catch (InvalidKeyException | NoSuchAlgorithmException ex) {
+            throw new JOSEException("Unable to verify Ed25519 signature: " + ex.getMessage(), ex);
+        }
+    }
+}
@@ -18,9 +18,18 @@ public class EnturAuthProperties {
     private int cacheRefreshTimeout = 15;
     private int cacheLifespan = 300;
     private int outageTolerant = 36000;
+    private boolean cacheControl = false;
 
     private List<IssuerProperties> issuers = new ArrayList<>();
     private TenantsProperties tenants = new TenantsProperties();
     private ExternalAuthProperties external = new ExternalAuthProperties();
     private List<ApiProperties> apis = new ArrayList<>();
+    private TokenCacheProperties tokenCache = new TokenCacheProperties();
+    private RejectedTokenCacheProperties rejectedTokenCache = new RejectedTokenCacheProperties();
+    private MetricsProperties metrics = new MetricsProperties();
+    private BootstrapProperties bootstrap = new BootstrapProperties();
+    private JwksRefreshProperties jwksRefresh = new JwksRefreshProperties();
+    private JwksSnapshotProperties jwksSnapshot = new JwksSnapshotProperties();
+    private UnknownKidProperties unknownKid = new UnknownKidProperties();
+    private PreCheckProperties preCheck = new PreCheckProperties();
 }
@@ -10,8 +10,10 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @Data
 public class ExternalAuthProperties {
     private boolean enabled = true;
+    private String resource;
     private List<String> tenants = new ArrayList<>();
     private List<IssuerProperties> issuers = new ArrayList<>();
+    private ExternalWatchProperties watch = new ExternalWatchProperties();
 
     public List<IssuerProperties> getFilteredIssuers() {
         return issuers.stream().filter(this::filter).toList();
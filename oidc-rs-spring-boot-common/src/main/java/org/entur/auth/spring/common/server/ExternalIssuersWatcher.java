@@ -0,0 +1,216 @@
+package org.entur.auth.spring.common.server;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.bind.PlaceholdersResolver;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySource;
+import org.springframework.boot.context.properties.source.MapConfigurationPropertySource;
+
+/**
+ * Watches the external providers file and applies changed issuers to a running resolver.
+ *
+ * <p>The whole directory is watched, as a Kubernetes ConfigMap volume replaces its files by
+ * swapping a symbolic link. Events are debounced, and only issuers that were added, removed or
+ * changed are applied, so unchanged issuers keep their cached JWKS.
+ */
+@Slf4j
+public final class ExternalIssuersWatcher implements Closeable {
+    private final @NonNull Path file;
+    private final @NonNull Duration debounce;
+    private final @NonNull Function<Path, List<IssuerProperties>> loader;
+    private final @NonNull SupportsIssuerUpdates resolver;
+    private final @NonNull Set<String> protectedIssuers;
+    private final @NonNull ScheduledExecutorService scheduler;
+
+    private Map<String, IssuerProperties> current;
+    private ScheduledFuture<?> pendingReload;
+    private WatchService watchService;
+
+    /**
+     * @param file the external providers file
+     * @param debounce quiet time after the last change before the file is read
+     * @param loader reads the external issuers from the file
+     * @param resolver the resolver to update
+     * @param initialIssuers the external issuers already registered
+     * @param protectedIssuers issuers configured elsewhere, which are never removed
+     */
+    public ExternalIssuersWatcher(
+            final @NonNull Path file,
+            final @NonNull Duration debounce,
+            final @NonNull Function<Path, List<IssuerProperties>> loader,
+            final @NonNull SupportsIssuerUpdates resolver,
+            final @NonNull List<IssuerProperties> initialIssuers,
+            final @NonNull Set<String> protectedIssuers) {
+        this.file = file.toAbsolutePath();
+        this.debounce = debounce;
+        this.loader = loader;
+        this.resolver = resolver;
+        this.protectedIssuers = Set.copyOf(protectedIssuers);
+        this.current = byIssuerUrl(initialIssuers);
+        this.scheduler =
+                Executors.newSingleThreadScheduledExecutor(
+                        runnable -> {
+                            var thread = new Thread(runnable, "external-issuers-watcher");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    /**
+     * Read external issuers from a properties file, resolving placeholders against the application
+     * environment and keeping the issuers of the given tenants.
+     */
+    public static Function<Path, List<IssuerProperties>> propertiesLoader(
+            final @NonNull PlaceholdersResolver placeholdersResolver,
+            final @NonNull List<String> tenants) {
+        return file -> {
+            var properties = new Properties();
+            try (var reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex.getMessage(), ex);
+            }
+
+            var externalAuthProperties =
+                    new Binder(
+                                    List.<ConfigurationPropertySource>of(
+                                            new MapConfigurationPropertySource(properties)),
+                                    placeholdersResolver)
+                            .bind("entur.auth.external", ExternalAuthProperties.class)
+                            .orElseGet(ExternalAuthProperties::new);
+            externalAuthProperties.setTenants(tenants);
+            return externalAuthProperties.getFilteredIssuers();
+        };
+    }
+
+    /** Start watching the directory of the file. */
+    public void start() throws IOException {
+        var directory = file.getParent();
+        if (directory == null) {
+            throw new IOException("No directory to watch for external issuers: file = " + file);
+        }
+
+        watchService = file.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+
+        var watcher = new Thread(this::watch, "external-issuers-watch-service");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("Watching external issuers: file = {}", file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdownNow();
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                key.pollEvents();
+                scheduleReload();
+                if (!key.reset()) {
+                    log.warn("Stopped watching external issuers, directory is gone: file = {}", file);
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ex) {
+            // Closed on shutdown
+        }
+    }
+
+    private synchronized void scheduleReload() {
+        if (pendingReload != null) {
+            pendingReload.cancel(false);
+        }
+        pendingReload = scheduler.schedule(this::reload, debounce.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Read the file and apply the issuers that differ from the ones currently registered. */
+    synchronized void reload() {
+        final Map<String, IssuerProperties> updated;
+        try {
+            updated = byIssuerUrl(loader.apply(file));
+        } catch (RuntimeException ex) {
+            log.warn("Unable to read external issuers, keeping current issuers: file = {}", file, ex);
+            return;
+        }
+
+        var previous = current;
+        previous.forEach(
+                (issuerUrl, issuerProperties) -> {
+                    if (!updated.containsKey(issuerUrl)
+                            && !protectedIssuers.contains(issuerUrl)
+                            && resolver.removeIssuer(issuerUrl)) {
+                        log.info("Removed external issuer: issuerUri = {}", issuerUrl);
+                    }
+                });
+
+        var applied = new LinkedHashMap<String, IssuerProperties>();
+        updated.forEach(
+                (issuerUrl, issuerProperties) -> {
+                    var previousProperties = previous.get(issuerUrl);
+                    if (issuerProperties.equals(previousProperties)
+                            || (previousProperties != null && protectedIssuers.contains(issuerUrl))) {
+                        // Protected issuers keep the registration they were configured with
+                        applied.put(issuerUrl, issuerProperties);
+                        return;
+                    }
+
+                    try {
+                        if (previousProperties == null) {
+                            resolver.addIssuer(issuerProperties);
+                        } else {
+                            // Swapped in one step, so tokens of the issuer are accepted throughout
+                            resolver.replaceIssuer(issuerProperties);
+                        }
+                        applied.put(issuerUrl, issuerProperties);
+                    } catch (RuntimeException ex) {
+                        // Left as it was, so the issuer is applied again on the next change
+                        if (previousProperties != null) {
+                            applied.put(issuerUrl, previousProperties);
+                        }
+                        log.error("Unable to apply external issuer: issuerUri = {}", issuerUrl, ex);
+                    }
+                });
+
+        current = applied;
+    }
+
+    private static Map<String, IssuerProperties> byIssuerUrl(
+            final @NonNull List<IssuerProperties> issuers) {
+        var issuersByUrl = new LinkedHashMap<String, IssuerProperties>();
+        issuers.forEach(issuer -> issuersByUrl.putIfAbsent(issuer.getIssuerUrl(), issuer));
+        return issuersByUrl;
+    }
+}
@@ -0,0 +1,9 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.Data;
+
+@Data
+public class ExternalWatchProperties {
+    private boolean enabled = false;
+    private int debounce = 2;
+}
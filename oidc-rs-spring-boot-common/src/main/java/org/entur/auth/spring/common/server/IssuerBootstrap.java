@@ -0,0 +1,200 @@
+package org.entur.auth.spring.common.server;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Adds issuers at startup with their JWKS retrieved concurrently on a bounded pool.
+ *
+ * <p>Startup waits for every issuer until the deadline, and fails if an issuer fails within it,
+ * cancelling the issuers still loading. Issuers still loading at the deadline are added in the
+ * background, and hold readiness until they are added. Background failures are logged and retried
+ * with an exponential backoff, doubling from one second up to a minute.
+ */
+@Slf4j
+public final class IssuerBootstrap implements Closeable {
+    private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAXIMUM_BACKOFF = Duration.ofMinutes(1);
+
+    private final @NonNull BootstrapProperties bootstrapProperties;
+    private final @NonNull Runnable completionListener;
+    private final @NonNull Duration initialBackoff;
+    private final @NonNull AtomicInteger pending = new AtomicInteger();
+    private final @NonNull ScheduledThreadPoolExecutor executor;
+    private boolean background;
+    private RuntimeException startupFailure;
+
+    public IssuerBootstrap(final @NonNull BootstrapProperties bootstrapProperties) {
+        this(bootstrapProperties, () -> {});
+    }
+
+    /**
+     * @param completionListener called when the last issuer added in the background is added
+     */
+    public IssuerBootstrap(
+            final @NonNull BootstrapProperties bootstrapProperties,
+            final @NonNull Runnable completionListener) {
+        this(bootstrapProperties, completionListener, INITIAL_BACKOFF);
+    }
+
+    IssuerBootstrap(
+            final @NonNull BootstrapProperties bootstrapProperties,
+            final @NonNull Runnable completionListener,
+            final @NonNull Duration initialBackoff) {
+        this.bootstrapProperties = bootstrapProperties;
+        this.completionListener = completionListener;
+        this.initialBackoff = initialBackoff;
+        var threadCount = new AtomicInteger();
+        this.executor =
+                new ScheduledThreadPoolExecutor(
+                        Math.max(bootstrapProperties.getParallelism(), 1),
+                        runnable -> {
+                            var thread =
+                                    new Thread(runnable, "issuer-bootstrap-" + threadCount.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        // Threads are only started by addAll, and stop once every issuer is added
+        executor.setKeepAliveTime(1, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * @return {@code true} when no issuer is still being added in the background
+     */
+    public boolean isComplete() {
+        return pending.get() == 0;
+    }
+
+    /**
+     * Add issuers concurrently. When an issuer URL occurs more than once, the first occurrence is
+     * added.
+     *
+     * @param issuers the issuers to add
+     * @param addIssuer adds one issuer, retrieving its JWKS
+     */
+    public void addAll(
+            final @NonNull Collection<IssuerProperties> issuers,
+            final @NonNull Consumer<IssuerProperties> addIssuer) {
+        var byIssuerUrl = new LinkedHashMap<String, IssuerProperties>();
+        issuers.forEach(issuer -> byIssuerUrl.putIfAbsent(issuer.getIssuerUrl(), issuer));
+
+        int parallelism = Math.min(bootstrapProperties.getParallelism(), byIssuerUrl.size());
+        if (parallelism <= 1) {
+            byIssuerUrl.values().forEach(addIssuer);
+            return;
+        }
+
+        var completionService = new ExecutorCompletionService<Void>(executor);
+        List<Future<Void>> futures = new ArrayList<>();
+        for (IssuerProperties issuer : byIssuerUrl.values()) {
+            pending.incrementAndGet();
+            futures.add(completionService.submit(() -> add(issuer, addIssuer, initialBackoff), null));
+        }
+        try {
+            await(completionService, futures.size());
+        } catch (RuntimeException ex) {
+            // Startup fails, so issuers still loading are not added
+            futures.forEach(future -> future.cancel(true));
+            throw ex;
+        }
+    }
+
+    /** Stop adding issuers in the background. */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void add(
+            final @NonNull IssuerProperties issuer,
+            final @NonNull Consumer<IssuerProperties> addIssuer,
+            final @NonNull Duration backoff) {
+        try {
+            addIssuer.accept(issuer);
+        } catch (RuntimeException ex) {
+            synchronized (this) {
+                if (!background) {
+                    startupFailure = startupFailure != null ? startupFailure : ex;
+                    throw ex;
+                }
+            }
+            log.warn(
+                    "Unable to add issuer in the background, retrying in {}: issuerUri = {}",
+                    backoff,
+                    issuer.getIssuerUrl(),
+                    ex);
+            retry(issuer, addIssuer, backoff);
+            return;
+        }
+
+        if (pending.decrementAndGet() == 0) {
+            completionListener.run();
+        }
+    }
+
+    private void retry(
+            final @NonNull IssuerProperties issuer,
+            final @NonNull Consumer<IssuerProperties> addIssuer,
+            final @NonNull Duration backoff) {
+        var doubled = backoff.multipliedBy(2);
+        var next = doubled.compareTo(MAXIMUM_BACKOFF) < 0 ? doubled : MAXIMUM_BACKOFF;
+        try {
+            executor.schedule(
+                    () -> add(issuer, addIssuer, next), backoff.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // Closed on shutdown, the issuer is not added
+        }
+    }
+
+    /** Wait for the issuers in the order they complete, failing on the first that fails. */
+    private void await(final @NonNull CompletionService<Void> completionService, final int count) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(bootstrapProperties.getDeadline());
+        try {
+            for (int i = 0; i < count; i++) {
+                var future =
+                        completionService.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (future == null) {
+                    startBackground();
+                    log.warn(
+                            "Startup deadline reached, adding remaining issuers in the background: pending = {}",
+                            pending.get());
+                    return;
+                }
+                future.get();
+            }
+        } catch (ExecutionException ex) {
+            var cause = ex.getCause();
+            throw cause instanceof RuntimeException runtimeException
+                    ? runtimeException
+                    : new RuntimeException(cause.getMessage(), cause);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while adding issuers", ex);
+        }
+    }
+
+    /** Retry failures from now on. An issuer that failed before the deadline still fails startup. */
+    private synchronized void startBackground() {
+        background = true;
+        if (startupFailure != null) {
+            throw startupFailure;
+        }
+    }
+}
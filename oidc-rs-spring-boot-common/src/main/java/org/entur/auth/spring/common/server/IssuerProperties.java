@@ -18,4 +18,5 @@ public class IssuerProperties {
     private Integer cacheRefreshTimeout;
     private Integer cacheLifespan;
     private Integer outageTolerant;
+    private Boolean cacheControl;
 }
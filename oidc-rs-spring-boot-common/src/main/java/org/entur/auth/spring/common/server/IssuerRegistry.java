@@ -0,0 +1,133 @@
+package org.entur.auth.spring.common.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.NonNull;
+
+/**
+ * Copy-on-write registry of the authentication manager and JWK source of every issuer.
+ *
+ * <p>Every change publishes a new immutable snapshot, so lookups on the request path are wait-free
+ * and never see a partially applied change. Changes are serialized, as they are rare and may be
+ * made while the application is running.
+ *
+ * @param <M> the authentication manager type, servlet or reactive
+ */
+public final class IssuerRegistry<M> {
+    /** The authentication manager and JWK source registered for an issuer. */
+    public record Registration<M>(
+            @NonNull M authenticationManager, @NonNull JWKSourceWithIssuer<?> jwkSource) {}
+
+    private volatile Snapshot<M> snapshot = new Snapshot<>(Map.of());
+
+    /**
+     * @param issuer the issuer URL
+     * @return the authentication manager of the issuer, {@code null} if not registered
+     */
+    public M get(final String issuer) {
+        var registration = snapshot.registrations().get(issuer);
+        return registration != null ? registration.authenticationManager() : null;
+    }
+
+    /**
+     * @param issuer the issuer URL
+     * @return the registration of the issuer, {@code null} if not registered
+     */
+    public Registration<M> getRegistration(final String issuer) {
+        return snapshot.registrations().get(issuer);
+    }
+
+    public boolean contains(final String issuer) {
+        return snapshot.registrations().containsKey(issuer);
+    }
+
+    public @NonNull Set<String> getIssuers() {
+        return snapshot.registrations().keySet();
+    }
+
+    public @NonNull List<JWKSourceWithIssuer<?>> getJWKSources() {
+        return snapshot.jwkSources();
+    }
+
+    /**
+     * Register an issuer unless it is already registered.
+     *
+     * @return {@code true} if registered, {@code false} if the issuer was already registered
+     */
+    public synchronized boolean add(
+            final @NonNull String issuer, final @NonNull Registration<M> registration) {
+        var registrations = snapshot.registrations();
+        if (registrations.containsKey(issuer)) {
+            return false;
+        }
+
+        var updated = new HashMap<>(registrations);
+        updated.put(issuer, registration);
+        snapshot = new Snapshot<>(updated);
+        return true;
+    }
+
+    /**
+     * Register an issuer, replacing its registration if any.
+     *
+     * @return the replaced registration, {@code null} if the issuer was not registered
+     */
+    public synchronized Registration<M> put(
+            final @NonNull String issuer, final @NonNull Registration<M> registration) {
+        var updated = new HashMap<>(snapshot.registrations());
+        var replaced = updated.put(issuer, registration);
+        snapshot = new Snapshot<>(updated);
+        return replaced;
+    }
+
+    /**
+     * Remove an issuer.
+     *
+     * @return the removed registration, {@code null} if the issuer was not registered
+     */
+    public synchronized Registration<M> remove(final @NonNull String issuer) {
+        var registrations = snapshot.registrations();
+        if (!registrations.containsKey(issuer)) {
+            return null;
+        }
+
+        var updated = new HashMap<>(registrations);
+        var removed = updated.remove(issuer);
+        snapshot = new Snapshot<>(updated);
+        return removed;
+    }
+
+    /**
+     * Replace every registration in one step.
+     *
+     * @param registrations the new registrations by issuer
+     * @return the previous registrations that are not part of the new ones
+     */
+    public synchronized @NonNull List<Registration<M>> replace(
+            final @NonNull Map<String, Registration<M>> registrations) {
+        var replaced = new ArrayList<Registration<M>>();
+        for (var registration : snapshot.registrations().values()) {
+            if (!registrations.containsValue(registration)) {
+                replaced.add(registration);
+            }
+        }
+
+        snapshot = new Snapshot<>(registrations);
+        return replaced;
+    }
+
+    private record Snapshot<M>(
+            @NonNull Map<String, Registration<M>> registrations,
+            @NonNull List<JWKSourceWithIssuer<?>> jwkSources) {
+        Snapshot(final @NonNull Map<String, Registration<M>> registrations) {
+            this(
+                    Map.copyOf(registrations),
+                    registrations.values().stream()
+                            .<JWKSourceWithIssuer<?>>map(Registration::jwkSource)
+                            .toList());
+        }
+    }
+}
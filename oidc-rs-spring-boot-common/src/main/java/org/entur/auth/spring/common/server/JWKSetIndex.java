@@ -0,0 +1,125 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyConverter;
+import com.nimbusds.jose.jwk.KeyType;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import java.security.Key;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.crypto.SecretKey;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Immutable index of the verification keys in a {@link JWKSet}, by key id.
+ *
+ * <p>Every JWK is converted to a Java {@link Key} once, when the index is built, so selecting the
+ * keys for a token neither filters the whole JWK set nor converts keys. Ed25519 keys are converted
+ * by {@link Ed25519Verifier#toPublicKey}.
+ */
+public final class JWKSetIndex {
+    private final @Getter @NonNull JWKSet jwkSet;
+    private final @NonNull Candidates all;
+    private final @NonNull Map<String, Candidates> byKeyId;
+
+    public JWKSetIndex(final @NonNull JWKSet jwkSet) {
+        this.jwkSet = jwkSet;
+
+        List<IndexedKey> indexedKeys = new ArrayList<>();
+        Map<String, List<IndexedKey>> indexedKeysByKeyId = new HashMap<>();
+        for (JWK jwk : jwkSet.getKeys()) {
+            if (jwk.getKeyUse() != null && !KeyUse.SIGNATURE.equals(jwk.getKeyUse())) {
+                continue;
+            }
+
+            for (Key key : toJavaKeys(jwk)) {
+                if (key instanceof PublicKey || key instanceof SecretKey) {
+                    var indexedKey = new IndexedKey(jwk, key);
+                    indexedKeys.add(indexedKey);
+                    if (jwk.getKeyID() != null) {
+                        indexedKeysByKeyId
+                                .computeIfAbsent(jwk.getKeyID(), keyId -> new ArrayList<>())
+                                .add(indexedKey);
+                    }
+                }
+            }
+        }
+
+        this.all = new Candidates(indexedKeys);
+        Map<String, Candidates> candidatesByKeyId = new HashMap<>();
+        indexedKeysByKeyId.forEach((keyId, keys) -> candidatesByKeyId.put(keyId, new Candidates(keys)));
+        this.byKeyId = Collections.unmodifiableMap(candidatesByKeyId);
+    }
+
+    /** Convert a JWK like {@link KeyConverter}, which leaves out Ed25519 keys. */
+    private static @NonNull List<Key> toJavaKeys(final @NonNull JWK jwk) {
+        if (jwk instanceof OctetKeyPair okp && Curve.Ed25519.equals(okp.getCurve())) {
+            try {
+                return List.of(Ed25519Verifier.toPublicKey(okp));
+            } catch (JOSEException ex) {
+                // Skip invalid keys, as KeyConverter does
+                return Collections.emptyList();
+            }
+        }
+        return KeyConverter.toJavaKeys(List.of(jwk));
+    }
+
+    /**
+     * Select the keys that may verify a token with the given header: keys with the header's key id,
+     * or all keys when the header has none, whose type and algorithm fit the header's algorithm.
+     *
+     * @param header the JWS header of the token
+     * @return the matching keys, empty if none match
+     */
+    public @NonNull List<Key> select(final @NonNull JWSHeader header) {
+        var candidates = header.getKeyID() != null ? byKeyId.get(header.getKeyID()) : all;
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+
+        return candidates.select(header.getAlgorithm());
+    }
+
+    private record IndexedKey(@NonNull JWK jwk, @NonNull Key key) {
+        boolean matches(final @NonNull JWSAlgorithm algorithm) {
+            if (jwk.getAlgorithm() != null && !jwk.getAlgorithm().equals(algorithm)) {
+                return false;
+            }
+            return jwk.getKeyType().equals(KeyType.forAlgorithm(algorithm));
+        }
+    }
+
+    private record Candidates(@NonNull List<IndexedKey> indexedKeys, @NonNull List<Key> keys) {
+        Candidates(final @NonNull List<IndexedKey> indexedKeys) {
+            this(List.copyOf(indexedKeys), indexedKeys.stream().map(IndexedKey::key).toList());
+        }
+
+        List<Key> select(final @NonNull JWSAlgorithm algorithm) {
+            List<Key> selected = null;
+            for (int i = 0; i < indexedKeys.size(); i++) {
+                var indexedKey = indexedKeys.get(i);
+                if (indexedKey.matches(algorithm)) {
+                    if (selected != null) {
+                        selected.add(indexedKey.key());
+                    }
+                } else if (selected == null) {
+                    selected = new ArrayList<>(keys.subList(0, i));
+                }
+            }
+
+            // Most tokens match every candidate, so the shared list can be returned as is
+            return selected != null ? selected : keys;
+        }
+    }
+}
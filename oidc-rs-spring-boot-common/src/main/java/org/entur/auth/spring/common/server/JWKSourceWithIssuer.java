@@ -7,25 +7,44 @@ import com.nimbusds.jose.jwk.source.JWKSetBasedJWKSource;
 import com.nimbusds.jose.jwk.source.JWKSetSource;
 import com.nimbusds.jose.jwk.source.JWKSource;
 import com.nimbusds.jose.proc.SecurityContext;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.List;
 import lombok.Getter;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 
-@RequiredArgsConstructor
-public class JWKSourceWithIssuer<C extends SecurityContext> implements JWKSource<C> {
+public class JWKSourceWithIssuer<C extends SecurityContext> implements JWKSource<C>, Closeable {
     @Getter private final String issuerUrl;
 
     private final JWKSource<SecurityContext> jwkSource;
 
+    /** Readiness tracked from retrievals, {@code null} when not tracked. */
+    @Getter private final JwksReadiness jwksReadiness;
+
+    public JWKSourceWithIssuer(final String issuerUrl, final JWKSource<SecurityContext> jwkSource) {
+        this(issuerUrl, jwkSource, null);
+    }
+
+    public JWKSourceWithIssuer(
+            final String issuerUrl,
+            final JWKSource<SecurityContext> jwkSource,
+            final JwksReadiness jwksReadiness) {
+        this.issuerUrl = issuerUrl;
+        this.jwkSource = jwkSource;
+        this.jwksReadiness = jwksReadiness;
+    }
+
     @Override
     public List<JWK> get(JWKSelector jwkSelector, SecurityContext securityContext)
             throws KeySourceException {
         return jwkSource.get(jwkSelector, securityContext);
     }
 
+    /**
+     * @return whether the issuer has usable keys, without any I/O
+     */
     public boolean getReadiness() {
-        return true;
+        return jwksReadiness == null || jwksReadiness.isReady();
     }
 
     public @NonNull JWKSetSource<SecurityContext> getJWKSetSource() {
@@ -35,4 +54,12 @@ public class JWKSourceWithIssuer<C extends SecurityContext> implements JWKSource
         throw new IllegalStateException(
                 "Not an instance of %s".formatted(JWKSetBasedJWKSource.class.getSimpleName()));
     }
+
+    /** Release the JWK source, stopping any background refresh. */
+    @Override
+    public void close() throws IOException {
+        if (jwkSource instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
 }
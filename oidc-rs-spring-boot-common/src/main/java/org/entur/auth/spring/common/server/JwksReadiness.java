@@ -0,0 +1,135 @@
+package org.entur.auth.spring.common.server;
+
+import java.time.Clock;
+import java.time.Duration;
+import lombok.NonNull;
+
+/**
+ * Readiness of an issuer, tracked from the outcome of every JWKS retrieval.
+ *
+ * <p>An issuer is ready when its last retrieval returned keys, or when it failed but the last keys
+ * were retrieved within the outage tolerance. Before the first retrieval an issuer is only ready
+ * when its JWKS is lazy loaded. Checking readiness reads a single volatile field.
+ */
+public final class JwksReadiness {
+    private final @NonNull Clock clock;
+    private final @NonNull Duration outageTolerance;
+    private final boolean lazyLoad;
+
+    private volatile State state = new State(0, Long.MIN_VALUE, false, null);
+    private volatile Runnable changeListener;
+
+    /**
+     * @param outageTolerance how long the last keys are trusted after retrieval starts failing
+     * @param lazyLoad whether the issuer is ready before its JWKS is first retrieved
+     */
+    public JwksReadiness(
+            final @NonNull Clock clock, final @NonNull Duration outageTolerance, final boolean lazyLoad) {
+        this.clock = clock;
+        this.outageTolerance = outageTolerance;
+        this.lazyLoad = lazyLoad;
+    }
+
+    public JwksReadiness(final @NonNull Duration outageTolerance, final boolean lazyLoad) {
+        this(Clock.systemUTC(), outageTolerance, lazyLoad);
+    }
+
+    public boolean isReady() {
+        return isReady(state, clock.millis());
+    }
+
+    /**
+     * @return whether a retrieval has completed, successfully or not
+     */
+    public boolean isRetrieved() {
+        return isRetrieved(state);
+    }
+
+    /**
+     * @return the outcome of the last retrievals, read from a single consistent state
+     */
+    public @NonNull Snapshot snapshot() {
+        var current = state;
+        var now = clock.millis();
+        return new Snapshot(
+                isRetrieved(current),
+                isReady(current, now),
+                current.keys(),
+                current.lastSuccess() == Long.MIN_VALUE
+                        ? null
+                        : Duration.ofMillis(now - current.lastSuccess()),
+                current.latency());
+    }
+
+    private boolean isReady(final @NonNull State current, final long now) {
+        if (current.lastSuccess() == Long.MIN_VALUE) {
+            return lazyLoad && !current.failed();
+        }
+        if (current.keys() == 0) {
+            return false;
+        }
+        return !current.failed() || now - current.lastSuccess() < outageTolerance.toMillis();
+    }
+
+    private static boolean isRetrieved(final @NonNull State current) {
+        return current.lastSuccess() != Long.MIN_VALUE || current.failed();
+    }
+
+    /** Called when readiness may have changed, after a retrieval. */
+    public void setChangeListener(final Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /** Record a successful retrieval. */
+    public void success(final int keys) {
+        success(keys, null);
+    }
+
+    /**
+     * Record a successful retrieval.
+     *
+     * @param latency time taken by the retrieval, may be {@code null}
+     */
+    public void success(final int keys, final Duration latency) {
+        update(new State(keys, clock.millis(), false, latency));
+    }
+
+    /** Record a failed retrieval, keeping the keys of the last successful one. */
+    public void failure() {
+        failure(null);
+    }
+
+    /**
+     * Record a failed retrieval, keeping the keys of the last successful one.
+     *
+     * @param latency time taken until the retrieval failed, may be {@code null}
+     */
+    public void failure(final Duration latency) {
+        var current = state;
+        update(new State(current.keys(), current.lastSuccess(), true, latency));
+    }
+
+    private void update(final @NonNull State updated) {
+        var wasReady = isReady();
+        state = updated;
+
+        var listener = changeListener;
+        if (listener != null && wasReady != isReady()) {
+            listener.run();
+        }
+    }
+
+    private record State(int keys, long lastSuccess, boolean failed, Duration latency) {}
+
+    /**
+     * Outcome of the last retrievals of an issuer.
+     *
+     * @param retrieved whether a retrieval has completed, successfully or not
+     * @param ready whether the issuer has usable keys
+     * @param keys keys in the last successfully retrieved JWKS
+     * @param age time since the JWKS was last retrieved, {@code null} before the first success
+     * @param latency time taken by the last retrieval, {@code null} when not recorded
+     */
+    public record Snapshot(
+            boolean retrieved, boolean ready, int keys, Duration age, Duration latency) {}
+}
@@ -0,0 +1,41 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.context.ApplicationEventPublisher;
+
+/**
+ * Publishes a {@link JwksReadinessState} {@link AvailabilityChangeEvent} whenever the readiness of
+ * the issuers changes.
+ */
+@Slf4j
+public final class JwksReadinessPublisher {
+    private final @NonNull SupportsReadiness readiness;
+    private final @NonNull ApplicationEventPublisher eventPublisher;
+
+    private JwksReadinessState published;
+
+    public JwksReadinessPublisher(
+            final @NonNull SupportsReadiness readiness,
+            final @NonNull ApplicationEventPublisher eventPublisher) {
+        this.readiness = readiness;
+        this.eventPublisher = eventPublisher;
+        readiness.setReadinessListener(this::publish);
+    }
+
+    /** Publish the current readiness, unless it is the one last published. */
+    public synchronized void publish() {
+        var state =
+                readiness.getReadiness()
+                        ? JwksReadinessState.ACCEPTING_TRAFFIC
+                        : JwksReadinessState.REFUSING_TRAFFIC;
+        if (state == published) {
+            return;
+        }
+
+        published = state;
+        log.info("JWKS readiness changed: state = {}", state);
+        AvailabilityChangeEvent.publish(eventPublisher, this, state);
+    }
+}
@@ -0,0 +1,9 @@
+package org.entur.auth.spring.common.server;
+
+import org.springframework.boot.availability.AvailabilityState;
+
+/** Whether the JWKS of every issuer is usable, published as an {@link AvailabilityState}. */
+public enum JwksReadinessState implements AvailabilityState {
+    ACCEPTING_TRAFFIC,
+    REFUSING_TRAFFIC
+}
@@ -0,0 +1,9 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.Data;
+
+@Data
+public class JwksRefreshProperties {
+    private int threads = 2;
+    private int jitter = 30;
+}
@@ -0,0 +1,168 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Refreshes the cached JWK sets of all issuers ahead of expiry, on one shared pool of threads.
+ *
+ * <p>Each refresh is brought forward by a random jitter, drawn again for every refresh and at most
+ * half the interval, so issuers and pods started together do not refresh at the same time. At most
+ * as many refreshes as there are threads run at once, the others wait for a free thread.
+ */
+@Slf4j
+public final class JwksRefreshScheduler implements Closeable {
+    private final @NonNull ScheduledExecutorService scheduler;
+    private final @NonNull Duration jitter;
+
+    public JwksRefreshScheduler(final @NonNull JwksRefreshProperties properties) {
+        this(executor(properties.getThreads()), Duration.ofSeconds(properties.getJitter()));
+    }
+
+    /**
+     * @param scheduler runs every refresh
+     * @param jitter upper bound of the random time a refresh is brought forward
+     */
+    public JwksRefreshScheduler(
+            final @NonNull ScheduledExecutorService scheduler, final @NonNull Duration jitter) {
+        this.scheduler = scheduler;
+        this.jitter = jitter;
+    }
+
+    private static ScheduledExecutorService executor(final int threads) {
+        var executor =
+                new ScheduledThreadPoolExecutor(
+                        Math.max(threads, 1),
+                        runnable -> {
+                            var thread = new Thread(runnable, "jwks-refresh");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * Force a refresh of a caching JWK set source every {@code interval}, less the jitter.
+     *
+     * @param source the outermost source, caching the JWK set
+     * @param interval time between refreshes, shorter than the cache lifespan
+     * @return the source, with refreshes cancelled when it is closed
+     */
+    public <C extends SecurityContext> @NonNull JWKSetSource<C> schedule(
+            final @NonNull JWKSetSource<C> source, final @NonNull Duration interval) {
+        return new ScheduledJWKSetSource<>(source, interval, delay(interval));
+    }
+
+    /**
+     * Force a refresh of a caching JWK set source soon, and every {@code interval} after that, less
+     * the jitter.
+     *
+     * @param source the outermost source, caching the JWK set
+     * @param interval time between refreshes, shorter than the cache lifespan
+     * @param initialDelay time before the first refresh, pushed back by a random jitter so sources
+     *     created together are spread out
+     * @return the source, with refreshes cancelled when it is closed
+     */
+    public <C extends SecurityContext> @NonNull JWKSetSource<C> schedule(
+            final @NonNull JWKSetSource<C> source,
+            final @NonNull Duration interval,
+            final @NonNull Duration initialDelay) {
+        long bound = jitter.toMillis();
+        return new ScheduledJWKSetSource<>(
+                source,
+                interval,
+                bound > 0
+                        ? initialDelay.plusMillis(ThreadLocalRandom.current().nextLong(bound + 1))
+                        : initialDelay);
+    }
+
+    /**
+     * @return the interval, brought forward by a random jitter of at most half the interval
+     */
+    Duration delay(final @NonNull Duration interval) {
+        long bound = Math.min(jitter.toMillis(), interval.toMillis() / 2);
+        return bound > 0
+                ? interval.minusMillis(ThreadLocalRandom.current().nextLong(bound + 1))
+                : interval;
+    }
+
+    /** Stop all refreshes. */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private final class ScheduledJWKSetSource<C extends SecurityContext> implements JWKSetSource<C> {
+        private final @NonNull JWKSetSource<C> source;
+        private final @NonNull Duration interval;
+        private volatile ScheduledFuture<?> next;
+        private volatile boolean closed;
+
+        private ScheduledJWKSetSource(
+                final @NonNull JWKSetSource<C> source,
+                final @NonNull Duration interval,
+                final @NonNull Duration firstDelay) {
+            this.source = source;
+            this.interval = interval;
+            schedule(firstDelay);
+        }
+
+        @Override
+        public JWKSet getJWKSet(
+                final JWKSetCacheRefreshEvaluator refreshEvaluator, final long currentTime, final C context)
+                throws KeySourceException {
+            return source.getJWKSet(refreshEvaluator, currentTime, context);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            var scheduled = next;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            source.close();
+        }
+
+        private void schedule(final @NonNull Duration delay) {
+            if (closed) {
+                return;
+            }
+            try {
+                next = scheduler.schedule(this::refresh, delay.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException ex) {
+                // The scheduler is closed, keys are refreshed when the cache expires
+            }
+        }
+
+        private void refresh() {
+            if (closed) {
+                return;
+            }
+            try {
+                source.getJWKSet(
+                        JWKSetCacheRefreshEvaluator.forceRefresh(), System.currentTimeMillis(), null);
+            } catch (KeySourceException | RuntimeException ex) {
+                // Reported through health and metrics, the cached keys stay in use until they expire
+                log.debug("Scheduled JWKS refresh failed: {}", ex.getMessage());
+            } finally {
+                schedule(delay(interval));
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.Data;
+
+@Data
+public class JwksSnapshotProperties {
+    private boolean enabled = false;
+    private String path = "/tmp/entur-auth/jwks";
+}
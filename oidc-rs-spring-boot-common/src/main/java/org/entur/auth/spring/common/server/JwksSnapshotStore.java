@@ -0,0 +1,171 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.util.JSONObjectUtils;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * On-disk snapshots of the last JWK set retrieved for each issuer.
+ *
+ * <p>Pods can start verifying tokens from the snapshot without waiting for the issuer, and survive
+ * an issuer outage across restarts. A snapshot holds the public keys and the time they were
+ * retrieved, in one file per issuer named by the SHA-256 hash of the issuer URL. Files are replaced
+ * atomically, so a reader never sees a partial snapshot. Failing to read or write a snapshot is
+ * logged and otherwise ignored.
+ *
+ * <p>Snapshots saved with {@link #saveAsync} are written one at a time on a writer thread of the
+ * store, in the order they were saved.
+ */
+@Slf4j
+public final class JwksSnapshotStore implements Closeable {
+    private static final String RETRIEVED_AT = "retrievedAt";
+    private static final long CLOSE_TIMEOUT_SECONDS = 5;
+
+    private final @NonNull Path directory;
+    private final @NonNull Clock clock;
+    private final @NonNull ExecutorService writer;
+
+    public JwksSnapshotStore(final @NonNull Path directory, final @NonNull Clock clock) {
+        this.directory = directory;
+        this.clock = clock;
+        this.writer =
+                Executors.newSingleThreadExecutor(
+                        runnable -> {
+                            var thread = new Thread(runnable, "jwks-snapshot-writer");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+    }
+
+    public JwksSnapshotStore(final @NonNull JwksSnapshotProperties properties) {
+        this(Path.of(properties.getPath()), Clock.systemUTC());
+    }
+
+    /**
+     * @param issuerUrl the issuer of the keys
+     * @param maxAge how old a snapshot may be
+     * @return the snapshot of the issuer, or {@code null} if there is none or it is older than {@code
+     *     maxAge}
+     */
+    public Snapshot load(final @NonNull String issuerUrl, final @NonNull Duration maxAge) {
+        var file = directory.resolve(fileName(issuerUrl));
+        try {
+            var json = JSONObjectUtils.parse(Files.readString(file, StandardCharsets.UTF_8));
+            var retrievedAt = Instant.ofEpochMilli(JSONObjectUtils.getLong(json, RETRIEVED_AT));
+            if (Duration.between(retrievedAt, clock.instant()).compareTo(maxAge) > 0) {
+                log.info(
+                        "Ignoring stale JWKS snapshot: issuerUri = {}, retrievedAt = {}",
+                        issuerUrl,
+                        retrievedAt);
+                return null;
+            }
+
+            json.remove(RETRIEVED_AT);
+            return new Snapshot(JWKSet.parse(json), retrievedAt);
+        } catch (NoSuchFileException ex) {
+            return null;
+        } catch (IOException | ParseException | RuntimeException ex) {
+            log.warn("Unable to read JWKS snapshot: issuerUri = {}, file = {}", issuerUrl, file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Replace the snapshot of an issuer with its public keys.
+     *
+     * @param issuerUrl the issuer of the keys
+     * @param jwkSet the retrieved keys
+     */
+    public void save(final @NonNull String issuerUrl, final @NonNull JWKSet jwkSet) {
+        var fileName = fileName(issuerUrl);
+        var file = directory.resolve(fileName);
+        try {
+            var json = jwkSet.toJSONObject(true);
+            json.put(RETRIEVED_AT, clock.millis());
+
+            Files.createDirectories(directory);
+            var temporary = Files.createTempFile(directory, fileName, ".tmp");
+            try {
+                Files.writeString(temporary, JSONObjectUtils.toJSONString(json), StandardCharsets.UTF_8);
+                move(temporary, file);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Unable to write JWKS snapshot: issuerUri = {}, file = {}", issuerUrl, file, ex);
+        }
+    }
+
+    /**
+     * Replace the snapshot of an issuer on the writer thread, without waiting for the disk.
+     *
+     * @param issuerUrl the issuer of the keys
+     * @param jwkSet the retrieved keys
+     */
+    public void saveAsync(final @NonNull String issuerUrl, final @NonNull JWKSet jwkSet) {
+        try {
+            writer.execute(() -> save(issuerUrl, jwkSet));
+        } catch (RejectedExecutionException ex) {
+            log.debug("JWKS snapshot store closed, not saving: issuerUri = {}", issuerUrl);
+        }
+    }
+
+    /** Stop the writer thread, once the snapshots already saved are written. */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("JWKS snapshots not written within {} seconds", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void move(final @NonNull Path source, final @NonNull Path target)
+            throws IOException {
+        try {
+            Files.move(
+                    source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static @NonNull String fileName(final @NonNull String issuerUrl) {
+        try {
+            var hash =
+                    MessageDigest.getInstance("SHA-256").digest(issuerUrl.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash) + ".json";
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    /**
+     * @param jwkSet the public keys of the issuer
+     * @param retrievedAt when the keys were retrieved from the issuer
+     */
+    public record Snapshot(@NonNull JWKSet jwkSet, @NonNull Instant retrievedAt) {}
+}
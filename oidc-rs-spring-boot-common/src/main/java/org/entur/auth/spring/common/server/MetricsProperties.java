@@ -0,0 +1,8 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.Data;
+
+@Data
+public class MetricsProperties {
+    private boolean enabled = true;
+}
@@ -0,0 +1,9 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.Data;
+
+@Data
+public class PreCheckProperties {
+    private boolean enabled = false;
+    private int clockSkew = 60;
+}
@@ -0,0 +1,42 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import java.io.IOException;
+import java.time.Duration;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Records the outcome and latency of every retrieval of the wrapped source in a {@link
+ * JwksReadiness}.
+ */
+@RequiredArgsConstructor
+public final class ReadinessTrackingJWKSetSource<C extends SecurityContext>
+        implements JWKSetSource<C> {
+    private final @NonNull JWKSetSource<C> jwkSetSource;
+    private final @NonNull JwksReadiness readiness;
+
+    @Override
+    public JWKSet getJWKSet(
+            final JWKSetCacheRefreshEvaluator refreshEvaluator, final long currentTime, final C context)
+            throws KeySourceException {
+        var start = System.nanoTime();
+        try {
+            var jwkSet = jwkSetSource.getJWKSet(refreshEvaluator, currentTime, context);
+            readiness.success(jwkSet.size(), Duration.ofNanos(System.nanoTime() - start));
+            return jwkSet;
+        } catch (KeySourceException | RuntimeException ex) {
+            readiness.failure(Duration.ofNanos(System.nanoTime() - start));
+            throw ex;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        jwkSetSource.close();
+    }
+}
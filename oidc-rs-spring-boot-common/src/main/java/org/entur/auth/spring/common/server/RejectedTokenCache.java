@@ -0,0 +1,93 @@
+package org.entur.auth.spring.common.server;
+
+import static java.time.Duration.between;
+import static java.time.Instant.EPOCH;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nimbusds.jose.KeySourceException;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Duration;
+import lombok.NonNull;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
+
+/**
+ * Bounded cache of recently rejected bearer tokens.
+ *
+ * <p>Entries are keyed by the SHA-256 hash of the raw token, as in {@link VerifiedTokenCache}, and
+ * hold the {@link TokenRejection} of the token for the configured time to live. A client retrying
+ * the same invalid or expired token is answered from the cache without parsing or verifying it
+ * again.
+ *
+ * <p>Only tokens rejected as invalid are cached. Failures to retrieve the JWKS and tokens of
+ * unknown issuers are not, so tokens are validated again as soon as the keys are available or the
+ * issuer is added. Every entry is a hash and a shared enum constant, so the memory held is bounded
+ * by the maximum size. The underlying Caffeine cache is striped internally and does not serialize
+ * concurrent lookups.
+ */
+public final class RejectedTokenCache {
+    private final @NonNull Cache<ByteBuffer, TokenRejection> cache;
+
+    public RejectedTokenCache(
+            final @NonNull Clock clock, final long maximumSize, final @NonNull Duration timeToLive) {
+        this.cache =
+                Caffeine.newBuilder()
+                        .maximumSize(maximumSize)
+                        .expireAfterWrite(timeToLive)
+                        .ticker(() -> between(EPOCH, clock.instant()).toNanos())
+                        .build();
+    }
+
+    public RejectedTokenCache(final @NonNull RejectedTokenCacheProperties properties) {
+        this(
+                Clock.systemUTC(),
+                properties.getMaximumSize(),
+                Duration.ofSeconds(properties.getTimeToLive()));
+    }
+
+    /**
+     * Look up a recently rejected token.
+     *
+     * @param token the raw bearer token
+     * @return the exception to reject the token with, or {@code null} if the token is not cached
+     */
+    public TokenRejectedException get(final @NonNull String token) {
+        var rejection = cache.getIfPresent(VerifiedTokenCache.key(token));
+        return rejection != null ? new TokenRejectedException(rejection) : null;
+    }
+
+    /**
+     * Store the reason a token was rejected. Exceptions other than {@link
+     * InvalidBearerTokenException}, rejections caused by the JWKS being unavailable and tokens of
+     * unknown issuers are ignored.
+     *
+     * @param token the raw bearer token
+     * @param exception the exception the token was rejected with
+     */
+    public void put(final @NonNull String token, final AuthenticationException exception) {
+        if (!(exception instanceof InvalidBearerTokenException)) {
+            return;
+        }
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof KeySourceException) {
+                return;
+            }
+        }
+
+        var rejection = TokenRejection.of(exception);
+        if (rejection != TokenRejection.UNKNOWN_ISSUER) {
+            cache.put(VerifiedTokenCache.key(token), rejection);
+        }
+    }
+
+    /** Forget every rejected token, so tokens are validated again after the issuers changed. */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+}
@@ -0,0 +1,10 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.Data;
+
+@Data
+public class RejectedTokenCacheProperties {
+    private boolean enabled = false;
+    private long maximumSize = 10000;
+    private int timeToLive = 10;
+}
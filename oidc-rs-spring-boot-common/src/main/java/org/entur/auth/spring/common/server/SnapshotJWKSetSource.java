@@ -0,0 +1,128 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * JWK set source answering its first retrieval from a {@link JwksSnapshotStore}, and saving every
+ * changed JWK set retrieved afterwards.
+ *
+ * <p>The snapshot is loaded when the source is created, so the keys are usable as soon as the
+ * issuer is added. The snapshot is answered once, and only while it is younger than the maximum
+ * age, later retrievals go to the issuer. Retrieved JWK sets are saved on the writer thread of the
+ * store.
+ *
+ * @param <C> the security context
+ */
+@Slf4j
+public final class SnapshotJWKSetSource<C extends SecurityContext> implements JWKSetSource<C> {
+    private final @NonNull JWKSetSource<C> source;
+    private final @NonNull JwksSnapshotStore store;
+    private final @NonNull String issuerUrl;
+    private final @NonNull Duration maxAge;
+    private final AtomicReference<JwksSnapshotStore.Snapshot> snapshot;
+    private volatile JWKSet saved;
+    private volatile JWKSetSource<C> refreshSource;
+    private volatile Duration refreshDelay;
+    private volatile boolean closed;
+
+    /**
+     * @param source retrieves the JWK set from the issuer
+     * @param store holds the snapshots
+     * @param issuerUrl the issuer of the keys
+     * @param maxAge how old a snapshot may be to be used
+     */
+    public SnapshotJWKSetSource(
+            final @NonNull JWKSetSource<C> source,
+            final @NonNull JwksSnapshotStore store,
+            final @NonNull String issuerUrl,
+            final @NonNull Duration maxAge) {
+        this.source = source;
+        this.store = store;
+        this.issuerUrl = issuerUrl;
+        this.maxAge = maxAge;
+        var loaded = store.load(issuerUrl, maxAge);
+        this.snapshot = new AtomicReference<>(loaded);
+        this.saved = loaded != null ? loaded.jwkSet() : null;
+    }
+
+    /**
+     * @return whether a snapshot was loaded and has not been answered yet
+     */
+    public boolean hasSnapshot() {
+        return snapshot.get() != null;
+    }
+
+    /**
+     * Force a refresh of the caching source above once the snapshot is answered, so the cache holds
+     * the snapshot no longer than {@code delay} instead of a full lifespan.
+     *
+     * @param cache the outermost source, caching the JWK set
+     * @param delay time before the refresh, to let the rate limit allow it
+     */
+    public void refreshAfterSnapshot(
+            final @NonNull JWKSetSource<C> cache, final @NonNull Duration delay) {
+        this.refreshDelay = delay;
+        this.refreshSource = cache;
+    }
+
+    @Override
+    public JWKSet getJWKSet(
+            final JWKSetCacheRefreshEvaluator refreshEvaluator, final long currentTime, final C context)
+            throws KeySourceException {
+        var loaded = snapshot.getAndSet(null);
+        if (loaded != null
+                && currentTime - loaded.retrievedAt().toEpochMilli() < maxAge.toMillis()
+                && !refreshEvaluator.requiresRefresh(loaded.jwkSet())) {
+            scheduleRefresh();
+            return loaded.jwkSet();
+        }
+
+        var jwkSet = source.getJWKSet(refreshEvaluator, currentTime, context);
+        var previous = saved;
+        if (previous == null || !previous.getKeys().equals(jwkSet.getKeys())) {
+            saved = jwkSet;
+            store.saveAsync(issuerUrl, jwkSet);
+        }
+        return jwkSet;
+    }
+
+    private void scheduleRefresh() {
+        var cache = refreshSource;
+        if (cache == null) {
+            return;
+        }
+
+        CompletableFuture.delayedExecutor(refreshDelay.toMillis(), TimeUnit.MILLISECONDS)
+                .execute(() -> refresh(cache));
+    }
+
+    private void refresh(final @NonNull JWKSetSource<C> cache) {
+        if (closed) {
+            return;
+        }
+
+        try {
+            cache.getJWKSet(JWKSetCacheRefreshEvaluator.forceRefresh(), System.currentTimeMillis(), null);
+        } catch (KeySourceException | RuntimeException ex) {
+            // Reported through health and metrics, the snapshot stays in use until the cache expires
+            log.debug("JWKS snapshot refresh failed: issuerUri = {}, {}", issuerUrl, ex.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        source.close();
+    }
+}
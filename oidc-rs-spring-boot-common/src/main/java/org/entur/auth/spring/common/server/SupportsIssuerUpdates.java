@@ -0,0 +1,13 @@
+package org.entur.auth.spring.common.server;
+
+public interface SupportsIssuerUpdates {
+    void addIssuer(IssuerProperties issuerProperties);
+
+    boolean removeIssuer(String issuerUrl);
+
+    /**
+     * Add an issuer, or replace it with the new properties in one step, so its tokens are accepted
+     * throughout. The previous authentication manager is used until the new one is created.
+     */
+    void replaceIssuer(IssuerProperties issuerProperties);
+}
@@ -2,4 +2,7 @@ package org.entur.auth.spring.common.server;
 
 public interface SupportsReadiness {
     boolean getReadiness();
+
+    /** Register a listener called when readiness may have changed. */
+    default void setReadinessListener(Runnable listener) {}
 }
@@ -1,34 +1,143 @@
 package org.entur.auth.spring.common.server;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
 import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
 
+/**
+ * Grants the {@code SCOPE_} authorities of {@link JwtGrantedAuthoritiesConverter} and the tenant of
+ * the issuer.
+ *
+ * <p>The tenant of an issuer is resolved once, when the issuer is added. Authorities are interned,
+ * and the authorities of a space-delimited scope claim are memoized per issuer, so a token whose
+ * scope has been seen before is converted without allocating. Both caches are bounded.
+ *
+ * <p>The authorities are returned as an unmodifiable list, as memoized lists are shared by tokens.
+ */
 @RequiredArgsConstructor
 public class TenantJwtGrantedAuthoritiesConverter
         implements Converter<Jwt, Collection<GrantedAuthority>> {
+    private static final String AUTHORITY_PREFIX = "SCOPE_";
+    private static final String[] AUTHORITIES_CLAIM_NAMES = {"scope", "scp"};
+    private static final long MAXIMUM_SIZE = 1024;
+
     private final JwtGrantedAuthoritiesConverter jwtGrantedAuthoritiesConverter =
             new JwtGrantedAuthoritiesConverter();
     private final AuthProviders authProviders;
 
+    private final Map<String, IssuerAuthorities> issuers = new ConcurrentHashMap<>();
+    private final Cache<String, GrantedAuthority> authorities =
+            Caffeine.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+
+    /** Resolve the tenant of an issuer ahead of its first token. */
+    public void addIssuer(@NonNull String issuerUrl) {
+        issuers.computeIfAbsent(issuerUrl, IssuerAuthorities::new);
+    }
+
+    /** Drop the tenant and memoized authorities of a removed issuer. */
+    public void removeIssuer(@NonNull String issuerUrl) {
+        issuers.remove(issuerUrl);
+    }
+
     @Override
     public Collection<GrantedAuthority> convert(@NonNull Jwt source) {
+        var claims = source.getClaims();
+        var issuer = claims.get(JwtClaimNames.ISS);
+        var issuerAuthorities = issuer != null ? issuers.get(issuer.toString()) : null;
+
+        if (issuerAuthorities != null) {
+            var scope = scope(claims);
+            if (scope != null) {
+                return issuerAuthorities.forScope(scope);
+            }
+        }
+
+        // Scopes as a list, or tokens of issuers that were not added, are converted on every call
         var grantedAuthorities = jwtGrantedAuthoritiesConverter.convert(source);
         if (grantedAuthorities == null) {
             grantedAuthorities = new ArrayList<>();
         }
 
-        var tenant = authProviders.getTenant(source.getIssuer().getAuthority());
+        var tenant =
+                issuerAuthorities != null
+                        ? issuerAuthorities.tenant
+                        : tenantAuthority(source.getIssuer().getAuthority());
         if (tenant != null) {
-            grantedAuthorities.add(new SimpleGrantedAuthority(tenant));
+            grantedAuthorities.add(tenant);
+        }
+
+        return List.copyOf(grantedAuthorities);
+    }
+
+    /**
+     * @return the first scope claim when it is a string, an empty string when there is no scope
+     *     claim, {@code null} when the scopes are a list
+     */
+    private static String scope(Map<String, Object> claims) {
+        for (String claimName : AUTHORITIES_CLAIM_NAMES) {
+            var claim = claims.get(claimName);
+            if (claim != null) {
+                return claim instanceof String scope ? scope : null;
+            }
+        }
+        return "";
+    }
+
+    private GrantedAuthority tenantAuthority(String authority) {
+        var tenant = authProviders.getTenant(authority);
+        return tenant != null ? authority(tenant) : null;
+    }
+
+    private GrantedAuthority authority(String role) {
+        return authorities.get(role, SimpleGrantedAuthority::new);
+    }
+
+    private final class IssuerAuthorities {
+        private final GrantedAuthority tenant;
+        private final Cache<String, Collection<GrantedAuthority>> byScope =
+                Caffeine.newBuilder().maximumSize(MAXIMUM_SIZE).build();
+        private final Function<String, Collection<GrantedAuthority>> convertScope = this::convert;
+
+        private IssuerAuthorities(String issuerUrl) {
+            String authority;
+            try {
+                authority = URI.create(issuerUrl).getAuthority();
+            } catch (IllegalArgumentException ex) {
+                authority = null;
+            }
+            this.tenant = tenantAuthority(authority);
         }
 
-        return grantedAuthorities;
+        private Collection<GrantedAuthority> forScope(String scope) {
+            return byScope.get(scope, convertScope);
+        }
+
+        /** Split the scope as {@link JwtGrantedAuthoritiesConverter} does. */
+        private Collection<GrantedAuthority> convert(String scope) {
+            var grantedAuthorities = new ArrayList<GrantedAuthority>();
+            if (!scope.isBlank()) {
+                for (String value : scope.split(" ")) {
+                    grantedAuthorities.add(authority(AUTHORITY_PREFIX + value));
+                }
+            }
+            if (tenant != null) {
+                grantedAuthorities.add(tenant);
+            }
+            return List.copyOf(grantedAuthorities);
+        }
     }
 }
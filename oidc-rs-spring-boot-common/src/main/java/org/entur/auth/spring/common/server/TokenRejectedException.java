@@ -0,0 +1,49 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
+
+/**
+ * Thrown for a rejected bearer token, coded by its {@link TokenRejection}.
+ *
+ * <p>The exception carries no stack trace, so rejecting a token costs little more than the
+ * validation that rejected it. The cause, if any, is the exception the rejection was classified
+ * from.
+ */
+public final class TokenRejectedException extends InvalidBearerTokenException {
+    private static final long serialVersionUID = 1L;
+
+    private final @Getter @NonNull TokenRejection rejection;
+    private final Throwable rejectedWith;
+
+    public TokenRejectedException(final @NonNull TokenRejection rejection) {
+        this(rejection, null);
+    }
+
+    /**
+     * @param rejection the reason the token is rejected
+     * @param cause the exception the token was rejected with, may be {@code null}
+     */
+    public TokenRejectedException(final @NonNull TokenRejection rejection, final Throwable cause) {
+        // InvalidBearerTokenException rejects a null cause, and its cause cannot be set afterwards
+        super(rejection.getDescription());
+        this.rejection = rejection;
+        this.rejectedWith = cause;
+    }
+
+    /** Reject a token with the reason classified from {@code cause}. */
+    public static @NonNull TokenRejectedException of(final @NonNull Throwable cause) {
+        return new TokenRejectedException(TokenRejection.of(cause), cause);
+    }
+
+    @Override
+    public synchronized Throwable getCause() {
+        return rejectedWith;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
@@ -0,0 +1,137 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.proc.BadJWSException;
+import com.nimbusds.jwt.proc.BadJWTException;
+import com.nimbusds.jwt.proc.ExpiredJWTException;
+import java.text.ParseException;
+import java.util.Collection;
+import lombok.Getter;
+import lombok.NonNull;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+
+/**
+ * Reason a bearer token is rejected.
+ *
+ * <p>Each reason carries a fixed error description and the {@code WWW-Authenticate} header
+ * answering it, computed once, in the format of Spring Security's {@code
+ * BearerTokenAuthenticationEntryPoint}.
+ */
+@Getter
+public enum TokenRejection {
+    MALFORMED("Malformed token"),
+    UNKNOWN_ISSUER("Invalid issuer"),
+    EXPIRED("Jwt expired"),
+    NOT_YET_VALID("Jwt used before its nbf claim"),
+    BAD_ISSUER("The iss claim is not valid"),
+    BAD_AUDIENCE(AudienceValidator.ERROR_DESCRIPTION),
+    BAD_SIGNATURE("Invalid signature"),
+    INVALID("Invalid token");
+
+    private static final String ERROR_URI = "https://tools.ietf.org/html/rfc6750#section-3.1";
+
+    /** Description prefixes of Spring Security's {@code JwtTimestampValidator}. */
+    static final String SPRING_EXPIRED = "Jwt expired at";
+
+    static final String SPRING_NOT_BEFORE = "Jwt used before";
+
+    private final @NonNull String description;
+    private final @NonNull String wwwAuthenticate;
+
+    TokenRejection(final @NonNull String description) {
+        this.description = description;
+        this.wwwAuthenticate =
+                "Bearer error=\"invalid_token\", error_description=\""
+                        + description
+                        + "\", error_uri=\""
+                        + ERROR_URI
+                        + "\"";
+    }
+
+    /**
+     * Classify a rejected token by the exceptions in its cause chain.
+     *
+     * <p>Rejections are classified by the type of the exception or of its validation errors. Nimbus'
+     * {@code nbf} check has no type of its own, and is only recognized when made by {@link
+     * ClassifyingJWTClaimsVerifier}.
+     *
+     * @param exception the exception the token was rejected with
+     * @return the reason, {@link #INVALID} for rejections without a more specific reason
+     */
+    public static @NonNull TokenRejection of(final @NonNull Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TokenRejectedException rejectedException) {
+                return rejectedException.getRejection();
+            }
+            if (cause instanceof ClaimsPreCheck.ClaimsPreCheckException preCheckException) {
+                return of(preCheckException.getRejection());
+            }
+            if (cause instanceof JwtValidationException validationException) {
+                return of(validationException.getErrors());
+            }
+            if (cause instanceof BadJWSException) {
+                return BAD_SIGNATURE;
+            }
+            if (cause instanceof ExpiredJWTException) {
+                return EXPIRED;
+            }
+            if (cause instanceof ClassifyingJWTClaimsVerifier.NotYetValidJWTException) {
+                return NOT_YET_VALID;
+            }
+            if (cause instanceof BadJWTException) {
+                return INVALID;
+            }
+            if (cause instanceof ParseException) {
+                return MALFORMED;
+            }
+        }
+        return INVALID;
+    }
+
+    /**
+     * Classify a token rejected by validators.
+     *
+     * <p>Errors of {@link ClassifyingJwtValidator}, {@link AudienceValidator} and {@link
+     * ClaimsPreCheck} carry their reason. The descriptions of the Spring Security validators are only
+     * matched as a last resort, for validators that are not wrapped.
+     *
+     * @param errors the errors of the validators
+     * @return the reason, {@link #INVALID} for errors without a more specific reason
+     */
+    public static @NonNull TokenRejection of(final @NonNull Collection<OAuth2Error> errors) {
+        for (OAuth2Error error : errors) {
+            if (error instanceof TokenRejectionError rejectionError) {
+                return rejectionError.getRejection();
+            }
+        }
+        for (OAuth2Error error : errors) {
+            var description = error.getDescription();
+            if (description == null) {
+                continue;
+            }
+            if (description.startsWith(SPRING_EXPIRED)) {
+                return EXPIRED;
+            }
+            if (description.startsWith(SPRING_NOT_BEFORE)) {
+                return NOT_YET_VALID;
+            }
+            if (description.equals(BAD_ISSUER.description)) {
+                return BAD_ISSUER;
+            }
+        }
+        return INVALID;
+    }
+
+    /**
+     * @param rejection the reason of the claims pre-check
+     * @return the same reason
+     */
+    public static @NonNull TokenRejection of(final @NonNull ClaimsPreCheck.Rejection rejection) {
+        return switch (rejection) {
+            case EXPIRED -> EXPIRED;
+            case NOT_YET_VALID -> NOT_YET_VALID;
+            case BAD_ISSUER -> BAD_ISSUER;
+            case BAD_AUDIENCE -> BAD_AUDIENCE;
+        };
+    }
+}
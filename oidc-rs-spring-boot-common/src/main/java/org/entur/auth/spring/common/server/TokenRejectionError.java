@@ -0,0 +1,30 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.springframework.security.oauth2.core.OAuth2Error;
+
+/**
+ * {@link OAuth2Error} of a validator that knows why it rejected the token, so the rejection is
+ * classified by the type of the error rather than by its description.
+ */
+public final class TokenRejectionError extends OAuth2Error {
+    private static final long serialVersionUID = 1L;
+
+    private final @Getter @NonNull TokenRejection rejection;
+
+    public TokenRejectionError(
+            final @NonNull TokenRejection rejection,
+            final @NonNull String errorCode,
+            final String description,
+            final String uri) {
+        super(errorCode, description, uri);
+        this.rejection = rejection;
+    }
+
+    /** The same error as {@code error}, classified as {@code rejection}. */
+    public TokenRejectionError(
+            final @NonNull TokenRejection rejection, final @NonNull OAuth2Error error) {
+        this(rejection, error.getErrorCode(), error.getDescription(), error.getUri());
+    }
+}
@@ -0,0 +1,194 @@
+package org.entur.auth.spring.common.server;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKSet;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import lombok.NonNull;
+import org.entur.auth.spring.common.metrics.JwksMetrics.IssuerJwksMetrics;
+
+/**
+ * Single-flight, rate limited refresh of the JWK set of one issuer when a token has an unknown key
+ * id.
+ *
+ * <p>The first token with an unknown key id starts a refresh, and tokens arriving while it is in
+ * flight wait for the same refresh for at most {@code maxWait}, after which they are verified
+ * against the current JWK set. Unknown key ids start at most one refresh per {@code minInterval},
+ * so tokens with made-up key ids cannot make the issuer's JWKS be downloaded again and again. This
+ * limit comes on top of {@code jwksThrottleWait}, which also applies to refreshes ahead of expiry.
+ */
+public final class UnknownKeyIdRefresh {
+    private final @NonNull Duration minInterval;
+    private final @NonNull Duration maxWait;
+    private final @NonNull Clock clock;
+    private final IssuerJwksMetrics jwksMetrics;
+
+    private CompletableFuture<JWKSet> inFlight;
+    private Instant lastRefresh = Instant.MIN;
+
+    /**
+     * @param minInterval minimum time between two refreshes started by unknown key ids
+     * @param maxWait how long a token waits for a refresh started by another token
+     * @param clock the clock
+     * @param jwksMetrics counts refreshes rejected by the rate limit, may be {@code null}
+     */
+    public UnknownKeyIdRefresh(
+            final @NonNull Duration minInterval,
+            final @NonNull Duration maxWait,
+            final @NonNull Clock clock,
+            final IssuerJwksMetrics jwksMetrics) {
+        this.minInterval = minInterval;
+        this.maxWait = maxWait;
+        this.clock = clock;
+        this.jwksMetrics = jwksMetrics;
+    }
+
+    /**
+     * @param properties the rate limit and wait budget
+     * @param readTimeout the read timeout of JWKS retrievals, in seconds, which bounds the wait
+     *     budget to half of it
+     * @param jwksMetrics counts refreshes rejected by the rate limit, may be {@code null}
+     */
+    public UnknownKeyIdRefresh(
+            final @NonNull UnknownKidProperties properties,
+            final int readTimeout,
+            final IssuerJwksMetrics jwksMetrics) {
+        this(
+                Duration.ofSeconds(properties.getMinInterval()),
+                Duration.ofMillis(Math.min(properties.getMaxWait(), readTimeout * 1000L / 2)),
+                Clock.systemUTC(),
+                jwksMetrics);
+    }
+
+    /** Retrieves the JWK set, blocking the calling thread. */
+    @FunctionalInterface
+    public interface Retrieval {
+        JWKSet retrieve() throws KeySourceException;
+    }
+
+    /**
+     * Refresh the JWK set, or wait for the refresh in flight, blocking the calling thread.
+     *
+     * @param current the JWK set without the key id of the token
+     * @param retrieval retrieves the JWK set, run on the calling thread when it starts the refresh
+     * @return the refreshed JWK set, or {@code current} when rate limited or the wait budget is
+     *     exhausted
+     * @throws KeySourceException if the refresh failed
+     */
+    public @NonNull JWKSet refresh(final @NonNull JWKSet current, final @NonNull Retrieval retrieval)
+            throws KeySourceException {
+        var flight = new CompletableFuture<JWKSet>();
+        var joined = join(flight);
+        if (joined == null) {
+            return current;
+        }
+        if (joined != flight) {
+            return await(joined, current);
+        }
+
+        try {
+            var jwkSet = retrieval.retrieve();
+            flight.complete(jwkSet);
+            return jwkSet;
+        } catch (KeySourceException | RuntimeException ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            finish(flight);
+        }
+    }
+
+    /**
+     * Start a refresh of the JWK set, or join the refresh in flight, without blocking.
+     *
+     * <p>The returned future is shared by every token waiting for the refresh and must not be
+     * cancelled. Waiting for it is bounded by {@link #getMaxWait()}.
+     *
+     * @param retrieval retrieves the JWK set, called when this call starts the refresh
+     * @return the refresh, or {@code null} when rate limited
+     */
+    public CompletableFuture<JWKSet> refreshAsync(
+            final @NonNull Supplier<CompletableFuture<JWKSet>> retrieval) {
+        var flight = new CompletableFuture<JWKSet>();
+        var joined = join(flight);
+        if (joined != flight) {
+            return joined;
+        }
+
+        try {
+            retrieval
+                    .get()
+                    .whenComplete(
+                            (jwkSet, ex) -> {
+                                finish(flight);
+                                if (ex != null) {
+                                    flight.completeExceptionally(ex);
+                                } else {
+                                    flight.complete(jwkSet);
+                                }
+                            });
+        } catch (RuntimeException ex) {
+            finish(flight);
+            flight.completeExceptionally(ex);
+        }
+        return flight;
+    }
+
+    /**
+     * @return how long a token waits for a refresh started by another token
+     */
+    public @NonNull Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * @return the refresh in flight, {@code flight} if this call starts the refresh, or {@code null}
+     *     if rate limited
+     */
+    private synchronized CompletableFuture<JWKSet> join(final CompletableFuture<JWKSet> flight) {
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        var now = clock.instant();
+        if (lastRefresh.plus(minInterval).isAfter(now)) {
+            if (jwksMetrics != null) {
+                jwksMetrics.rateLimited();
+            }
+            return null;
+        }
+
+        lastRefresh = now;
+        inFlight = flight;
+        return flight;
+    }
+
+    private synchronized void finish(final CompletableFuture<JWKSet> flight) {
+        if (inFlight == flight) {
+            inFlight = null;
+        }
+    }
+
+    private JWKSet await(final CompletableFuture<JWKSet> flight, final JWKSet current)
+            throws KeySourceException {
+        try {
+            return flight.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            return current;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return current;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof KeySourceException keySourceException) {
+                throw keySourceException;
+            }
+            throw new KeySourceException("Couldn't refresh JWK set: " + ex.getMessage(), ex.getCause());
+        }
+    }
+}
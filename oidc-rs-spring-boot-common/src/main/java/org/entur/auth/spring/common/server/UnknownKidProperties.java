@@ -0,0 +1,9 @@
+package org.entur.auth.spring.common.server;
+
+import lombok.Data;
+
+@Data
+public class UnknownKidProperties {
+    private int minInterval = 60;
+    private long maxWait = 2000;
+}
@@ -0,0 +1,149 @@
+package org.entur.auth.spring.common.server;
+
+import static java.time.Duration.between;
+import static java.time.Instant.EPOCH;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import lombok.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+/**
+ * Bounded cache of already verified bearer tokens.
+ *
+ * <p>Entries are keyed by the SHA-256 hash of the raw token and hold the {@link
+ * JwtAuthenticationToken} produced by a successful authentication. Each entry expires at the
+ * token's {@code exp} claim, or after the configured time to live if that comes first.
+ */
+public final class VerifiedTokenCache {
+    private final @NonNull Cache<ByteBuffer, JwtAuthenticationToken> cache;
+    private final @NonNull Clock clock;
+
+    public VerifiedTokenCache(
+            final @NonNull Clock clock, final long maximumSize, final @NonNull Duration timeToLive) {
+        this.clock = clock;
+        this.cache =
+                Caffeine.newBuilder()
+                        .maximumSize(maximumSize)
+                        .expireAfter(new TokenExpiry(clock, timeToLive))
+                        .ticker(() -> between(EPOCH, clock.instant()).toNanos())
+                        .build();
+    }
+
+    public VerifiedTokenCache(final @NonNull TokenCacheProperties properties) {
+        this(
+                Clock.systemUTC(),
+                properties.getMaximumSize(),
+                Duration.ofSeconds(properties.getTimeToLive()));
+    }
+
+    /**
+     * Look up a previously verified token.
+     *
+     * @param token the raw bearer token
+     * @param details the authentication details of the current request
+     * @return a copy of the cached authentication carrying the given details, or {@code null} if the
+     *     token is not cached
+     */
+    public JwtAuthenticationToken get(final @NonNull String token, final Object details) {
+        var cached = cache.getIfPresent(key(token));
+        if (cached == null) {
+            return null;
+        }
+
+        var authentication =
+                new JwtAuthenticationToken(cached.getToken(), cached.getAuthorities(), cached.getName());
+        authentication.setDetails(details);
+        return authentication;
+    }
+
+    /**
+     * Store the result of a successful authentication. Results that are not a {@link
+     * JwtAuthenticationToken}, or whose token has already expired, are ignored.
+     *
+     * @param token the raw bearer token
+     * @param authentication the authenticated result
+     */
+    public void put(final @NonNull String token, final Authentication authentication) {
+        if (!(authentication instanceof JwtAuthenticationToken jwtAuthenticationToken)
+                || !authentication.isAuthenticated()) {
+            return;
+        }
+
+        var expiresAt = jwtAuthenticationToken.getToken().getExpiresAt();
+        if (expiresAt != null && !expiresAt.isAfter(clock.instant())) {
+            return;
+        }
+
+        cache.put(
+                key(token),
+                new JwtAuthenticationToken(
+                        jwtAuthenticationToken.getToken(),
+                        jwtAuthenticationToken.getAuthorities(),
+                        jwtAuthenticationToken.getName()));
+    }
+
+    public long estimatedSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @return the SHA-256 hash of the raw token, used as cache key
+     */
+    static @NonNull ByteBuffer key(final @NonNull String token) {
+        try {
+            return ByteBuffer.wrap(
+                    MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    private record TokenExpiry(@NonNull Clock clock, @NonNull Duration timeToLive)
+            implements Expiry<ByteBuffer, JwtAuthenticationToken> {
+
+        @Override
+        public long expireAfterCreate(
+                final @NonNull ByteBuffer key,
+                final @NonNull JwtAuthenticationToken value,
+                final long currentTime) {
+            Instant expiresAt = value.getToken().getExpiresAt();
+            if (expiresAt == null) {
+                return timeToLive.toNanos();
+            }
+
+            var remaining = between(clock.instant(), expiresAt);
+            if (remaining.isNegative()) {
+                return 0;
+            }
+            return remaining.compareTo(timeToLive) < 0 ? remaining.toNanos() : timeToLive.toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(
+                final @NonNull ByteBuffer key,
+                final @NonNull JwtAuthenticationToken value,
+                final long currentTime,
+                final long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(
+                final @NonNull ByteBuffer key,
+                final @NonNull JwtAuthenticationToken value,
+                final long currentTime,
+                final long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
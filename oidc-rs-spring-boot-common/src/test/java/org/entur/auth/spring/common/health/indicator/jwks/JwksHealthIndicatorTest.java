@@ -1,44 +1,58 @@
 package org.entur.auth.spring.common.health.indicator.jwks;
 
+import static java.time.Duration.ofSeconds;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.nCopies;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.atMostOnce;
-import static org.mockito.Mockito.times;
-import static org.mockito.Mockito.verify;
-import static org.mockito.Mockito.verifyNoInteractions;
-import static org.mockito.Mockito.when;
+import static org.assertj.core.api.InstanceOfAssertFactories.MAP;
 import static org.springframework.boot.health.contributor.Status.DOWN;
+import static org.springframework.boot.health.contributor.Status.UNKNOWN;
 import static org.springframework.boot.health.contributor.Status.UP;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import lombok.NonNull;
+import lombok.val;
 import org.entur.auth.spring.common.server.JWKSourceWithIssuer;
+import org.entur.auth.spring.common.server.JwksReadiness;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
-import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
-import org.mockito.Mock;
-import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.boot.health.contributor.Health;
 
-@ExtendWith(MockitoExtension.class)
 @DisplayName("JwksHealthIndicator test suite")
 class JwksHealthIndicatorTest {
-    @Mock private JWKSourceWithIssuer<?> source;
+    private static final String ISSUER = "https://partner.dev.entur.org";
 
-    @Mock private JwksHealthCache cache;
+    private static @NonNull JWKSourceWithIssuer<?> source(final JwksReadiness readiness) {
+        return source(ISSUER, readiness);
+    }
+
+    private static @NonNull JWKSourceWithIssuer<?> source(
+            final @NonNull String issuerUrl, final JwksReadiness readiness) {
+        return new JWKSourceWithIssuer<>(issuerUrl, null, readiness);
+    }
+
+    private static @NonNull JWKSourceWithIssuer<?> retrieved(final int keys) {
+        val readiness = new JwksReadiness(ofSeconds(0), false);
+        readiness.success(keys);
+        return source(readiness);
+    }
+
+    private static @NonNull JWKSourceWithIssuer<?> failed() {
+        val readiness = new JwksReadiness(ofSeconds(0), false);
+        readiness.failure();
+        return source(readiness);
+    }
 
     @Nested
     @DisplayName("JwksHealthIndicator::health test suite")
     class HealthTests {
         @Test
         void should_return_unknown_for_empty_sources() {
-            assertThat(new JwksHealthIndicator(emptyList(), cache).health())
-                    .isEqualTo(Health.unknown().build());
-
-            verifyNoInteractions(cache);
+            assertThat(new JwksHealthIndicator(emptyList()).health().getStatus()).isEqualTo(UNKNOWN);
         }
 
         @ParameterizedTest
@@ -47,12 +61,9 @@ class JwksHealthIndicatorTest {
                     1, 2, 3,
                 })
         void should_return_up_if_all_sources_are_healthy(final short numberOfSources) {
-            when(cache.get(any(JWKSourceWithIssuer.class))).thenReturn(UP);
-
-            assertThat(new JwksHealthIndicator(nCopies(numberOfSources, source), cache).health())
-                    .isEqualTo(Health.up().build());
-
-            verify(cache, times(numberOfSources)).get(any(JWKSourceWithIssuer.class));
+            assertThat(
+                            new JwksHealthIndicator(nCopies(numberOfSources, retrieved(1))).health().getStatus())
+                    .isEqualTo(UP);
         }
 
         @ParameterizedTest
@@ -61,12 +72,71 @@ class JwksHealthIndicatorTest {
                     1, 2, 3,
                 })
         void should_return_down_if_any_source_fails(final short numberOfSources) {
-            when(cache.get(any(JWKSourceWithIssuer.class))).thenReturn(DOWN);
+            assertThat(new JwksHealthIndicator(nCopies(numberOfSources, failed())).health().getStatus())
+                    .isEqualTo(DOWN);
+        }
+
+        @Test
+        void should_return_down_if_any_source_has_no_keys() {
+            assertThat(new JwksHealthIndicator(List.of(retrieved(1), retrieved(0))).health().getStatus())
+                    .isEqualTo(DOWN);
+        }
+
+        @Test
+        void should_return_unknown_until_jwks_is_retrieved() {
+            val lazy = source(new JwksReadiness(ofSeconds(0), true));
+
+            assertThat(new JwksHealthIndicator(List.of(retrieved(1), lazy)).health().getStatus())
+                    .isEqualTo(UNKNOWN);
+            assertThat(new JwksHealthIndicator(List.of(failed(), lazy)).health().getStatus())
+                    .isEqualTo(DOWN);
+        }
+
+        @Test
+        void should_return_unknown_for_untracked_source() {
+            assertThat(new JwksHealthIndicator(List.of(source(null))).health().getStatus())
+                    .isEqualTo(UNKNOWN);
+        }
+
+        @Test
+        void should_follow_retrievals_pushed_by_source() {
+            val readiness = new JwksReadiness(ofSeconds(0), false);
+            val indicator = new JwksHealthIndicator(List.of(source(readiness)));
+
+            readiness.success(1);
+            assertThat(indicator.health().getStatus()).isEqualTo(UP);
+
+            readiness.failure();
+            assertThat(indicator.health().getStatus()).isEqualTo(DOWN);
+
+            readiness.success(1);
+            assertThat(indicator.health().getStatus()).isEqualTo(UP);
+        }
+
+        @Test
+        void should_include_details_per_issuer() {
+            val readiness = new JwksReadiness(ofSeconds(0), false);
+            readiness.success(2, Duration.ofMillis(120));
 
-            assertThat(new JwksHealthIndicator(nCopies(numberOfSources, source), cache).health())
-                    .isEqualTo(Health.down().build());
+            val health =
+                    new JwksHealthIndicator(
+                                    List.of(
+                                            source(ISSUER, readiness),
+                                            source("https://lazy", new JwksReadiness(ofSeconds(0), true)),
+                                            source("https://untracked", null)))
+                            .health();
 
-            verify(cache, atMostOnce()).get(any(JWKSourceWithIssuer.class));
+            assertThat(health.getStatus()).isEqualTo(UNKNOWN);
+            assertThat(health.getDetails().get(ISSUER))
+                    .asInstanceOf(MAP)
+                    .containsEntry("status", "UP")
+                    .containsEntry("keys", 2)
+                    .containsEntry("fetchLatency", "PT0.12S")
+                    .containsKey("lastFetchAge");
+            assertThat(health.getDetails().get("https://lazy"))
+                    .isEqualTo(Map.of("status", "UNKNOWN", "keys", 0));
+            assertThat(health.getDetails().get("https://untracked"))
+                    .isEqualTo(Map.of("status", "UNKNOWN"));
         }
     }
 }
@@ -0,0 +1,169 @@
+package org.entur.auth.spring.common.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.jwk.source.JWKSetSourceWithHealthStatusReporting;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.health.HealthReport;
+import com.nimbusds.jose.util.health.HealthReportListener;
+import com.nimbusds.jose.util.health.HealthStatus;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("JwksMetrics test suite")
+class JwksMetricsTest {
+    private static final String ISSUER = "https://partner.dev.entur.org";
+
+    private final @NonNull MockClock clock = new MockClock();
+    private final @NonNull SimpleMeterRegistry meterRegistry =
+            new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+    private final @NonNull JwksMetrics metrics = new JwksMetrics(meterRegistry);
+
+    @SuppressWarnings("unchecked")
+    private @NonNull HealthReport<
+                    JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+            report(final @NonNull HealthStatus status) {
+        return new HealthReport<>(
+                mock(JWKSetSourceWithHealthStatusReporting.class),
+                status,
+                status == HealthStatus.HEALTHY ? null : new RuntimeException("Unavailable"),
+                clock.wallTime(),
+                null);
+    }
+
+    private double gauge(final @NonNull String name) {
+        return meterRegistry.get(name).tag("issuer", ISSUER).gauge().value();
+    }
+
+    @Nested
+    @DisplayName("JwksMetrics.IssuerJwksMetrics test suite")
+    class IssuerJwksMetricsTests {
+        @Test
+        void should_count_refreshes_by_health_status() {
+            val issuerMetrics = metrics.forIssuer(ISSUER);
+
+            issuerMetrics.notify(report(HealthStatus.HEALTHY));
+            issuerMetrics.notify(report(HealthStatus.NOT_HEALTHY));
+            issuerMetrics.notify(report(HealthStatus.HEALTHY));
+
+            assertThat(
+                            meterRegistry
+                                    .get(JwksMetrics.REFRESH_METER)
+                                    .tag("issuer", ISSUER)
+                                    .tag("result", "success")
+                                    .counter()
+                                    .count())
+                    .isEqualTo(2);
+            assertThat(
+                            meterRegistry
+                                    .get(JwksMetrics.REFRESH_METER)
+                                    .tag("issuer", ISSUER)
+                                    .tag("result", "failure")
+                                    .counter()
+                                    .count())
+                    .isEqualTo(1);
+        }
+
+        @Test
+        void should_report_age_of_last_successful_refresh() {
+            val issuerMetrics = metrics.forIssuer(ISSUER);
+            assertThat(gauge(JwksMetrics.LAST_SUCCESS_AGE_METER)).isNaN();
+
+            issuerMetrics.notify(report(HealthStatus.HEALTHY));
+            clock.add(Duration.ofSeconds(30));
+            issuerMetrics.notify(report(HealthStatus.NOT_HEALTHY));
+
+            assertThat(gauge(JwksMetrics.LAST_SUCCESS_AGE_METER)).isEqualTo(30);
+        }
+
+        @Test
+        void should_record_refresh_latency_and_key_count() {
+            val issuerMetrics = metrics.forIssuer(ISSUER);
+            val jwkSet =
+                    new JWKSet(
+                            List.of(
+                                    new OctetSequenceKey.Builder("first".getBytes(StandardCharsets.UTF_8))
+                                            .keyID("first")
+                                            .build(),
+                                    new OctetSequenceKey.Builder("second".getBytes(StandardCharsets.UTF_8))
+                                            .keyID("second")
+                                            .build()));
+
+            issuerMetrics.refreshed(jwkSet, Duration.ofMillis(120));
+
+            val timer =
+                    meterRegistry.get(JwksMetrics.REFRESH_DURATION_METER).tag("issuer", ISSUER).timer();
+            assertThat(timer.count()).isEqualTo(1);
+            assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(120);
+            assertThat(gauge(JwksMetrics.KEYS_METER)).isEqualTo(2);
+        }
+
+        @Test
+        void should_count_rate_limited_outage_and_retry_events() {
+            val issuerMetrics = metrics.forIssuer(ISSUER);
+
+            issuerMetrics.rateLimited();
+            issuerMetrics.outageServed();
+            issuerMetrics.outageServed();
+            issuerMetrics.retried();
+
+            assertThat(meterRegistry.get(JwksMetrics.RATE_LIMITED_METER).counter().count()).isEqualTo(1);
+            assertThat(meterRegistry.get(JwksMetrics.OUTAGE_SERVED_METER).counter().count()).isEqualTo(2);
+            assertThat(meterRegistry.get(JwksMetrics.RETRIES_METER).counter().count()).isEqualTo(1);
+        }
+
+        @Test
+        void should_reuse_meters_when_issuer_is_added_again() {
+            assertThat(metrics.forIssuer(ISSUER)).isSameAs(metrics.forIssuer(ISSUER));
+        }
+    }
+
+    @Nested
+    @DisplayName("JwksMetrics::withMetrics test suite")
+    class WithMetricsTests {
+        @Test
+        void should_notify_both_listeners() {
+            val issuerMetrics = metrics.forIssuer(ISSUER);
+            val reports =
+                    new ArrayList<
+                            HealthReport<
+                                    JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>>();
+            HealthReportListener<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+                    listener = reports::add;
+
+            JwksMetrics.withMetrics(listener, issuerMetrics).notify(report(HealthStatus.HEALTHY));
+
+            assertThat(reports).hasSize(1);
+            assertThat(
+                            meterRegistry
+                                    .get(JwksMetrics.REFRESH_METER)
+                                    .tag("result", "success")
+                                    .counter()
+                                    .count())
+                    .isEqualTo(1);
+        }
+
+        @Test
+        void should_keep_listener_without_metrics() {
+            HealthReportListener<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+                    listener = report -> {};
+
+            assertThat(JwksMetrics.withMetrics(listener, null)).isSameAs(listener);
+            assertThat(JwksMetrics.withMetrics(null, null)).isNull();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.entur.auth.spring.common.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import com.nimbusds.jose.RemoteKeySourceException;
+import com.nimbusds.jose.proc.BadJWSException;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
+import com.nimbusds.jwt.proc.ExpiredJWTException;
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.NonNull;
+import lombok.val;
+import org.entur.auth.spring.common.server.AudienceValidator;
+import org.entur.auth.spring.common.server.ClaimsPreCheck;
+import org.entur.auth.spring.common.server.TokenRejection;
+import org.entur.auth.spring.common.server.TokenRejectionError;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
+
+@DisplayName("TokenValidationMetrics test suite")
+class TokenValidationMetricsTest {
+    private static final String ISSUER = "https://partner.dev.entur.org";
+
+    private final @NonNull MockClock clock = new MockClock();
+    private final @NonNull SimpleMeterRegistry meterRegistry =
+            new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock);
+    private final @NonNull TokenValidationMetrics metrics = new TokenValidationMetrics(meterRegistry);
+
+    private double count(
+            final @NonNull String issuer, final @NonNull TokenValidationOutcome outcome) {
+        return meterRegistry
+                .get(TokenValidationMetrics.VALIDATION_METER)
+                .tag("issuer", issuer)
+                .tag("outcome", outcome.getTag())
+                .timer()
+                .count();
+    }
+
+    @Nested
+    @DisplayName("TokenValidationMetrics.IssuerMetrics test suite")
+    class IssuerMetricsTests {
+        @Test
+        void should_time_successful_validation() {
+            val issuerMetrics = metrics.forIssuer(ISSUER);
+
+            val start = issuerMetrics.start();
+            clock.add(Duration.ofMillis(3));
+            issuerMetrics.success(start);
+
+            val timer =
+                    meterRegistry
+                            .get(TokenValidationMetrics.VALIDATION_METER)
+                            .tag("issuer", ISSUER)
+                            .tag("outcome", "success")
+                            .timer();
+            assertThat(timer.count()).isEqualTo(1);
+            assertThat(timer.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(3);
+        }
+
+        @Test
+        void should_record_failure_by_outcome() {
+            val issuerMetrics = metrics.forIssuer(ISSUER);
+
+            issuerMetrics.failure(
+                    issuerMetrics.start(),
+                    new InvalidBearerTokenException(
+                            "Invalid", new BadJwtException("Invalid", new BadJWSException("Invalid signature"))));
+
+            assertThat(count(ISSUER, TokenValidationOutcome.BAD_SIGNATURE)).isEqualTo(1);
+            assertThat(count(ISSUER, TokenValidationOutcome.SUCCESS)).isZero();
+        }
+
+        @Test
+        void should_count_cache_hits_and_misses() {
+            val issuerMetrics = metrics.forIssuer(ISSUER);
+
+            issuerMetrics.cacheHit();
+            issuerMetrics.cacheHit();
+            issuerMetrics.cacheMiss();
+
+            assertThat(
+                            meterRegistry
+                                    .get(TokenValidationMetrics.CACHE_METER)
+                                    .tag("issuer", ISSUER)
+                                    .tag("result", "hit")
+                                    .counter()
+                                    .count())
+                    .isEqualTo(2);
+        }
+
+        @Test
+        void should_count_pre_check_rejections_separately() {
+            val issuerMetrics = metrics.forIssuer(ISSUER);
+            val preCheck = new ClaimsPreCheck(Clock.systemUTC(), Duration.ZERO, ISSUER, List.of());
+            val rejected =
+                    catchThrowable(
+                            () ->
+                                    preCheck.verify(
+                                            new PlainJWT(
+                                                    new JWTClaimsSet.Builder().issuer("https://other.entur.org").build())));
+
+            issuerMetrics.failure(
+                    issuerMetrics.start(), new InvalidBearerTokenException("Invalid", rejected));
+            issuerMetrics.failure(issuerMetrics.start(), new InvalidBearerTokenException("Invalid"));
+
+            assertThat(
+                            meterRegistry
+                                    .get(TokenValidationMetrics.PRE_CHECK_METER)
+                                    .tag("issuer", ISSUER)
+                                    .tag("reason", "bad-issuer")
+                                    .counter()
+                                    .count())
+                    .isEqualTo(1);
+            assertThat(count(ISSUER, TokenValidationOutcome.INVALID)).isEqualTo(2);
+        }
+
+        @Test
+        void should_share_meters_between_unknown_issuers() {
+            metrics.unknownIssuer().record(0, TokenValidationOutcome.UNKNOWN_ISSUER);
+            metrics.unknownIssuer().record(0, TokenValidationOutcome.UNKNOWN_ISSUER);
+
+            assertThat(
+                            count(
+                                    TokenValidationMetrics.UNKNOWN_ISSUER_TAG, TokenValidationOutcome.UNKNOWN_ISSUER))
+                    .isEqualTo(2);
+        }
+    }
+
+    @Nested
+    @DisplayName("TokenValidationOutcome::of test suite")
+    class OutcomeTests {
+        @Test
+        void should_classify_expired_token() {
+            assertThat(
+                            TokenValidationOutcome.of(
+                                    new BadJwtException("", new ExpiredJWTException("Expired JWT"))))
+                    .isEqualTo(TokenValidationOutcome.EXPIRED);
+            assertThat(
+                            TokenValidationOutcome.of(
+                                    new JwtValidationException(
+                                            "", List.of(new OAuth2Error("invalid_token", "Jwt expired at 2024", null)))))
+                    .isEqualTo(TokenValidationOutcome.EXPIRED);
+        }
+
+        @Test
+        void should_classify_bad_audience() {
+            assertThat(
+                            TokenValidationOutcome.of(
+                                    new JwtValidationException(
+                                            "",
+                                            List.of(
+                                                    new TokenRejectionError(
+                                                            TokenRejection.BAD_AUDIENCE,
+                                                            "401",
+                                                            AudienceValidator.ERROR_DESCRIPTION,
+                                                            null)))))
+                    .isEqualTo(TokenValidationOutcome.BAD_AUDIENCE);
+        }
+
+        @Test
+        void should_classify_unavailable_jwks() {
+            assertThat(
+                            TokenValidationOutcome.of(
+                                    new JwtException("", new RemoteKeySourceException("Unavailable", null))))
+                    .isEqualTo(TokenValidationOutcome.JWKS_UNAVAILABLE);
+        }
+
+        @Test
+        void should_classify_other_failures_as_invalid() {
+            assertThat(TokenValidationOutcome.of(new BadJwtException("Malformed payload")))
+                    .isEqualTo(TokenValidationOutcome.INVALID);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import lombok.NonNull;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+
+@DisplayName("AudienceValidator test suite")
+class AudienceValidatorTest {
+    private final @NonNull AudienceValidator validator =
+            new AudienceValidator(Set.of("https://api.entur.io", "https://api2.entur.io"));
+
+    private static @NonNull Jwt jwt(final Object audience) {
+        var builder = Jwt.withTokenValue("token").header("alg", "RS256").subject("subject");
+        if (audience != null) {
+            builder.claim(JwtClaimNames.AUD, audience);
+        }
+        return builder.build();
+    }
+
+    @Nested
+    @DisplayName("AudienceValidator::validate test suite")
+    class ValidateTests {
+        @Test
+        void should_accept_token_with_configured_audience() {
+            assertThat(
+                            validator
+                                    .validate(jwt(List.of("https://other.entur.io", "https://api2.entur.io")))
+                                    .hasErrors())
+                    .isFalse();
+            assertThat(validator.validate(jwt(Set.of("https://api.entur.io"))).hasErrors()).isFalse();
+            assertThat(validator.validate(jwt("https://api.entur.io")).hasErrors()).isFalse();
+        }
+
+        @Test
+        void should_reject_token_without_configured_audience() {
+            var result = validator.validate(jwt(List.of("https://other.entur.io")));
+
+            assertThat(result.hasErrors()).isTrue();
+            assertThat(result.getErrors())
+                    .singleElement()
+                    .satisfies(
+                            error ->
+                                    assertThat(error.getDescription())
+                                            .isEqualTo(AudienceValidator.ERROR_DESCRIPTION));
+            assertThat(validator.validate(jwt(null)).hasErrors()).isTrue();
+            assertThat(validator.validate(jwt(Arrays.asList((String) null))).hasErrors()).isTrue();
+        }
+
+        @Test
+        void should_share_results_between_calls() {
+            var audience = jwt(List.of("https://api.entur.io"));
+            var otherAudience = jwt(List.of("https://other.entur.io"));
+
+            assertThat(validator.validate(audience)).isSameAs(validator.validate(audience));
+            assertThat(validator.validate(otherAudience)).isSameAs(validator.validate(otherAudience));
+        }
+
+        @Test
+        void should_reject_every_token_without_configured_audiences() {
+            assertThat(
+                            new AudienceValidator(null)
+                                    .validate(jwt(List.of("https://api.entur.io")))
+                                    .hasErrors())
+                    .isTrue();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import java.security.KeyPairGenerator;
+import java.util.List;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("CachingJWSKeySelector test suite")
+class CachingJWSKeySelectorTest {
+    @Mock private JWKSetSource<SecurityContext> jwkSetSource;
+
+    private static @NonNull RSAKey rsaKey(final @NonNull String keyId) throws JOSEException {
+        return new RSAKeyGenerator(2048).keyID(keyId).generate().toPublicJWK();
+    }
+
+    private static @NonNull JWSHeader header(final String keyId) {
+        return new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(keyId).build();
+    }
+
+    @Nested
+    @DisplayName("CachingJWSKeySelector::selectJWSKeys test suite")
+    class SelectJWSKeysTests {
+        @Test
+        void should_select_key_by_key_id() throws Exception {
+            val first = rsaKey("first");
+            val second = rsaKey("second");
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any()))
+                    .thenReturn(new JWKSet(List.of(first, second)));
+            val selector = new CachingJWSKeySelector<>(JWSAlgorithm.Family.RSA, jwkSetSource);
+
+            assertThat(selector.selectJWSKeys(header("second"), null))
+                    .singleElement()
+                    .isEqualTo(second.toPublicKey());
+        }
+
+        @Test
+        void should_reuse_converted_keys_while_jwk_set_is_unchanged() throws Exception {
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any())).thenReturn(new JWKSet(rsaKey("first")));
+            val selector = new CachingJWSKeySelector<>(JWSAlgorithm.Family.RSA, jwkSetSource);
+
+            val keys = selector.selectJWSKeys(header("first"), null);
+
+            assertThat(selector.selectJWSKeys(header("first"), null)).isSameAs(keys);
+        }
+
+        @Test
+        void should_refresh_jwk_set_on_unknown_key_id() throws Exception {
+            val rotated = rsaKey("rotated");
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any()))
+                    .thenReturn(new JWKSet(rsaKey("first")), new JWKSet(rotated));
+            val selector = new CachingJWSKeySelector<>(JWSAlgorithm.Family.RSA, jwkSetSource);
+
+            assertThat(selector.selectJWSKeys(header("rotated"), null))
+                    .singleElement()
+                    .isEqualTo(rotated.toPublicKey());
+            verify(jwkSetSource, times(2)).getJWKSet(any(), anyLong(), any());
+        }
+
+        @Test
+        void should_not_select_keys_for_other_algorithms() throws Exception {
+            val selector = new CachingJWSKeySelector<>(JWSAlgorithm.Family.EC, jwkSetSource);
+
+            assertThat(selector.selectJWSKeys(header("first"), null)).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("CachingJWSKeySelector::lazy test suite")
+    class LazyTests {
+        @Test
+        void should_not_retrieve_jwk_set_before_first_token() {
+            CachingJWSKeySelector.lazy(jwkSetSource);
+
+            verifyNoInteractions(jwkSetSource);
+        }
+
+        @Test
+        void should_select_ec_key_by_token_algorithm() throws Exception {
+            val ecKey = new ECKeyGenerator(Curve.P_256).keyID("ec").generate().toPublicJWK();
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any()))
+                    .thenReturn(new JWKSet(List.of(rsaKey("rsa"), ecKey)));
+            val selector = CachingJWSKeySelector.lazy(jwkSetSource);
+
+            val header = new JWSHeader.Builder(JWSAlgorithm.ES256).keyID("ec").build();
+
+            assertThat(selector.selectJWSKeys(header, null))
+                    .singleElement()
+                    .isEqualTo(ecKey.toPublicKey());
+            assertThat(selector.selectJWSKeys(header("rsa"), null)).hasSize(1);
+        }
+
+        @Test
+        void should_select_ed25519_key_by_token_algorithm() throws Exception {
+            val keyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+            val edKey = Ed25519VerifierTest.jwk(keyPair, "ed");
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any()))
+                    .thenReturn(new JWKSet(List.of(rsaKey("rsa"), edKey)));
+            val selector = CachingJWSKeySelector.lazy(jwkSetSource);
+
+            val header = new JWSHeader.Builder(JWSAlgorithm.EdDSA).keyID("ed").build();
+
+            assertThat(selector.selectJWSKeys(header, null))
+                    .singleElement()
+                    .isEqualTo(keyPair.getPublic());
+        }
+
+        @Test
+        void should_not_select_keys_for_symmetric_algorithms() throws Exception {
+            val selector = CachingJWSKeySelector.lazy(jwkSetSource);
+
+            val header = new JWSHeader.Builder(JWSAlgorithm.HS256).keyID("secret").build();
+
+            assertThat(selector.selectJWSKeys(header, null)).isEmpty();
+            verifyNoInteractions(jwkSetSource);
+        }
+    }
+
+    @Nested
+    @DisplayName("CachingJWSKeySelector::algorithmsFromJWKSet test suite")
+    class AlgorithmsFromJWKSetTests {
+        @Test
+        void should_accept_rsa_family_for_rsa_keys() throws Exception {
+            assertThat(CachingJWSKeySelector.algorithmsFromJWKSet(new JWKSet(rsaKey("first"))))
+                    .containsExactlyInAnyOrderElementsOf(JWSAlgorithm.Family.RSA);
+        }
+
+        @Test
+        void should_accept_eddsa_for_ed25519_keys() throws Exception {
+            val jwk =
+                    Ed25519VerifierTest.jwk(
+                            KeyPairGenerator.getInstance("Ed25519").generateKeyPair(), "first");
+
+            assertThat(CachingJWSKeySelector.algorithmsFromJWKSet(new JWKSet(jwk)))
+                    .containsExactly(JWSAlgorithm.EdDSA);
+        }
+
+        @Test
+        void should_fail_without_rsa_or_ec_keys() {
+            val jwkSet = new JWKSet(new OctetSequenceKey.Builder(new byte[32]).keyID("secret").build());
+
+            assertThatThrownBy(() -> CachingJWSKeySelector.algorithmsFromJWKSet(jwkSet))
+                    .isInstanceOf(KeySourceException.class)
+                    .hasMessage("Couldn't retrieve JWKs");
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("CachingJWSVerifierFactory test suite")
+class CachingJWSVerifierFactoryTest {
+    @Nested
+    @DisplayName("CachingJWSVerifierFactory::createJWSVerifier test suite")
+    class CreateJWSVerifierTests {
+        @Test
+        void should_reuse_verifier_for_same_key() throws Exception {
+            val key = new RSAKeyGenerator(2048).generate().toRSAPublicKey();
+            val factory = new CachingJWSVerifierFactory();
+
+            val verifier = factory.createJWSVerifier(new JWSHeader(JWSAlgorithm.RS256), key);
+
+            assertThat(factory.createJWSVerifier(new JWSHeader(JWSAlgorithm.RS512), key))
+                    .isSameAs(verifier);
+        }
+
+        @Test
+        void should_create_verifier_per_key() throws Exception {
+            val factory = new CachingJWSVerifierFactory();
+            val header = new JWSHeader(JWSAlgorithm.RS256);
+
+            assertThat(
+                            factory.createJWSVerifier(
+                                    header, new RSAKeyGenerator(2048).generate().toRSAPublicKey()))
+                    .isNotSameAs(
+                            factory.createJWSVerifier(
+                                    header, new RSAKeyGenerator(2048).generate().toRSAPublicKey()));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.entur.auth.spring.common.server;
+
+import static java.time.Duration.ofSeconds;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import lombok.NonNull;
+import lombok.val;
+import org.entur.auth.spring.common.metrics.TokenValidationOutcome;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("ClaimsPreCheck test suite")
+class ClaimsPreCheckTest {
+    private static final String ISSUER = "https://partner.dev.entur.org";
+    private static final Instant NOW = Instant.parse("2024-01-01T12:00:00Z");
+
+    private final @NonNull ClaimsPreCheck preCheck =
+            new ClaimsPreCheck(
+                    Clock.fixed(NOW, ZoneOffset.UTC), ofSeconds(60), ISSUER, Set.of("https://api.entur.io"));
+
+    private static @NonNull JWTClaimsSet.Builder claims() {
+        return new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .audience(List.of("https://other.entur.io", "https://api.entur.io"))
+                .expirationTime(Date.from(NOW.plusSeconds(300)))
+                .notBeforeTime(Date.from(NOW.minusSeconds(300)));
+    }
+
+    @Nested
+    @DisplayName("ClaimsPreCheck::check test suite")
+    class CheckTests {
+        @Test
+        void should_accept_valid_claims() {
+            assertThat(preCheck.check(claims().build())).isNull();
+        }
+
+        @Test
+        void should_accept_tokens_within_clock_skew() {
+            assertThat(
+                            preCheck.check(
+                                    claims()
+                                            .expirationTime(Date.from(NOW.minusSeconds(60)))
+                                            .notBeforeTime(Date.from(NOW.plusSeconds(60)))
+                                            .build()))
+                    .isNull();
+        }
+
+        @Test
+        void should_reject_expired_token() {
+            assertThat(preCheck.check(claims().expirationTime(Date.from(NOW.minusSeconds(61))).build()))
+                    .isEqualTo(ClaimsPreCheck.Rejection.EXPIRED);
+        }
+
+        @Test
+        void should_reject_token_not_yet_valid() {
+            assertThat(preCheck.check(claims().notBeforeTime(Date.from(NOW.plusSeconds(61))).build()))
+                    .isEqualTo(ClaimsPreCheck.Rejection.NOT_YET_VALID);
+        }
+
+        @Test
+        void should_reject_other_issuer() {
+            assertThat(preCheck.check(claims().issuer("https://other.entur.org").build()))
+                    .isEqualTo(ClaimsPreCheck.Rejection.BAD_ISSUER);
+        }
+
+        @Test
+        void should_reject_token_without_configured_audience() {
+            assertThat(preCheck.check(claims().audience("https://other.entur.io").build()))
+                    .isEqualTo(ClaimsPreCheck.Rejection.BAD_AUDIENCE);
+            assertThat(preCheck.check(claims().audience((String) null).build()))
+                    .isEqualTo(ClaimsPreCheck.Rejection.BAD_AUDIENCE);
+        }
+
+        @Test
+        void should_skip_audience_without_configured_audiences() {
+            val withoutAudiences =
+                    new ClaimsPreCheck(Clock.fixed(NOW, ZoneOffset.UTC), ofSeconds(60), ISSUER, Set.of());
+
+            assertThat(withoutAudiences.check(claims().audience((String) null).build())).isNull();
+        }
+    }
+
+    @Nested
+    @DisplayName("ClaimsPreCheck::verify test suite")
+    class VerifyTests {
+        @Test
+        void should_pass_valid_token() {
+            assertThatNoException().isThrownBy(() -> preCheck.verify(new PlainJWT(claims().build())));
+        }
+
+        @Test
+        void should_throw_with_same_outcome_as_validators() {
+            assertThatThrownBy(
+                            () ->
+                                    preCheck.verify(
+                                            new PlainJWT(
+                                                    claims().expirationTime(Date.from(NOW.minusSeconds(61))).build())))
+                    .isInstanceOfSatisfying(
+                            ClaimsPreCheck.ClaimsPreCheckException.class,
+                            ex -> {
+                                assertThat(ex.getRejection()).isEqualTo(ClaimsPreCheck.Rejection.EXPIRED);
+                                assertThat(TokenValidationOutcome.of(ex)).isEqualTo(TokenValidationOutcome.EXPIRED);
+                            });
+
+            assertThatThrownBy(
+                            () ->
+                                    preCheck.verify(
+                                            new PlainJWT(claims().audience("https://other.entur.io").build())))
+                    .satisfies(
+                            ex ->
+                                    assertThat(TokenValidationOutcome.of(ex))
+                                            .isEqualTo(TokenValidationOutcome.BAD_AUDIENCE));
+        }
+    }
+}
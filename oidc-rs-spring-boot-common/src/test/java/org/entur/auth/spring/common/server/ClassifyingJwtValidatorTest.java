@@ -0,0 +1,69 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.entur.auth.spring.common.server.TokenRejectionTest.jwt;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+
+@DisplayName("ClassifyingJwtValidator test suite")
+class ClassifyingJwtValidatorTest {
+    private static final String ISSUER = "https://other.entur.org";
+
+    private final @NonNull ClassifyingJwtValidator validator =
+            new ClassifyingJwtValidator(
+                    new DelegatingOAuth2TokenValidator<>(
+                            JwtValidators.createDefaultWithIssuer(ISSUER),
+                            new AudienceValidator(Set.of("https://api.entur.io"))),
+                    ISSUER,
+                    List.of("https://api.entur.io"));
+
+    private static TokenRejection rejection(final @NonNull OAuth2TokenValidatorResult result) {
+        return TokenRejection.of(result.getErrors());
+    }
+
+    @Nested
+    @DisplayName("ClassifyingJwtValidator::validate test suite")
+    class ValidateTests {
+        @Test
+        void should_classify_by_claims() {
+            val now = Instant.now();
+
+            assertThat(rejection(validator.validate(jwt(now.minusSeconds(3600), null))))
+                    .isEqualTo(TokenRejection.EXPIRED);
+            assertThat(rejection(validator.validate(jwt(now.plusSeconds(7200), now.plusSeconds(3600)))))
+                    .isEqualTo(TokenRejection.NOT_YET_VALID);
+            assertThat(rejection(validator.validate(jwt(now.plusSeconds(3600), null))))
+                    .isEqualTo(TokenRejection.BAD_AUDIENCE);
+        }
+
+        @Test
+        void should_keep_errors_of_validators() {
+            val result = validator.validate(jwt(Instant.now().minusSeconds(3600), null));
+
+            assertThat(result.getErrors())
+                    .allSatisfy(error -> assertThat(error).isInstanceOf(TokenRejectionError.class))
+                    .extracting(OAuth2Error::getDescription)
+                    .anySatisfy(description -> assertThat(description).startsWith("Jwt expired at"));
+        }
+
+        @Test
+        void should_pass_valid_tokens() {
+            val valid =
+                    new ClassifyingJwtValidator(
+                            JwtValidators.createDefaultWithIssuer(ISSUER), ISSUER, List.of());
+
+            assertThat(valid.validate(jwt(Instant.now().plusSeconds(3600), null)).hasErrors()).isFalse();
+        }
+    }
+}
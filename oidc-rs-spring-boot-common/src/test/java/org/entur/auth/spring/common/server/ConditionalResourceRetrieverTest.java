@@ -0,0 +1,148 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("ConditionalResourceRetriever test suite")
+class ConditionalResourceRetrieverTest {
+    private static final String JWKS = "{\"keys\":[]}";
+    private static final String ETAG = "\"v1\"";
+
+    private final @NonNull AtomicInteger status = new AtomicInteger(200);
+    private final @NonNull CopyOnWriteArrayList<String> ifNoneMatch = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    private void handle(final @NonNull HttpExchange exchange) throws IOException {
+        ifNoneMatch.add(String.valueOf(exchange.getRequestHeaders().getFirst("If-None-Match")));
+        if (status.get() != 200) {
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+            return;
+        }
+
+        var body = JWKS.getBytes(StandardCharsets.UTF_8);
+        var acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            var compressed = new ByteArrayOutputStream();
+            try (var gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("ETag", ETAG);
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private @NonNull URL url(final @NonNull String path) throws IOException {
+        return new URL("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    @Nested
+    @DisplayName("ConditionalResourceRetriever::retrieveResource test suite")
+    class RetrieveResourceTests {
+        @Test
+        void should_decode_gzip_encoded_resource() throws IOException {
+            val resource = new ConditionalResourceRetriever(1000, 1000).retrieveResource(url("/jwks"));
+
+            assertThat(resource.getContent()).isEqualTo(JWKS);
+            assertThat(resource.getContentType()).isEqualTo("application/json");
+        }
+
+        @Test
+        void should_return_previous_resource_when_not_modified() throws IOException {
+            val retriever = new ConditionalResourceRetriever(1000, 1000);
+            val first = retriever.retrieveResource(url("/jwks"));
+
+            status.set(304);
+            assertThat(retriever.retrieveResource(url("/jwks"))).isSameAs(first);
+            assertThat(ifNoneMatch).containsExactly("null", ETAG);
+        }
+
+        @Test
+        void should_keep_validators_per_url() throws IOException {
+            val retriever = new ConditionalResourceRetriever(1000, 1000);
+            retriever.retrieveResource(url("/first"));
+            retriever.retrieveResource(url("/second"));
+            retriever.retrieveResource(url("/first"));
+
+            assertThat(ifNoneMatch).containsExactly("null", "null", ETAG);
+        }
+
+        @Test
+        void should_fail_on_error_status() throws IOException {
+            status.set(500);
+            val retriever = new ConditionalResourceRetriever(1000, 1000);
+            val url = url("/jwks");
+
+            assertThatThrownBy(() -> retriever.retrieveResource(url))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("HTTP 500");
+        }
+    }
+
+    @Nested
+    @DisplayName("ConditionalResourceRetriever::close test suite")
+    class CloseTests {
+        @Test
+        void should_keep_client_it_was_given_open() throws IOException {
+            val httpClient = ConditionalResourceRetriever.httpClient(1000);
+            val retriever = new ConditionalResourceRetriever(httpClient, 1000, 1000);
+            retriever.retrieveResource(url("/jwks"));
+
+            retriever.close();
+            val resource =
+                    new ConditionalResourceRetriever(httpClient, 1000, 1000).retrieveResource(url("/jwks"));
+
+            assertThat(resource.getContent()).isEqualTo(JWKS);
+        }
+
+        @Test
+        void should_keep_shared_retriever_open_when_closing_jwk_set_source()
+                throws IOException, KeySourceException {
+            val retriever = new ConditionalResourceRetriever(1000, 1000);
+            val source = new ConditionalJWKSetSource<>(url("/jwks"), retriever);
+            source.getJWKSet(JWKSetCacheRefreshEvaluator.noRefresh(), 0, null);
+
+            source.close();
+            retriever.retrieveResource(url("/jwks"));
+
+            assertThat(ifNoneMatch).containsExactly("null", ETAG);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.OctetKeyPair;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.util.Base64URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Arrays;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("Ed25519Verifier test suite")
+class Ed25519VerifierTest {
+    private static final byte[] SIGNING_INPUT = "header.payload".getBytes(StandardCharsets.US_ASCII);
+
+    private static @NonNull KeyPair keyPair() throws GeneralSecurityException {
+        return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+    }
+
+    private static @NonNull Base64URL sign(final @NonNull KeyPair keyPair)
+            throws GeneralSecurityException {
+        val signature = Signature.getInstance("Ed25519");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(SIGNING_INPUT);
+        return Base64URL.encode(signature.sign());
+    }
+
+    /** The JWK of a key pair, the X.509 encoding ends with the 32 bytes of the public key. */
+    static @NonNull OctetKeyPair jwk(final @NonNull KeyPair keyPair, final @NonNull String keyId) {
+        val encoded = keyPair.getPublic().getEncoded();
+        val x = Arrays.copyOfRange(encoded, encoded.length - 32, encoded.length);
+        return new OctetKeyPair.Builder(Curve.Ed25519, Base64URL.encode(x)).keyID(keyId).build();
+    }
+
+    @Nested
+    @DisplayName("Ed25519Verifier::verify test suite")
+    class VerifyTests {
+        @Test
+        void should_accept_valid_signature() throws Exception {
+            val keyPair = keyPair();
+            val verifier = new Ed25519Verifier(keyPair.getPublic());
+
+            assertThat(verifier.verify(new JWSHeader(JWSAlgorithm.EdDSA), SIGNING_INPUT, sign(keyPair)))
+                    .isTrue();
+        }
+
+        @Test
+        void should_reject_signature_of_other_key() throws Exception {
+            val verifier = new Ed25519Verifier(keyPair().getPublic());
+
+            assertThat(verifier.verify(new JWSHeader(JWSAlgorithm.EdDSA), SIGNING_INPUT, sign(keyPair())))
+                    .isFalse();
+        }
+
+        @Test
+        void should_reject_other_algorithms() throws Exception {
+            val keyPair = keyPair();
+            val verifier = new Ed25519Verifier(keyPair.getPublic());
+
+            assertThatThrownBy(
+                            () ->
+                                    verifier.verify(new JWSHeader(JWSAlgorithm.RS256), SIGNING_INPUT, sign(keyPair)))
+                    .isInstanceOf(JOSEException.class);
+        }
+
+        @Test
+        void should_require_ed25519_key() {
+            assertThatThrownBy(
+                            () -> new Ed25519Verifier(new RSAKeyGenerator(2048).generate().toRSAPublicKey()))
+                    .isInstanceOf(JOSEException.class);
+        }
+    }
+
+    @Nested
+    @DisplayName("Ed25519Verifier::toPublicKey test suite")
+    class ToPublicKeyTests {
+        @Test
+        void should_convert_jwk_to_public_key() throws Exception {
+            val keyPair = keyPair();
+
+            val publicKey = Ed25519Verifier.toPublicKey(jwk(keyPair, "first"));
+
+            assertThat(publicKey.getEncoded()).isEqualTo(keyPair.getPublic().getEncoded());
+            assertThat(Ed25519Verifier.isEd25519(publicKey)).isTrue();
+        }
+
+        @Test
+        void should_reject_other_curves() {
+            val jwk = new OctetKeyPair.Builder(Curve.X25519, Base64URL.encode(new byte[32])).build();
+
+            assertThatThrownBy(() -> Ed25519Verifier.toPublicKey(jwk)).isInstanceOf(JOSEException.class);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.context.properties.bind.PropertySourcesPlaceholdersResolver;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.MutablePropertySources;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ExternalIssuersWatcher test suite")
+class ExternalIssuersWatcherTest {
+    @Mock private SupportsIssuerUpdates resolver;
+
+    private final @NonNull AtomicReference<List<IssuerProperties>> issuers =
+            new AtomicReference<>(List.of());
+
+    private static @NonNull IssuerProperties issuer(
+            final @NonNull String tenant, final @NonNull String certificateHost) {
+        return IssuerProperties.builder()
+                .issuerUrl("https://%s.entur.io".formatted(tenant))
+                .certificateUrl("https://%s/%s/jwks.json".formatted(certificateHost, tenant))
+                .build();
+    }
+
+    private @NonNull ExternalIssuersWatcher watcher(
+            final @NonNull List<IssuerProperties> initialIssuers,
+            final @NonNull Set<String> protectedIssuers) {
+        return new ExternalIssuersWatcher(
+                Path.of("providers.properties"),
+                Duration.ofSeconds(2),
+                file -> issuers.get(),
+                resolver,
+                initialIssuers,
+                protectedIssuers);
+    }
+
+    @Nested
+    @DisplayName("ExternalIssuersWatcher::reload test suite")
+    class ReloadTests {
+        @Test
+        void should_only_apply_changed_issuers() {
+            val unchanged = issuer("unchanged", "auth");
+            val removed = issuer("removed", "auth");
+            val watcher = watcher(List.of(unchanged, removed, issuer("changed", "auth")), Set.of());
+
+            val changed = issuer("changed", "other");
+            val added = issuer("added", "auth");
+            issuers.set(List.of(unchanged, changed, added));
+            watcher.reload();
+
+            verify(resolver).removeIssuer(removed.getIssuerUrl());
+            verify(resolver).replaceIssuer(changed);
+            verify(resolver).addIssuer(added);
+            verifyNoMoreInteractions(resolver);
+        }
+
+        @Test
+        void should_keep_protected_issuers_when_changed() {
+            val configured = issuer("configured", "auth");
+            val watcher = watcher(List.of(configured), Set.of(configured.getIssuerUrl()));
+
+            issuers.set(List.of(issuer("configured", "other")));
+            watcher.reload();
+
+            verifyNoInteractions(resolver);
+        }
+
+        @Test
+        void should_not_remove_protected_issuers() {
+            val configured = issuer("configured", "auth");
+            val watcher = watcher(List.of(configured), Set.of(configured.getIssuerUrl()));
+
+            watcher.reload();
+
+            verify(resolver, never()).removeIssuer(any());
+        }
+
+        @Test
+        void should_keep_issuers_when_file_cannot_be_read() {
+            val watcher =
+                    new ExternalIssuersWatcher(
+                            Path.of("providers.properties"),
+                            Duration.ofSeconds(2),
+                            file -> {
+                                throw new IllegalStateException("Unreadable");
+                            },
+                            resolver,
+                            List.of(issuer("first", "auth")),
+                            Set.of());
+
+            watcher.reload();
+
+            verifyNoInteractions(resolver);
+        }
+
+        @Test
+        void should_add_failed_issuer_again_on_next_reload() {
+            val added = issuer("added", "auth");
+            val watcher = watcher(List.of(), Set.of());
+            issuers.set(List.of(added));
+
+            doThrow(new IllegalStateException("Unavailable")).when(resolver).addIssuer(added);
+            watcher.reload();
+            watcher.reload();
+
+            verify(resolver, times(2)).addIssuer(added);
+        }
+
+        @Test
+        void should_replace_failed_issuer_again_on_next_reload() {
+            val watcher = watcher(List.of(issuer("changed", "auth")), Set.of());
+            val changed = issuer("changed", "other");
+            issuers.set(List.of(changed));
+
+            doThrow(new IllegalStateException("Unavailable")).when(resolver).replaceIssuer(changed);
+            watcher.reload();
+            watcher.reload();
+
+            verify(resolver, times(2)).replaceIssuer(changed);
+            verify(resolver, never()).removeIssuer(any());
+        }
+    }
+
+    @Nested
+    @DisplayName("ExternalIssuersWatcher::propertiesLoader test suite")
+    class PropertiesLoaderTests {
+        @Test
+        void should_read_issuers_of_tenants_and_resolve_placeholders(@TempDir Path directory)
+                throws IOException {
+            val file = directory.resolve("providers.properties");
+            Files.write(
+                    file,
+                    List.of(
+                            "entur.auth.external.issuers[0].issuerUrl=https://partner.entur.io",
+                            "entur.auth.external.issuers[0].certificateUrl=http://localhost:${PORT}/partner",
+                            "entur.auth.external.issuers[1].issuerUrl=https://person.entur.io",
+                            "entur.auth.external.issuers[1].certificateUrl=http://localhost:${PORT}/person"));
+            val propertySources = new MutablePropertySources();
+            propertySources.addFirst(new MapPropertySource("test", Map.of("PORT", "8080")));
+
+            val loaded =
+                    ExternalIssuersWatcher.propertiesLoader(
+                                    new PropertySourcesPlaceholdersResolver(propertySources), List.of("partner"))
+                            .apply(file);
+
+            assertThat(loaded)
+                    .containsExactly(
+                            IssuerProperties.builder()
+                                    .issuerUrl("https://partner.entur.io")
+                                    .certificateUrl("http://localhost:8080/partner")
+                                    .build());
+        }
+    }
+}
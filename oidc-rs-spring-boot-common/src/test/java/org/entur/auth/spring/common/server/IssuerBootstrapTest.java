@@ -0,0 +1,173 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("IssuerBootstrap test suite")
+class IssuerBootstrapTest {
+    private static @NonNull IssuerProperties issuer(
+            final @NonNull String issuerUrl, final @NonNull String certificateUrl) {
+        var issuerProperties = new IssuerProperties();
+        issuerProperties.setIssuerUrl(issuerUrl);
+        issuerProperties.setCertificateUrl(certificateUrl);
+        return issuerProperties;
+    }
+
+    private static @NonNull IssuerBootstrap bootstrap(final int parallelism, final int deadline) {
+        var bootstrapProperties = new BootstrapProperties();
+        bootstrapProperties.setParallelism(parallelism);
+        bootstrapProperties.setDeadline(deadline);
+        return new IssuerBootstrap(bootstrapProperties);
+    }
+
+    private static void awaitComplete(final @NonNull IssuerBootstrap bootstrap) {
+        // The pending count is decremented right after the issuer is added
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!bootstrap.isComplete() && System.nanoTime() < until) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static void await(final @NonNull CountDownLatch latch) {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Nested
+    @DisplayName("IssuerBootstrap::addAll test suite")
+    class AddAllTests {
+        @Test
+        void should_add_issuers_concurrently() {
+            val bootstrap = bootstrap(2, 10);
+            val started = new CountDownLatch(2);
+            val added = new CopyOnWriteArrayList<String>();
+
+            bootstrap.addAll(
+                    List.of(issuer("https://first", "a"), issuer("https://second", "b")),
+                    issuer -> {
+                        // Completes only when both issuers are loading at the same time
+                        started.countDown();
+                        await(started);
+                        added.add(issuer.getIssuerUrl());
+                    });
+
+            assertThat(added).containsExactlyInAnyOrder("https://first", "https://second");
+            assertThat(bootstrap.isComplete()).isTrue();
+        }
+
+        @Test
+        void should_add_first_occurrence_of_issuer() {
+            val bootstrap = bootstrap(1, 10);
+            val added = new CopyOnWriteArrayList<String>();
+
+            bootstrap.addAll(
+                    List.of(issuer("https://first", "a"), issuer("https://first", "b")),
+                    issuer -> added.add(issuer.getCertificateUrl()));
+
+            assertThat(added).containsExactly("a");
+        }
+
+        @Test
+        void should_hold_readiness_for_issuers_added_after_deadline() {
+            val bootstrap = bootstrap(2, 0);
+            val release = new CountDownLatch(1);
+            val added = new CountDownLatch(2);
+
+            bootstrap.addAll(
+                    List.of(issuer("https://first", "a"), issuer("https://second", "b")),
+                    issuer -> {
+                        await(release);
+                        added.countDown();
+                    });
+            assertThat(bootstrap.isComplete()).isFalse();
+
+            release.countDown();
+            await(added);
+            awaitComplete(bootstrap);
+            assertThat(bootstrap.isComplete()).isTrue();
+        }
+
+        @Test
+        void should_retry_issuers_failing_after_deadline() {
+            var bootstrapProperties = new BootstrapProperties();
+            bootstrapProperties.setParallelism(2);
+            bootstrapProperties.setDeadline(0);
+            val bootstrap = new IssuerBootstrap(bootstrapProperties, () -> {}, Duration.ofMillis(10));
+            val release = new CountDownLatch(1);
+            val attempts = new AtomicInteger();
+
+            bootstrap.addAll(
+                    List.of(issuer("https://first", "a"), issuer("https://second", "b")),
+                    issuer -> {
+                        await(release);
+                        if (issuer.getIssuerUrl().equals("https://second") && attempts.incrementAndGet() < 3) {
+                            throw new IllegalStateException("Unavailable");
+                        }
+                    });
+            assertThat(bootstrap.isComplete()).isFalse();
+
+            release.countDown();
+            awaitComplete(bootstrap);
+            assertThat(bootstrap.isComplete()).isTrue();
+            assertThat(attempts).hasValue(3);
+        }
+
+        @Test
+        void should_fail_when_issuer_fails_before_deadline() {
+            val bootstrap = bootstrap(2, 10);
+
+            assertThatThrownBy(
+                            () ->
+                                    bootstrap.addAll(
+                                            List.of(issuer("https://first", "a"), issuer("https://second", "b")),
+                                            issuer -> {
+                                                if (issuer.getIssuerUrl().equals("https://second")) {
+                                                    throw new IllegalStateException("Unavailable");
+                                                }
+                                            }))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("Unavailable");
+            assertThat(bootstrap.isComplete()).isFalse();
+        }
+
+        @Test
+        void should_cancel_issuers_loading_when_issuer_fails_before_deadline() {
+            val bootstrap = bootstrap(2, 10);
+            val cancelled = new CountDownLatch(1);
+
+            assertThatThrownBy(
+                            () ->
+                                    bootstrap.addAll(
+                                            List.of(issuer("https://first", "a"), issuer("https://second", "b")),
+                                            issuer -> {
+                                                if (issuer.getIssuerUrl().equals("https://second")) {
+                                                    throw new IllegalStateException("Unavailable");
+                                                }
+                                                try {
+                                                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                                                } catch (InterruptedException ex) {
+                                                    cancelled.countDown();
+                                                }
+                                            }))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("Unavailable");
+            await(cancelled);
+        }
+    }
+}
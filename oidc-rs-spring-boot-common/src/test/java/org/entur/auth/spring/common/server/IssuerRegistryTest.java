@@ -0,0 +1,111 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("IssuerRegistry test suite")
+class IssuerRegistryTest {
+    @Mock private JWKSourceWithIssuer<?> firstSource;
+    @Mock private JWKSourceWithIssuer<?> secondSource;
+
+    private final @NonNull IssuerRegistry<String> registry = new IssuerRegistry<>();
+
+    @Nested
+    @DisplayName("IssuerRegistry::add test suite")
+    class AddTests {
+        @Test
+        void should_register_issuer() {
+            assertThat(registry.add("first", new IssuerRegistry.Registration<>("manager", firstSource)))
+                    .isTrue();
+
+            assertThat(registry.get("first")).isEqualTo("manager");
+            assertThat(registry.getIssuers()).containsExactly("first");
+            assertThat(registry.getJWKSources()).containsExactly(firstSource);
+        }
+
+        @Test
+        void should_keep_registered_issuer() {
+            registry.add("first", new IssuerRegistry.Registration<>("manager", firstSource));
+
+            assertThat(registry.add("first", new IssuerRegistry.Registration<>("other", secondSource)))
+                    .isFalse();
+            assertThat(registry.get("first")).isEqualTo("manager");
+        }
+
+        @Test
+        void should_not_change_previous_snapshot() {
+            val sources = registry.getJWKSources();
+
+            registry.add("first", new IssuerRegistry.Registration<>("manager", firstSource));
+
+            assertThat(sources).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("IssuerRegistry::put test suite")
+    class PutTests {
+        @Test
+        void should_replace_registration_of_issuer() {
+            val first = new IssuerRegistry.Registration<>("manager", firstSource);
+            registry.add("first", first);
+
+            assertThat(registry.put("first", new IssuerRegistry.Registration<>("other", secondSource)))
+                    .isEqualTo(first);
+            assertThat(registry.get("first")).isEqualTo("other");
+            assertThat(registry.getJWKSources()).containsExactly(secondSource);
+        }
+
+        @Test
+        void should_register_unknown_issuer() {
+            assertThat(registry.put("first", new IssuerRegistry.Registration<>("manager", firstSource)))
+                    .isNull();
+            assertThat(registry.get("first")).isEqualTo("manager");
+        }
+    }
+
+    @Nested
+    @DisplayName("IssuerRegistry::remove test suite")
+    class RemoveTests {
+        @Test
+        void should_remove_issuer() {
+            val registration = new IssuerRegistry.Registration<>("manager", firstSource);
+            registry.add("first", registration);
+
+            assertThat(registry.remove("first")).isEqualTo(registration);
+            assertThat(registry.get("first")).isNull();
+            assertThat(registry.getJWKSources()).isEmpty();
+        }
+
+        @Test
+        void should_ignore_unknown_issuer() {
+            assertThat(registry.remove("unknown")).isNull();
+        }
+    }
+
+    @Nested
+    @DisplayName("IssuerRegistry::replace test suite")
+    class ReplaceTests {
+        @Test
+        void should_replace_all_issuers_and_return_dropped_registrations() {
+            val first = new IssuerRegistry.Registration<>("first", firstSource);
+            val second = new IssuerRegistry.Registration<>("second", secondSource);
+            registry.add("first", first);
+            registry.add("second", second);
+
+            assertThat(registry.replace(Map.of("second", second))).containsExactly(first);
+            assertThat(registry.getIssuers()).containsExactly("second");
+            assertThat(registry.get("second")).isEqualTo("second");
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package org.entur.auth.spring.common.server;
+
+import static java.time.Duration.ofSeconds;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("JwksReadiness test suite")
+class JwksReadinessTest {
+    private final @NonNull AtomicReference<Instant> instant = new AtomicReference<>(Instant.now());
+
+    private final @NonNull Clock clock =
+            new Clock() {
+                @Override
+                public ZoneId getZone() {
+                    return null;
+                }
+
+                @Override
+                public Clock withZone(ZoneId zone) {
+                    return null;
+                }
+
+                @Override
+                public Instant instant() {
+                    return instant.get();
+                }
+            };
+
+    @Mock private JWKSetSource<SecurityContext> jwkSetSource;
+
+    @Nested
+    @DisplayName("JwksReadiness::isReady test suite")
+    class IsReadyTests {
+        @Test
+        void should_not_be_ready_before_first_retrieval() {
+            assertThat(new JwksReadiness(clock, ofSeconds(60), false).isReady()).isFalse();
+        }
+
+        @Test
+        void should_be_ready_before_first_retrieval_when_lazy_loaded() {
+            val readiness = new JwksReadiness(clock, ofSeconds(60), true);
+            assertThat(readiness.isReady()).isTrue();
+
+            readiness.failure();
+            assertThat(readiness.isReady()).isFalse();
+        }
+
+        @Test
+        void should_be_ready_when_keys_are_retrieved() {
+            val readiness = new JwksReadiness(clock, ofSeconds(60), false);
+
+            readiness.success(2);
+
+            assertThat(readiness.isReady()).isTrue();
+        }
+
+        @Test
+        void should_not_be_ready_without_keys() {
+            val readiness = new JwksReadiness(clock, ofSeconds(60), false);
+
+            readiness.success(0);
+
+            assertThat(readiness.isReady()).isFalse();
+        }
+
+        @Test
+        void should_stay_ready_during_outage_within_tolerance() {
+            val readiness = new JwksReadiness(clock, ofSeconds(60), false);
+            readiness.success(1);
+
+            instant.updateAndGet(t -> t.plusSeconds(59));
+            readiness.failure();
+            assertThat(readiness.isReady()).isTrue();
+
+            instant.updateAndGet(t -> t.plusSeconds(1));
+            assertThat(readiness.isReady()).isFalse();
+
+            readiness.success(1);
+            assertThat(readiness.isReady()).isTrue();
+        }
+
+        @Test
+        void should_notify_when_readiness_changes() {
+            val readiness = new JwksReadiness(clock, ofSeconds(0), false);
+            val changes = new AtomicInteger();
+            readiness.setChangeListener(changes::incrementAndGet);
+
+            readiness.success(1);
+            readiness.success(1);
+            readiness.failure();
+
+            assertThat(changes).hasValue(2);
+        }
+    }
+
+    @Nested
+    @DisplayName("JwksReadiness::snapshot test suite")
+    class SnapshotTests {
+        @Test
+        void should_not_be_retrieved_before_first_retrieval() {
+            val snapshot = new JwksReadiness(clock, ofSeconds(60), true).snapshot();
+
+            assertThat(snapshot.retrieved()).isFalse();
+            assertThat(snapshot.ready()).isTrue();
+            assertThat(snapshot.age()).isNull();
+            assertThat(snapshot.latency()).isNull();
+        }
+
+        @Test
+        void should_report_keys_age_and_latency_of_retrievals() {
+            val readiness = new JwksReadiness(clock, ofSeconds(60), false);
+            readiness.success(2, Duration.ofMillis(120));
+
+            instant.updateAndGet(t -> t.plusSeconds(30));
+            readiness.failure(Duration.ofSeconds(5));
+
+            val snapshot = readiness.snapshot();
+            assertThat(snapshot.retrieved()).isTrue();
+            assertThat(snapshot.ready()).isTrue();
+            assertThat(snapshot.keys()).isEqualTo(2);
+            assertThat(snapshot.age()).isEqualTo(ofSeconds(30));
+            assertThat(snapshot.latency()).isEqualTo(ofSeconds(5));
+        }
+    }
+
+    @Nested
+    @DisplayName("ReadinessTrackingJWKSetSource test suite")
+    class ReadinessTrackingJWKSetSourceTests {
+        @Test
+        void should_record_retrieved_keys() throws KeySourceException {
+            val readiness = new JwksReadiness(clock, ofSeconds(60), false);
+            val jwkSet =
+                    new JWKSet(
+                            new OctetSequenceKey.Builder("key".getBytes(StandardCharsets.UTF_8))
+                                    .keyID("key")
+                                    .build());
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any())).thenReturn(jwkSet);
+
+            assertThat(
+                            new ReadinessTrackingJWKSetSource<>(jwkSetSource, readiness).getJWKSet(null, 0, null))
+                    .isSameAs(jwkSet);
+            assertThat(readiness.isReady()).isTrue();
+        }
+
+        @Test
+        void should_record_failed_retrieval() throws KeySourceException {
+            val readiness = new JwksReadiness(clock, ofSeconds(0), false);
+            readiness.success(1);
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any()))
+                    .thenThrow(new KeySourceException("Unavailable"));
+
+            assertThatThrownBy(
+                            () ->
+                                    new ReadinessTrackingJWKSetSource<>(jwkSetSource, readiness)
+                                            .getJWKSet(null, 0, null))
+                    .isInstanceOf(KeySourceException.class);
+            assertThat(readiness.isReady()).isFalse();
+        }
+    }
+}
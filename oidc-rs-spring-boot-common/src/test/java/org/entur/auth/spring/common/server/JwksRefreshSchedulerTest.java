@@ -0,0 +1,103 @@
+package org.entur.auth.spring.common.server;
+
+import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofSeconds;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("JwksRefreshScheduler test suite")
+class JwksRefreshSchedulerTest {
+    @Mock private JWKSetSource<SecurityContext> jwkSetSource;
+
+    @Nested
+    @DisplayName("JwksRefreshScheduler::schedule test suite")
+    class ScheduleTests {
+        @Test
+        void should_force_refresh_until_closed() throws KeySourceException, IOException {
+            val scheduler =
+                    new JwksRefreshScheduler(Executors.newSingleThreadScheduledExecutor(), ofSeconds(0));
+            val source = scheduler.schedule(jwkSetSource, ofMillis(20));
+
+            val refreshEvaluator = ArgumentCaptor.forClass(JWKSetCacheRefreshEvaluator.class);
+            verify(jwkSetSource, timeout(5000).atLeast(2))
+                    .getJWKSet(refreshEvaluator.capture(), anyLong(), any());
+            assertThat(refreshEvaluator.getValue().requiresRefresh(null)).isTrue();
+
+            source.close();
+            verify(jwkSetSource).close();
+            scheduler.close();
+        }
+
+        @Test
+        void should_keep_refreshing_after_failure() throws KeySourceException {
+            val scheduler =
+                    new JwksRefreshScheduler(Executors.newSingleThreadScheduledExecutor(), ofSeconds(0));
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any()))
+                    .thenThrow(new KeySourceException("Unavailable"));
+
+            scheduler.schedule(jwkSetSource, ofMillis(20));
+
+            verify(jwkSetSource, timeout(5000).atLeast(2)).getJWKSet(any(), anyLong(), any());
+            scheduler.close();
+        }
+
+        @Test
+        void should_not_refresh_when_closed_before_interval() throws IOException {
+            val scheduler =
+                    new JwksRefreshScheduler(Executors.newSingleThreadScheduledExecutor(), ofSeconds(0));
+
+            scheduler.schedule(jwkSetSource, ofSeconds(60)).close();
+
+            verify(jwkSetSource).close();
+            verifyNoMoreInteractions(jwkSetSource);
+            scheduler.close();
+        }
+    }
+
+    @Nested
+    @DisplayName("JwksRefreshScheduler::delay test suite")
+    class DelayTests {
+        @Test
+        void should_bring_refresh_forward_by_at_most_jitter() {
+            val scheduler =
+                    new JwksRefreshScheduler(Executors.newSingleThreadScheduledExecutor(), ofSeconds(30));
+
+            for (int i = 0; i < 100; i++) {
+                assertThat(scheduler.delay(ofSeconds(270))).isBetween(ofSeconds(240), ofSeconds(270));
+            }
+            scheduler.close();
+        }
+
+        @Test
+        void should_bound_jitter_by_half_the_interval() {
+            val scheduler =
+                    new JwksRefreshScheduler(Executors.newSingleThreadScheduledExecutor(), ofSeconds(30));
+
+            for (int i = 0; i < 100; i++) {
+                assertThat(scheduler.delay(ofSeconds(10))).isBetween(ofSeconds(5), ofSeconds(10));
+            }
+            scheduler.close();
+        }
+    }
+}
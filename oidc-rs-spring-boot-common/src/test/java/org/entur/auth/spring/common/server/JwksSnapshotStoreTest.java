@@ -0,0 +1,223 @@
+package org.entur.auth.spring.common.server;
+
+import static java.time.Duration.ofSeconds;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("JwksSnapshotStore test suite")
+class JwksSnapshotStoreTest {
+    private static final String ISSUER = "https://partner.dev.entur.org";
+
+    private final @NonNull AtomicReference<Instant> instant = new AtomicReference<>(Instant.now());
+
+    private final @NonNull Clock clock =
+            new Clock() {
+                @Override
+                public ZoneId getZone() {
+                    return null;
+                }
+
+                @Override
+                public Clock withZone(ZoneId zone) {
+                    return null;
+                }
+
+                @Override
+                public Instant instant() {
+                    return instant.get();
+                }
+            };
+
+    private final @NonNull List<JwksSnapshotStore> stores = new ArrayList<>();
+
+    @TempDir private Path directory;
+
+    @Mock private JWKSetSource<SecurityContext> jwkSetSource;
+
+    @Mock private JWKSetSource<SecurityContext> cache;
+
+    private static @NonNull JWKSet jwkSet(final @NonNull String keyId) throws JOSEException {
+        return new JWKSet(new RSAKeyGenerator(2048).keyID(keyId).generate());
+    }
+
+    private @NonNull JwksSnapshotStore store() {
+        val store = new JwksSnapshotStore(directory.resolve("jwks"), clock);
+        stores.add(store);
+        return store;
+    }
+
+    @AfterEach
+    void closeStores() {
+        // Finish writing before the temporary directory is deleted
+        stores.forEach(JwksSnapshotStore::close);
+    }
+
+    @Nested
+    @DisplayName("JwksSnapshotStore::load test suite")
+    class LoadTests {
+        @Test
+        void should_load_saved_public_keys() throws JOSEException {
+            val store = store();
+            val retrievedAt = instant.get().truncatedTo(ChronoUnit.MILLIS);
+            store.save(ISSUER, jwkSet("first"));
+
+            val snapshot = store.load(ISSUER, ofSeconds(60));
+
+            assertThat(snapshot).isNotNull();
+            assertThat(snapshot.retrievedAt()).isEqualTo(retrievedAt);
+            assertThat(snapshot.jwkSet().getKeyByKeyId("first")).isInstanceOf(RSAKey.class);
+            assertThat(snapshot.jwkSet().getKeyByKeyId("first").isPrivate()).isFalse();
+        }
+
+        @Test
+        void should_replace_snapshot_of_issuer() throws JOSEException {
+            val store = store();
+            store.save(ISSUER, jwkSet("first"));
+            store.save(ISSUER, jwkSet("second"));
+            store.save("https://other", jwkSet("other"));
+
+            assertThat(store.load(ISSUER, ofSeconds(60)).jwkSet().getKeyByKeyId("second")).isNotNull();
+            assertThat(store.load(ISSUER, ofSeconds(60)).jwkSet().getKeys()).hasSize(1);
+        }
+
+        @Test
+        void should_ignore_stale_snapshot() throws JOSEException {
+            val store = store();
+            store.save(ISSUER, jwkSet("first"));
+
+            instant.updateAndGet(t -> t.plusSeconds(61));
+
+            assertThat(store.load(ISSUER, ofSeconds(60))).isNull();
+        }
+
+        @Test
+        void should_ignore_missing_or_corrupt_snapshot() throws JOSEException, IOException {
+            val store = store();
+            assertThat(store.load(ISSUER, ofSeconds(60))).isNull();
+
+            store.save(ISSUER, jwkSet("first"));
+            try (var files = Files.list(directory.resolve("jwks"))) {
+                Files.writeString(files.findFirst().orElseThrow(), "{\"keys\":");
+            }
+
+            assertThat(store.load(ISSUER, ofSeconds(60))).isNull();
+        }
+    }
+
+    @Nested
+    @DisplayName("SnapshotJWKSetSource test suite")
+    class SnapshotJWKSetSourceTests {
+        @Test
+        void should_answer_first_retrieval_from_snapshot() throws JOSEException, KeySourceException {
+            val store = store();
+            store.save(ISSUER, jwkSet("first"));
+
+            val source = new SnapshotJWKSetSource<>(jwkSetSource, store, ISSUER, ofSeconds(60));
+
+            assertThat(source.hasSnapshot()).isTrue();
+            assertThat(source.getJWKSet(JWKSetCacheRefreshEvaluator.noRefresh(), 0, null).getKeys())
+                    .extracting("keyID")
+                    .containsExactly("first");
+            assertThat(source.hasSnapshot()).isFalse();
+            verifyNoInteractions(jwkSetSource);
+        }
+
+        @Test
+        void should_save_retrieved_jwk_set() throws JOSEException, KeySourceException {
+            val store = store();
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any())).thenReturn(jwkSet("second"));
+
+            val source = new SnapshotJWKSetSource<>(jwkSetSource, store, ISSUER, ofSeconds(60));
+
+            assertThat(source.hasSnapshot()).isFalse();
+            source.getJWKSet(JWKSetCacheRefreshEvaluator.noRefresh(), 0, null);
+            store.close();
+            assertThat(store.load(ISSUER, ofSeconds(60)).jwkSet().getKeyByKeyId("second")).isNotNull();
+        }
+
+        @Test
+        void should_not_save_unchanged_jwk_set() throws JOSEException, KeySourceException {
+            val store = store();
+            val jwkSet = jwkSet("first").toPublicJWKSet();
+            store.save(ISSUER, jwkSet);
+            val retrievedAt = store.load(ISSUER, ofSeconds(60)).retrievedAt();
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any())).thenReturn(jwkSet);
+
+            val source = new SnapshotJWKSetSource<>(jwkSetSource, store, ISSUER, ofSeconds(60));
+            source.getJWKSet(JWKSetCacheRefreshEvaluator.noRefresh(), 0, null);
+
+            instant.updateAndGet(t -> t.plusSeconds(10));
+            source.getJWKSet(JWKSetCacheRefreshEvaluator.forceRefresh(), 0, null);
+            store.close();
+
+            assertThat(store.load(ISSUER, ofSeconds(60)).retrievedAt()).isEqualTo(retrievedAt);
+        }
+
+        @Test
+        void should_not_answer_snapshot_older_than_max_age() throws JOSEException, KeySourceException {
+            val store = store();
+            store.save(ISSUER, jwkSet("first"));
+            when(jwkSetSource.getJWKSet(any(), anyLong(), any())).thenReturn(jwkSet("second"));
+
+            val source = new SnapshotJWKSetSource<>(jwkSetSource, store, ISSUER, ofSeconds(60));
+            val currentTime = instant.get().plusSeconds(61).toEpochMilli();
+
+            assertThat(
+                            source
+                                    .getJWKSet(JWKSetCacheRefreshEvaluator.noRefresh(), currentTime, null)
+                                    .getKeys())
+                    .extracting("keyID")
+                    .containsExactly("second");
+        }
+
+        @Test
+        void should_refresh_cache_after_answering_snapshot() throws JOSEException, KeySourceException {
+            val store = store();
+            store.save(ISSUER, jwkSet("first"));
+
+            val source = new SnapshotJWKSetSource<>(jwkSetSource, store, ISSUER, ofSeconds(60));
+            source.refreshAfterSnapshot(cache, Duration.ZERO);
+            source.getJWKSet(JWKSetCacheRefreshEvaluator.noRefresh(), 0, null);
+
+            verify(cache, timeout(1000))
+                    .getJWKSet(eq(JWKSetCacheRefreshEvaluator.forceRefresh()), anyLong(), any());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.entur.auth.spring.common.server;
+
+import static java.time.Duration.ofSeconds;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.nimbusds.jose.KeySourceException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.server.resource.InvalidBearerTokenException;
+
+@DisplayName("RejectedTokenCache test suite")
+class RejectedTokenCacheTest {
+    private final @NonNull AtomicReference<Instant> instant = new AtomicReference<>(Instant.now());
+
+    private final @NonNull Clock clock =
+            new Clock() {
+                @Override
+                public ZoneId getZone() {
+                    return null;
+                }
+
+                @Override
+                public Clock withZone(ZoneId zone) {
+                    return null;
+                }
+
+                @Override
+                public Instant instant() {
+                    return instant.get();
+                }
+            };
+
+    private final @NonNull RejectedTokenCache cache =
+            new RejectedTokenCache(clock, 10, ofSeconds(10));
+
+    @Nested
+    @DisplayName("RejectedTokenCache::get test suite")
+    class GetTests {
+        @Test
+        void should_return_null_for_unknown_token() {
+            assertThat(cache.get("token")).isNull();
+        }
+
+        @Test
+        void should_return_rejection_with_cached_reason() {
+            cache.put("token", new TokenRejectedException(TokenRejection.EXPIRED));
+
+            val rejection = cache.get("token");
+
+            assertThat(rejection.getRejection()).isEqualTo(TokenRejection.EXPIRED);
+            assertThat(rejection.getError().getDescription()).isEqualTo("Jwt expired");
+            assertThat(cache.get("other")).isNull();
+        }
+
+        @Test
+        void should_classify_other_invalid_tokens() {
+            cache.put("token", new InvalidBearerTokenException("Invalid"));
+
+            assertThat(cache.get("token").getRejection()).isEqualTo(TokenRejection.INVALID);
+        }
+
+        @Test
+        void should_expire_after_time_to_live() {
+            cache.put("token", new InvalidBearerTokenException("Jwt expired"));
+
+            instant.updateAndGet(t -> t.plusSeconds(9));
+            assertThat(cache.get("token")).isNotNull();
+
+            instant.updateAndGet(t -> t.plusSeconds(1));
+            assertThat(cache.get("token")).isNull();
+        }
+    }
+
+    @Nested
+    @DisplayName("RejectedTokenCache::put test suite")
+    class PutTests {
+        @Test
+        void should_ignore_other_authentication_failures() {
+            cache.put("token", new AuthenticationServiceException("Unavailable"));
+
+            assertThat(cache.get("token")).isNull();
+        }
+
+        @Test
+        void should_ignore_unavailable_jwks() {
+            cache.put(
+                    "token",
+                    new InvalidBearerTokenException("Unavailable", new KeySourceException("Unavailable")));
+
+            assertThat(cache.get("token")).isNull();
+        }
+
+        @Test
+        void should_ignore_tokens_without_matching_key() {
+            cache.put(
+                    "token",
+                    TokenRejectedException.of(
+                            new BadJwtException(
+                                    "Failed to validate the token", new KeySourceException("No matching key"))));
+
+            assertThat(cache.get("token")).isNull();
+        }
+
+        @Test
+        void should_ignore_unknown_issuers() {
+            cache.put("token", new TokenRejectedException(TokenRejection.UNKNOWN_ISSUER));
+
+            assertThat(cache.get("token")).isNull();
+        }
+    }
+
+    @Nested
+    @DisplayName("RejectedTokenCache::invalidateAll test suite")
+    class InvalidateAllTests {
+        @Test
+        void should_forget_rejected_tokens() {
+            cache.put("token", new TokenRejectedException(TokenRejection.EXPIRED));
+
+            cache.invalidateAll();
+
+            assertThat(cache.get("token")).isNull();
+        }
+    }
+}
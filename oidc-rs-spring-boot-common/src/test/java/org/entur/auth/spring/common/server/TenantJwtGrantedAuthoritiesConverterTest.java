@@ -0,0 +1,92 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collection;
+import java.util.List;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+@DisplayName("TenantJwtGrantedAuthoritiesConverter test suite")
+class TenantJwtGrantedAuthoritiesConverterTest {
+    private static final String ISSUER = "https://partner.dev.entur.org/";
+
+    private final @NonNull TenantJwtGrantedAuthoritiesConverter converter =
+            new TenantJwtGrantedAuthoritiesConverter(new DefaultAuthProviders());
+
+    private static @NonNull Jwt jwt(final String claimName, final Object scope) {
+        var builder = Jwt.withTokenValue("token").header("alg", "RS256").issuer(ISSUER);
+        if (claimName != null) {
+            builder.claim(claimName, scope);
+        }
+        return builder.build();
+    }
+
+    private static @NonNull List<String> roles(
+            final @NonNull Collection<GrantedAuthority> authorities) {
+        return authorities.stream().map(GrantedAuthority::getAuthority).toList();
+    }
+
+    @Nested
+    @DisplayName("TenantJwtGrantedAuthoritiesConverter::convert test suite")
+    class ConvertTests {
+        @Test
+        void should_grant_scopes_and_tenant() {
+            assertThat(roles(converter.convert(jwt("scope", "read write"))))
+                    .containsExactly("SCOPE_read", "SCOPE_write", "partner");
+        }
+
+        @Test
+        void should_grant_same_authorities_for_added_issuer() {
+            converter.addIssuer(ISSUER);
+
+            assertThat(roles(converter.convert(jwt("scope", "read write"))))
+                    .containsExactly("SCOPE_read", "SCOPE_write", "partner");
+            assertThat(roles(converter.convert(jwt("scp", List.of("read", "write")))))
+                    .containsExactly("SCOPE_read", "SCOPE_write", "partner");
+            assertThat(roles(converter.convert(jwt(null, null)))).containsExactly("partner");
+        }
+
+        @Test
+        void should_reuse_authorities_for_same_scope() {
+            converter.addIssuer(ISSUER);
+
+            val first = converter.convert(jwt("scope", "read write"));
+            val second = converter.convert(jwt("scope", String.join(" ", "read", "write")));
+
+            assertThat(second).isSameAs(first);
+            assertThat(converter.convert(jwt("scope", "write")).iterator().next())
+                    .isSameAs(List.copyOf(first).get(1));
+        }
+
+        @Test
+        void should_return_unmodifiable_authorities() {
+            assertThat(converter.convert(jwt("scope", "read"))).isUnmodifiable();
+
+            converter.addIssuer(ISSUER);
+            assertThat(converter.convert(jwt("scope", "read"))).isUnmodifiable();
+            assertThat(converter.convert(jwt("scp", List.of("read")))).isUnmodifiable();
+        }
+    }
+
+    @Nested
+    @DisplayName("TenantJwtGrantedAuthoritiesConverter::removeIssuer test suite")
+    class RemoveIssuerTests {
+        @Test
+        void should_stop_memoizing_authorities_of_removed_issuer() {
+            converter.addIssuer(ISSUER);
+            val first = converter.convert(jwt("scope", "read write"));
+
+            converter.removeIssuer(ISSUER);
+            val second = converter.convert(jwt("scope", "read write"));
+
+            assertThat(second).isNotSameAs(first);
+            assertThat(roles(second)).containsExactly("SCOPE_read", "SCOPE_write", "partner");
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package org.entur.auth.spring.common.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import com.nimbusds.jose.proc.BadJWSException;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.PlainJWT;
+import com.nimbusds.jwt.proc.BadJWTException;
+import com.nimbusds.jwt.proc.ExpiredJWTException;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtIssuerValidator;
+import org.springframework.security.oauth2.jwt.JwtTimestampValidator;
+import org.springframework.security.oauth2.jwt.JwtValidationException;
+
+@DisplayName("TokenRejection test suite")
+class TokenRejectionTest {
+    static @NonNull Jwt jwt(final Instant expiresAt, final Instant notBefore) {
+        val builder =
+                Jwt.withTokenValue("token")
+                        .header("alg", "RS256")
+                        .issuer("https://other.entur.org")
+                        .audience(List.of("https://other.entur.io"))
+                        .issuedAt(expiresAt.minusSeconds(7200))
+                        .expiresAt(expiresAt);
+        if (notBefore != null) {
+            builder.notBefore(notBefore);
+        }
+        return builder.build();
+    }
+
+    @Nested
+    @DisplayName("TokenRejection::of test suite")
+    class OfTests {
+        @Test
+        void should_classify_nimbus_exceptions() {
+            assertThat(
+                            TokenRejection.of(new BadJwtException("", new BadJWSException("Invalid signature"))))
+                    .isEqualTo(TokenRejection.BAD_SIGNATURE);
+            assertThat(TokenRejection.of(new BadJwtException("", new ExpiredJWTException("Expired"))))
+                    .isEqualTo(TokenRejection.EXPIRED);
+            assertThat(TokenRejection.of(new ParseException("Invalid", 0)))
+                    .isEqualTo(TokenRejection.MALFORMED);
+            assertThat(TokenRejection.of(new BadJwtException("Invalid")))
+                    .isEqualTo(TokenRejection.INVALID);
+        }
+
+        @Test
+        void should_classify_nimbus_claims_verifier() {
+            val verifier = new ClassifyingJWTClaimsVerifier<>();
+            val now = Instant.now();
+
+            val expired =
+                    catchThrowable(
+                            () ->
+                                    verifier.verify(
+                                            new JWTClaimsSet.Builder()
+                                                    .expirationTime(Date.from(now.minusSeconds(3600)))
+                                                    .build(),
+                                            null));
+            val notYetValid =
+                    catchThrowable(
+                            () ->
+                                    verifier.verify(
+                                            new JWTClaimsSet.Builder()
+                                                    .notBeforeTime(Date.from(now.plusSeconds(3600)))
+                                                    .build(),
+                                            null));
+
+            assertThat(TokenRejection.of(expired)).isEqualTo(TokenRejection.EXPIRED);
+            assertThat(TokenRejection.of(notYetValid)).isEqualTo(TokenRejection.NOT_YET_VALID);
+            assertThat(
+                            TokenRejection.of(
+                                    new BadJwtException("", new BadJWTException("JWT before use time"))))
+                    .isEqualTo(TokenRejection.INVALID);
+        }
+
+        @Test
+        void should_classify_typed_validation_errors() {
+            assertThat(
+                            TokenRejection.of(
+                                    new JwtValidationException(
+                                            "Invalid",
+                                            new AudienceValidator(Set.of("https://api.entur.io"))
+                                                    .validate(jwt(Instant.now().plusSeconds(60), null))
+                                                    .getErrors())))
+                    .isEqualTo(TokenRejection.BAD_AUDIENCE);
+            assertThat(
+                            TokenRejection.of(
+                                    List.of(
+                                            new OAuth2Error("invalid_token", null, null),
+                                            new TokenRejectionError(
+                                                    TokenRejection.EXPIRED, "invalid_token", "Expired", null))))
+                    .isEqualTo(TokenRejection.EXPIRED);
+        }
+
+        @Test
+        void should_classify_spring_validators_as_last_resort() {
+            val now = Instant.now();
+
+            // Pins the descriptions of the Spring Security validators, matched when not wrapped
+            assertThat(
+                            TokenRejection.of(
+                                    new JwtTimestampValidator()
+                                            .validate(jwt(now.minusSeconds(3600), null))
+                                            .getErrors()))
+                    .isEqualTo(TokenRejection.EXPIRED);
+            assertThat(
+                            TokenRejection.of(
+                                    new JwtTimestampValidator()
+                                            .validate(jwt(now.plusSeconds(7200), now.plusSeconds(3600)))
+                                            .getErrors()))
+                    .isEqualTo(TokenRejection.NOT_YET_VALID);
+            assertThat(
+                            TokenRejection.of(
+                                    new JwtIssuerValidator("https://partner.dev.entur.org")
+                                            .validate(jwt(now.plusSeconds(60), null))
+                                            .getErrors()))
+                    .isEqualTo(TokenRejection.BAD_ISSUER);
+        }
+
+        @Test
+        void should_classify_pre_check_rejections() {
+            val preCheck =
+                    new ClaimsPreCheck(
+                            Clock.systemUTC(), Duration.ZERO, "https://partner.dev.entur.org", List.of());
+            val rejected =
+                    catchThrowable(
+                            () ->
+                                    preCheck.verify(
+                                            new PlainJWT(
+                                                    new JWTClaimsSet.Builder().issuer("https://other.entur.org").build())));
+
+            assertThat(rejected.getStackTrace()).isEmpty();
+            assertThat(TokenRejection.of(rejected)).isEqualTo(TokenRejection.BAD_ISSUER);
+        }
+    }
+
+    @Nested
+    @DisplayName("TokenRejectedException test suite")
+    class TokenRejectedExceptionTests {
+        @Test
+        void should_carry_rejection_without_stack_trace() {
+            val cause = new BadJwtException("", new BadJWSException("Invalid signature"));
+            val exception = TokenRejectedException.of(cause);
+
+            assertThat(exception.getRejection()).isEqualTo(TokenRejection.BAD_SIGNATURE);
+            assertThat(exception.getError().getDescription()).isEqualTo("Invalid signature");
+            assertThat(exception.getCause()).isSameAs(cause);
+            assertThat(exception.getStackTrace()).isEmpty();
+        }
+
+        @Test
+        void should_accept_missing_cause() {
+            val exception = new TokenRejectedException(TokenRejection.UNKNOWN_ISSUER, null);
+
+            assertThat(exception.getRejection()).isEqualTo(TokenRejection.UNKNOWN_ISSUER);
+            assertThat(exception.getCause()).isNull();
+        }
+
+        @Test
+        void should_precompute_www_authenticate_header() {
+            assertThat(TokenRejection.EXPIRED.getWwwAuthenticate())
+                    .isEqualTo(
+                            "Bearer error=\"invalid_token\", error_description=\"Jwt expired\", "
+                                    + "error_uri=\"https://tools.ietf.org/html/rfc6750#section-3.1\"");
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.entur.auth.spring.common.server;
+
+import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofSeconds;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKSet;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("UnknownKeyIdRefresh test suite")
+class UnknownKeyIdRefreshTest {
+    private final @NonNull AtomicReference<Instant> instant = new AtomicReference<>(Instant.now());
+
+    private final @NonNull Clock clock =
+            new Clock() {
+                @Override
+                public ZoneId getZone() {
+                    return null;
+                }
+
+                @Override
+                public Clock withZone(ZoneId zone) {
+                    return null;
+                }
+
+                @Override
+                public Instant instant() {
+                    return instant.get();
+                }
+            };
+
+    private final @NonNull JWKSet current = new JWKSet();
+    private final @NonNull JWKSet refreshed = new JWKSet();
+    private final @NonNull AtomicInteger retrievals = new AtomicInteger();
+
+    private @NonNull UnknownKeyIdRefresh unknownKeyIdRefresh(final long maxWait) {
+        return new UnknownKeyIdRefresh(ofSeconds(60), ofMillis(maxWait), clock, null);
+    }
+
+    @Nested
+    @DisplayName("UnknownKeyIdRefresh::refresh test suite")
+    class RefreshTests {
+        @Test
+        void should_share_refresh_in_flight() throws Exception {
+            val refresh = unknownKeyIdRefresh(5000);
+            val started = new CountDownLatch(1);
+            val release = new CountDownLatch(1);
+            val leader =
+                    CompletableFuture.supplyAsync(
+                            () -> {
+                                try {
+                                    return refresh.refresh(
+                                            current,
+                                            () -> {
+                                                retrievals.incrementAndGet();
+                                                started.countDown();
+                                                await(release);
+                                                return refreshed;
+                                            });
+                                } catch (KeySourceException ex) {
+                                    throw new IllegalStateException(ex);
+                                }
+                            });
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            val follower = new AtomicReference<JWKSet>();
+            val followerThread =
+                    new Thread(
+                            () -> {
+                                try {
+                                    follower.set(
+                                            refresh.refresh(
+                                                    current,
+                                                    () -> {
+                                                        retrievals.incrementAndGet();
+                                                        return new JWKSet();
+                                                    }));
+                                } catch (KeySourceException ex) {
+                                    throw new IllegalStateException(ex);
+                                }
+                            });
+            followerThread.start();
+            // Released once the follower waits for the refresh in flight
+            while (followerThread.getState() != Thread.State.TIMED_WAITING) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+            followerThread.join(5000);
+
+            assertThat(leader.get(5, TimeUnit.SECONDS)).isSameAs(refreshed);
+            assertThat(follower.get()).isSameAs(refreshed);
+            assertThat(retrievals).hasValue(1);
+        }
+
+        @Test
+        void should_stop_waiting_after_max_wait() throws Exception {
+            val refresh = unknownKeyIdRefresh(50);
+            val started = new CountDownLatch(1);
+            val release = new CountDownLatch(1);
+            CompletableFuture.runAsync(
+                    () -> {
+                        try {
+                            refresh.refresh(
+                                    current,
+                                    () -> {
+                                        started.countDown();
+                                        await(release);
+                                        return refreshed;
+                                    });
+                        } catch (KeySourceException ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    });
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThat(refresh.refresh(current, () -> refreshed)).isSameAs(current);
+            release.countDown();
+        }
+
+        @Test
+        void should_rate_limit_refreshes() throws KeySourceException {
+            val refresh = unknownKeyIdRefresh(5000);
+            UnknownKeyIdRefresh.Retrieval retrieval =
+                    () -> {
+                        retrievals.incrementAndGet();
+                        return refreshed;
+                    };
+
+            assertThat(refresh.refresh(current, retrieval)).isSameAs(refreshed);
+            instant.updateAndGet(t -> t.plusSeconds(59));
+            assertThat(refresh.refresh(current, retrieval)).isSameAs(current);
+            assertThat(retrievals).hasValue(1);
+
+            instant.updateAndGet(t -> t.plusSeconds(1));
+            assertThat(refresh.refresh(current, retrieval)).isSameAs(refreshed);
+            assertThat(retrievals).hasValue(2);
+        }
+
+        @Test
+        void should_report_failed_refresh() {
+            val refresh = unknownKeyIdRefresh(5000);
+
+            assertThatThrownBy(
+                            () ->
+                                    refresh.refresh(
+                                            current,
+                                            () -> {
+                                                throw new KeySourceException("Unavailable");
+                                            }))
+                    .isInstanceOf(KeySourceException.class)
+                    .hasMessage("Unavailable");
+        }
+    }
+
+    @Nested
+    @DisplayName("UnknownKeyIdRefresh::refreshAsync test suite")
+    class RefreshAsyncTests {
+        @Test
+        void should_share_refresh_in_flight() throws Exception {
+            val refresh = unknownKeyIdRefresh(5000);
+            val retrieval = new CompletableFuture<JWKSet>();
+
+            val first =
+                    refresh.refreshAsync(
+                            () -> {
+                                retrievals.incrementAndGet();
+                                return retrieval;
+                            });
+            val second =
+                    refresh.refreshAsync(
+                            () -> {
+                                retrievals.incrementAndGet();
+                                return new CompletableFuture<>();
+                            });
+            retrieval.complete(refreshed);
+
+            assertThat(second).isSameAs(first);
+            assertThat(first.get(5, TimeUnit.SECONDS)).isSameAs(refreshed);
+            assertThat(retrievals).hasValue(1);
+        }
+
+        @Test
+        void should_not_refresh_when_rate_limited() {
+            val refresh = unknownKeyIdRefresh(5000);
+
+            refresh.refreshAsync(() -> CompletableFuture.completedFuture(refreshed));
+
+            assertThat(refresh.refreshAsync(() -> CompletableFuture.completedFuture(refreshed))).isNull();
+        }
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
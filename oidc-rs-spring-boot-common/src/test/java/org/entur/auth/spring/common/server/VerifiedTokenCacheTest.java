@@ -0,0 +1,129 @@
+package org.entur.auth.spring.common.server;
+
+import static java.time.Duration.ofSeconds;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+import lombok.val;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+@DisplayName("VerifiedTokenCache test suite")
+class VerifiedTokenCacheTest {
+    private final @NonNull AtomicReference<Instant> instant = new AtomicReference<>(Instant.now());
+
+    private final @NonNull Clock clock =
+            new Clock() {
+                @Override
+                public ZoneId getZone() {
+                    return null;
+                }
+
+                @Override
+                public Clock withZone(ZoneId zone) {
+                    return null;
+                }
+
+                @Override
+                public Instant instant() {
+                    return instant.get();
+                }
+            };
+
+    private final @NonNull VerifiedTokenCache cache =
+            new VerifiedTokenCache(clock, 10, ofSeconds(60));
+
+    private @NonNull JwtAuthenticationToken authentication(final Instant expiresAt) {
+        val jwt =
+                Jwt.withTokenValue("token")
+                        .header("alg", "RS256")
+                        .subject("subject")
+                        .expiresAt(expiresAt)
+                        .build();
+        val authentication =
+                new JwtAuthenticationToken(jwt, List.of(new SimpleGrantedAuthority("partner")));
+        authentication.setDetails("first");
+        return authentication;
+    }
+
+    @Nested
+    @DisplayName("VerifiedTokenCache::get test suite")
+    class GetTests {
+        @Test
+        void should_return_null_for_unknown_token() {
+            assertThat(cache.get("token", null)).isNull();
+        }
+
+        @Test
+        void should_return_copy_with_current_details() {
+            val authentication = authentication(instant.get().plusSeconds(30));
+            cache.put("token", authentication);
+
+            val cached = cache.get("token", "second");
+
+            assertThat(cached).isNotSameAs(authentication);
+            assertThat(cached.getToken()).isEqualTo(authentication.getToken());
+            assertThat(cached.getAuthorities()).isEqualTo(authentication.getAuthorities());
+            assertThat(cached.getName()).isEqualTo("subject");
+            assertThat(cached.getDetails()).isEqualTo("second");
+            assertThat(cached.isAuthenticated()).isTrue();
+        }
+
+        @Test
+        void should_expire_at_token_expiry() {
+            cache.put("token", authentication(instant.get().plusSeconds(30)));
+
+            instant.updateAndGet(t -> t.plusSeconds(29));
+            assertThat(cache.get("token", null)).isNotNull();
+
+            instant.updateAndGet(t -> t.plusSeconds(2));
+            assertThat(cache.get("token", null)).isNull();
+        }
+
+        @Test
+        void should_expire_after_time_to_live_when_token_lives_longer() {
+            cache.put("token", authentication(instant.get().plusSeconds(3600)));
+
+            instant.updateAndGet(t -> t.plusSeconds(59));
+            assertThat(cache.get("token", null)).isNotNull();
+
+            instant.updateAndGet(t -> t.plusSeconds(2));
+            assertThat(cache.get("token", null)).isNull();
+        }
+    }
+
+    @Nested
+    @DisplayName("VerifiedTokenCache::put test suite")
+    class PutTests {
+        @Test
+        void should_ignore_expired_token() {
+            cache.put("token", authentication(instant.get().minusSeconds(1)));
+
+            assertThat(cache.get("token", null)).isNull();
+        }
+
+        @Test
+        void should_ignore_other_authentication_types() {
+            cache.put("token", new TestingAuthenticationToken("user", "password", "partner"));
+
+            assertThat(cache.get("token", null)).isNull();
+        }
+
+        @Test
+        void should_keep_tokens_apart() {
+            cache.put("token", authentication(instant.get().plusSeconds(30)));
+
+            assertThat(cache.get("other", null)).isNull();
+        }
+    }
+}
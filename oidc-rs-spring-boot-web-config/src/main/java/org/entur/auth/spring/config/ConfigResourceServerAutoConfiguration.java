@@ -10,6 +10,7 @@ import org.entur.auth.spring.common.server.ServerCondition;
 import org.entur.auth.spring.config.authorization.AuthorizationHelper;
 import org.entur.auth.spring.config.cors.CorsHelper;
 import org.entur.auth.spring.config.mdc.MdcRequestFilter;
+import org.entur.auth.spring.config.server.TokenRejectionEntryPoint;
 import org.entur.auth.spring.web.authorization.ConfigureAuthorizeRequests;
 import org.entur.auth.spring.web.cors.ConfigureCors;
 import org.entur.auth.spring.web.mdc.ConfigureMdcRequestFilter;
@@ -76,6 +77,9 @@ public class ConfigResourceServerAutoConfiguration {
             AuthenticationManagerResolver<HttpServletRequest> authenticationManagerResolver) {
         log.debug("Configure ResourceServer");
 
-        return configurer -> configurer.authenticationManagerResolver(authenticationManagerResolver);
+        return configurer ->
+                configurer
+                        .authenticationManagerResolver(authenticationManagerResolver)
+                        .authenticationEntryPoint(new TokenRejectionEntryPoint());
     }
 }
@@ -1,17 +1,20 @@
 package org.entur.auth.spring.config.server;
 
-import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.source.CachingJWKSetSource;
+import com.nimbusds.jose.jwk.source.JWKSetBasedJWKSource;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
 import com.nimbusds.jose.jwk.source.JWKSetSourceWithHealthStatusReporting;
 import com.nimbusds.jose.jwk.source.JWKSource;
 import com.nimbusds.jose.jwk.source.JWKSourceBuilder;
-import com.nimbusds.jose.proc.JWSAlgorithmFamilyJWSKeySelector;
+import com.nimbusds.jose.jwk.source.RateLimitedJWKSetSource;
 import com.nimbusds.jose.proc.SecurityContext;
-import com.nimbusds.jose.util.DefaultResourceRetriever;
+import com.nimbusds.jose.util.events.EventListener;
 import com.nimbusds.jose.util.health.HealthReportListener;
 import com.nimbusds.jwt.proc.DefaultJWTProcessor;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -21,24 +24,39 @@ import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.entur.auth.spring.common.metrics.JwksMetrics;
 import org.entur.auth.spring.common.server.AudienceValidator;
+import org.entur.auth.spring.common.server.CachingJWSKeySelector;
+import org.entur.auth.spring.common.server.CachingJWSVerifierFactory;
+import org.entur.auth.spring.common.server.ClaimsPreCheck;
+import org.entur.auth.spring.common.server.ClassifyingJWTClaimsVerifier;
+import org.entur.auth.spring.common.server.ClassifyingJwtValidator;
+import org.entur.auth.spring.common.server.ConditionalJWKSetSource;
 import org.entur.auth.spring.common.server.EnturAuthProperties;
 import org.entur.auth.spring.common.server.IssuerProperties;
 import org.entur.auth.spring.common.server.JWKSourceWithIssuer;
+import org.entur.auth.spring.common.server.JwksReadiness;
+import org.entur.auth.spring.common.server.ReadinessTrackingJWKSetSource;
+import org.entur.auth.spring.common.server.SnapshotJWKSetSource;
+import org.entur.auth.spring.common.server.UnknownKeyIdRefresh;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
 import org.springframework.security.oauth2.core.OAuth2TokenValidator;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtValidators;
-import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationProvider;
 
 @Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class AuthenticationManagerFactory {
+    /**
+     * @deprecated use {@link #add(Map, List, IssuerProperties, AuthenticationManagerOptions)}
+     */
+    @Deprecated
     public static void add(
             Map<String, AuthenticationManager> authenticationManagers,
             List<JWKSourceWithIssuer<?>> remoteJWKSets,
@@ -47,6 +65,39 @@ public class AuthenticationManagerFactory {
             @NonNull Converter<Jwt, Collection<GrantedAuthority>> jwtGrantedAuthoritiesConverter,
             HealthReportListener<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
                     healthReportListener) {
+        add(
+                authenticationManagers,
+                remoteJWKSets,
+                provider,
+                AuthenticationManagerOptions.builder()
+                        .enturAuthProperties(enturAuthProperties)
+                        .jwtGrantedAuthoritiesConverter(jwtGrantedAuthoritiesConverter)
+                        .healthReportListener(healthReportListener)
+                        .build());
+    }
+
+    /**
+     * Create the authentication manager and JWK source of an issuer.
+     *
+     * @param authenticationManagers the authentication manager is put here by issuer
+     * @param remoteJWKSets the JWK source is added here
+     * @param provider the issuer, with its overrides of the cache settings
+     * @param options shared by every issuer
+     */
+    public static void add(
+            Map<String, AuthenticationManager> authenticationManagers,
+            List<JWKSourceWithIssuer<?>> remoteJWKSets,
+            IssuerProperties provider,
+            @NonNull AuthenticationManagerOptions options) {
+        var enturAuthProperties = options.getEnturAuthProperties();
+        var jwtGrantedAuthoritiesConverter = options.getJwtGrantedAuthoritiesConverter();
+        var healthReportListener = options.getHealthReportListener();
+        var tokenCache = options.getTokenCache();
+        var metrics = options.getMetrics();
+        var jwksMetrics = options.getJwksMetrics();
+        var resourceRetriever = options.getResourceRetriever();
+        var refreshScheduler = options.getRefreshScheduler();
+        var snapshotStore = options.getSnapshotStore();
 
         long cacheLifespan =
                 (provider.getCacheLifespan() != null
@@ -72,49 +123,137 @@ public class AuthenticationManagerFactory {
                 provider.getOutageTolerant() != null
                         ? provider.getOutageTolerant()
                         : enturAuthProperties.getOutageTolerant();
+        boolean cacheControl =
+                provider.getCacheControl() != null
+                        ? provider.getCacheControl()
+                        : enturAuthProperties.isCacheControl();
+        if (cacheControl) {
+            // The Nimbus cache has a fixed lifespan, which the max-age of a response cannot change
+            log.warn(
+                    "cache-control is only supported on WebFlux, using cache-lifespan: issuerUri = {}",
+                    provider.getIssuerUrl());
+        }
 
+        var issuerJwksMetrics =
+                jwksMetrics != null ? jwksMetrics.forIssuer(provider.getIssuerUrl()) : null;
         try {
             final JWKSourceBuilder<SecurityContext> jwkSourceBuilder;
-            var resourceRetriever =
-                    new DefaultResourceRetriever(
-                            enturAuthProperties.getConnectTimeout() * 1000,
-                            enturAuthProperties.getReadTimeout() * 1000);
+            EventListener<CachingJWKSetSource<SecurityContext>, SecurityContext> cacheEventListener =
+                    issuerJwksMetrics != null ? issuerJwksMetrics.cacheEventListener() : null;
+            EventListener<RateLimitedJWKSetSource<SecurityContext>, SecurityContext>
+                    rateLimitedEventListener =
+                            issuerJwksMetrics != null ? issuerJwksMetrics.rateLimitedEventListener() : null;
+            var readiness =
+                    new JwksReadiness(
+                            Duration.ofSeconds(outageTolerant),
+                            Boolean.TRUE.equals(enturAuthProperties.getLazyLoad()));
+            var certificateUrl = new URL(provider.getCertificateUrl());
+            // Without a shared retriever, the source creates its own and closes it with the issuer
+            JWKSetSource<SecurityContext> originSource =
+                    resourceRetriever != null
+                            ? new ConditionalJWKSetSource<>(certificateUrl, resourceRetriever)
+                            : new ConditionalJWKSetSource<>(
+                                    certificateUrl,
+                                    enturAuthProperties.getConnectTimeout() * 1000,
+                                    enturAuthProperties.getReadTimeout() * 1000);
+            // Without a lifespan a snapshot would be used until a key is missing
+            SnapshotJWKSetSource<SecurityContext> snapshotSource = null;
+            boolean snapshotLoaded = false;
+            if (snapshotStore != null && cacheLifespan > 0) {
+                snapshotSource =
+                        new SnapshotJWKSetSource<>(
+                                originSource,
+                                snapshotStore,
+                                provider.getIssuerUrl(),
+                                Duration.ofSeconds(outageTolerant));
+                snapshotLoaded = snapshotSource.hasSnapshot();
+                originSource = snapshotSource;
+            }
+            JWKSetSource<SecurityContext> jwkSetSource =
+                    new ReadinessTrackingJWKSetSource<>(originSource, readiness);
             if (cacheLifespan <= 0) {
                 jwkSourceBuilder =
-                        JWKSourceBuilder.create(new URL(provider.getCertificateUrl()), resourceRetriever)
-                                .cache(Long.MAX_VALUE, cacheRefreshTimeout * 1000)
+                        JWKSourceBuilder.create(jwkSetSource)
+                                .cache(Long.MAX_VALUE, cacheRefreshTimeout * 1000, cacheEventListener)
+                                .refreshAheadCache(false)
+                                .rateLimited(jwksThrottleWait * 1000, rateLimitedEventListener)
+                                .retrying(retryOnFailure);
+            } else if (refreshScheduler != null) {
+                // Refreshed ahead of expiry by the shared scheduler, see below
+                jwkSourceBuilder =
+                        JWKSourceBuilder.create(jwkSetSource)
+                                .cache(cacheLifespan * 1000, cacheRefreshTimeout * 1000, cacheEventListener)
                                 .refreshAheadCache(false)
-                                .rateLimited(jwksThrottleWait * 1000)
+                                .rateLimited(jwksThrottleWait * 1000, rateLimitedEventListener)
                                 .retrying(retryOnFailure);
             } else {
                 jwkSourceBuilder =
-                        JWKSourceBuilder.create(new URL(provider.getCertificateUrl()), resourceRetriever)
-                                .cache(cacheLifespan * 1000, cacheRefreshTimeout * 1000)
-                                .refreshAheadCache(refreshAheadTime * 1000, true)
-                                .rateLimited(jwksThrottleWait * 1000)
+                        JWKSourceBuilder.create(jwkSetSource)
+                                .cache(cacheLifespan * 1000, cacheRefreshTimeout * 1000, cacheEventListener)
+                                .refreshAheadCache(refreshAheadTime * 1000, true, cacheEventListener)
+                                .rateLimited(jwksThrottleWait * 1000, rateLimitedEventListener)
                                 .retrying(retryOnFailure);
             }
 
+            if (retryOnFailure && issuerJwksMetrics != null) {
+                jwkSourceBuilder.retrying(issuerJwksMetrics.retryEventListener());
+            }
+
             if (outageTolerant > 0) {
-                jwkSourceBuilder.outageTolerant(outageTolerant * 1000);
+                jwkSourceBuilder.outageTolerant(
+                        outageTolerant * 1000,
+                        issuerJwksMetrics != null ? issuerJwksMetrics.outageEventListener() : null);
             }
 
-            if (healthReportListener != null) {
-                jwkSourceBuilder.healthReporting(healthReportListener);
+            var issuerHealthReportListener =
+                    JwksMetrics.withMetrics(healthReportListener, issuerJwksMetrics);
+            if (issuerHealthReportListener != null) {
+                jwkSourceBuilder.healthReporting(issuerHealthReportListener);
             }
 
-            var jwkSource = new JWKSourceWithIssuer<>(provider.getIssuerUrl(), jwkSourceBuilder.build());
+            JWKSource<SecurityContext> builtJwkSource = jwkSourceBuilder.build();
+            if (cacheLifespan > 0
+                    && refreshScheduler != null
+                    && builtJwkSource instanceof JWKSetBasedJWKSource<SecurityContext> cachingSource) {
+                var interval = Duration.ofSeconds(Math.max(cacheLifespan - refreshAheadTime, 1));
+                // Keys from a snapshot are replaced as soon as the rate limit allows
+                builtJwkSource =
+                        new JWKSetBasedJWKSource<>(
+                                snapshotLoaded
+                                        ? refreshScheduler.schedule(
+                                                cachingSource.getJWKSetSource(),
+                                                interval,
+                                                Duration.ofSeconds(jwksThrottleWait))
+                                        : refreshScheduler.schedule(cachingSource.getJWKSetSource(), interval));
+            } else if (snapshotLoaded
+                    && builtJwkSource instanceof JWKSetBasedJWKSource<SecurityContext> cachingSource) {
+                // The cache takes the snapshot as just retrieved, so replace it as soon as the rate
+                // limit allows
+                snapshotSource.refreshAfterSnapshot(
+                        cachingSource.getJWKSetSource(), Duration.ofSeconds(jwksThrottleWait));
+            }
+            var jwkSource = new JWKSourceWithIssuer<>(provider.getIssuerUrl(), builtJwkSource, readiness);
             remoteJWKSets.add(jwkSource);
 
             DefaultJWTProcessor<SecurityContext> jwtProcessor =
-                    createDefaultJWTProcessor(enturAuthProperties, jwkSource);
-            NimbusJwtDecoder jwtDecoder =
-                    createNimbusJwtDecoder(enturAuthProperties, provider, jwtProcessor);
+                    createDefaultJWTProcessor(enturAuthProperties, jwkSource, issuerJwksMetrics);
+            SignedJwtDecoder jwtDecoder = createJwtDecoder(enturAuthProperties, provider, jwtProcessor);
             JwtAuthenticationProvider authenticationProvider =
                     createJwtAuthenticationProvider(jwtGrantedAuthoritiesConverter, jwtDecoder);
 
             // Add AuthenticationManager to map
-            authenticationManagers.put(provider.getIssuerUrl(), authenticationProvider::authenticate);
+            AuthenticationManager authenticationManager = authenticationProvider::authenticate;
+            var issuerMetrics = metrics != null ? metrics.forIssuer(provider.getIssuerUrl()) : null;
+            if (tokenCache != null) {
+                authenticationManager =
+                        new VerifiedTokenAuthenticationManager(
+                                authenticationManager, tokenCache, issuerMetrics);
+            }
+            if (issuerMetrics != null) {
+                authenticationManager =
+                        new MeteredAuthenticationManager(authenticationManager, issuerMetrics);
+            }
+            authenticationManagers.put(provider.getIssuerUrl(), authenticationManager);
 
             log.info(
                     "Added authorization server: issuerUri = {}, cacheLifespan:  = {}, cacheRefreshTimeout = {}, refreshAheadTime = {}, jwksThrottleWait = {}, lazyLoad = {}, certificateUrl = {}",
@@ -141,23 +280,35 @@ public class AuthenticationManagerFactory {
     }
 
     private static DefaultJWTProcessor<SecurityContext> createDefaultJWTProcessor(
-            EnturAuthProperties enturAuthProperties, JWKSource<SecurityContext> remoteJWKSet)
+            EnturAuthProperties enturAuthProperties,
+            JWKSourceWithIssuer<SecurityContext> remoteJWKSet,
+            JwksMetrics.IssuerJwksMetrics issuerJwksMetrics)
             throws KeySourceException {
-        // Create JWTProcessor
+        // Create JWTProcessor with keys and verifiers cached per kid
         DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        var jwkSetSource = remoteJWKSet.getJWKSetSource();
+        // Tokens with an unknown kid share one rate limited refresh
+        var unknownKeyIdRefresh =
+                new UnknownKeyIdRefresh(
+                        enturAuthProperties.getUnknownKid(),
+                        enturAuthProperties.getReadTimeout(),
+                        issuerJwksMetrics);
         if (Boolean.TRUE.equals(enturAuthProperties.getLazyLoad())) {
-            log.info("Notice: Lazy load of JWKS only supports RSA algorithms");
-            jwtProcessor.setJWSKeySelector(
-                    new JWSAlgorithmFamilyJWSKeySelector<>(JWSAlgorithm.Family.RSA, remoteJWKSet));
+            // The key type follows the token's alg and the JWK set retrieved on first use
+            jwtProcessor.setJWSKeySelector(CachingJWSKeySelector.lazy(jwkSetSource, unknownKeyIdRefresh));
         } else {
-            jwtProcessor.setJWSKeySelector(JWSAlgorithmFamilyJWSKeySelector.fromJWKSource(remoteJWKSet));
+            jwtProcessor.setJWSKeySelector(
+                    CachingJWSKeySelector.fromJWKSetSource(jwkSetSource, unknownKeyIdRefresh));
         }
+        jwtProcessor.setJWSVerifierFactory(new CachingJWSVerifierFactory());
+        // Tokens used before their nbf claim are rejected with a type of their own
+        jwtProcessor.setJWTClaimsSetVerifier(new ClassifyingJWTClaimsVerifier<>());
         return jwtProcessor;
     }
 
     private static JwtAuthenticationProvider createJwtAuthenticationProvider(
             Converter<Jwt, Collection<GrantedAuthority>> jwtGrantedAuthoritiesConverter,
-            NimbusJwtDecoder jwtDecoder) {
+            JwtDecoder jwtDecoder) {
         JwtAuthenticationProvider authenticationProvider = new JwtAuthenticationProvider(jwtDecoder);
 
         // AuthenticationConverter
@@ -169,11 +320,11 @@ public class AuthenticationManagerFactory {
         return authenticationProvider;
     }
 
-    private static NimbusJwtDecoder createNimbusJwtDecoder(
+    private static SignedJwtDecoder createJwtDecoder(
             EnturAuthProperties enturAuthProperties,
             IssuerProperties provider,
             DefaultJWTProcessor<SecurityContext> jwtProcessor) {
-        NimbusJwtDecoder jwtDecoder = new NimbusJwtDecoder(jwtProcessor);
+        SignedJwtDecoder jwtDecoder = new SignedJwtDecoder(jwtProcessor);
 
         // Handle audience
         var apis = enturAuthProperties.getApis();
@@ -184,13 +335,21 @@ public class AuthenticationManagerFactory {
                                         Objects.equals(provider.getIssuerUrl(), apiProperties.getIssuerUrl()))
                         .flatMap(apiProperties -> apiProperties.getAudiences().stream())
                         .collect(Collectors.toSet());
+        OAuth2TokenValidator<Jwt> jwtValidator = JwtValidators.createDefault();
         if (!audiences.isEmpty()) {
             OAuth2TokenValidator<Jwt> audienceValidator = new AudienceValidator(audiences);
             OAuth2TokenValidator<Jwt> withIssuer =
                     JwtValidators.createDefaultWithIssuer(provider.getIssuerUrl());
-            OAuth2TokenValidator<Jwt> withAudience =
-                    new DelegatingOAuth2TokenValidator<>(withIssuer, audienceValidator);
-            jwtDecoder.setJwtValidator(withAudience);
+            jwtValidator = new DelegatingOAuth2TokenValidator<>(withIssuer, audienceValidator);
+        }
+        // Rejections are classified by the claims of the token, not by the errors of the validators
+        jwtDecoder.setJwtValidator(
+                new ClassifyingJwtValidator(jwtValidator, provider.getIssuerUrl(), audiences));
+
+        if (enturAuthProperties.getPreCheck().isEnabled()) {
+            jwtDecoder.setClaimsPreCheck(
+                    new ClaimsPreCheck(
+                            enturAuthProperties.getPreCheck(), provider.getIssuerUrl(), audiences));
         }
 
         return jwtDecoder;
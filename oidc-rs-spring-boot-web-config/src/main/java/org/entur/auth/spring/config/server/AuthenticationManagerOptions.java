@@ -0,0 +1,63 @@
+package org.entur.auth.spring.config.server;
+
+import com.nimbusds.jose.jwk.source.JWKSetSourceWithHealthStatusReporting;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.ResourceRetriever;
+import com.nimbusds.jose.util.health.HealthReportListener;
+import java.util.Collection;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import org.entur.auth.spring.common.metrics.JwksMetrics;
+import org.entur.auth.spring.common.metrics.TokenValidationMetrics;
+import org.entur.auth.spring.common.server.ConditionalResourceRetriever;
+import org.entur.auth.spring.common.server.EnturAuthProperties;
+import org.entur.auth.spring.common.server.JwksRefreshScheduler;
+import org.entur.auth.spring.common.server.JwksSnapshotStore;
+import org.entur.auth.spring.common.server.VerifiedTokenCache;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+/**
+ * What {@link AuthenticationManagerFactory} needs besides the {@code IssuerProperties} of the
+ * issuer, shared by every issuer added with the same options. Everything but the properties and the
+ * authorities converter is optional.
+ */
+@Value
+@Builder
+public class AuthenticationManagerOptions {
+    @NonNull EnturAuthProperties enturAuthProperties;
+    @NonNull Converter<Jwt, Collection<GrantedAuthority>> jwtGrantedAuthoritiesConverter;
+
+    HealthReportListener<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+            healthReportListener;
+
+    /** Answers tokens verified before, {@code null} to disable. */
+    VerifiedTokenCache tokenCache;
+
+    /** Records validation latency and outcome per issuer, {@code null} to disable. */
+    TokenValidationMetrics metrics;
+
+    /** Records JWKS cache state per issuer, {@code null} to disable. */
+    JwksMetrics jwksMetrics;
+
+    /**
+     * Retrieves the JWKS, shared between issuers so they share its connections, {@code null} to
+     * retrieve with a {@link ConditionalResourceRetriever} of the issuer's own, closed with its JWK
+     * source.
+     */
+    ResourceRetriever resourceRetriever;
+
+    /**
+     * Refreshes the JWKS ahead of expiry, shared between issuers, {@code null} for a refresh-ahead
+     * thread of the issuer's own.
+     */
+    JwksRefreshScheduler refreshScheduler;
+
+    /**
+     * Answers the first retrieval of a cached JWKS from a snapshot no older than {@code
+     * outageTolerant}, and saves every retrieved JWKS, {@code null} to disable.
+     */
+    JwksSnapshotStore snapshotStore;
+}
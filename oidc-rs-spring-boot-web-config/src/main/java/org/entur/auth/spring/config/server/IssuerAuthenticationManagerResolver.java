@@ -2,37 +2,78 @@ package org.entur.auth.spring.config.server;
 
 import com.nimbusds.jose.jwk.source.JWKSetSourceWithHealthStatusReporting;
 import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.ResourceRetriever;
 import com.nimbusds.jose.util.health.HealthReportListener;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTParser;
 import jakarta.servlet.http.HttpServletRequest;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
-import lombok.Getter;
+import lombok.Builder;
 import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.entur.auth.spring.common.metrics.JwksMetrics;
+import org.entur.auth.spring.common.metrics.TokenValidationMetrics;
+import org.entur.auth.spring.common.metrics.TokenValidationOutcome;
+import org.entur.auth.spring.common.server.ConditionalResourceRetriever;
 import org.entur.auth.spring.common.server.EnturAuthProperties;
+import org.entur.auth.spring.common.server.IssuerBootstrap;
 import org.entur.auth.spring.common.server.IssuerProperties;
+import org.entur.auth.spring.common.server.IssuerRegistry;
 import org.entur.auth.spring.common.server.JWKSourceWithIssuer;
+import org.entur.auth.spring.common.server.JwksRefreshScheduler;
+import org.entur.auth.spring.common.server.JwksSnapshotStore;
+import org.entur.auth.spring.common.server.RejectedTokenCache;
+import org.entur.auth.spring.common.server.SupportsIssuerUpdates;
 import org.entur.auth.spring.common.server.SupportsReadiness;
 import org.entur.auth.spring.common.server.TenantJwtGrantedAuthoritiesConverter;
+import org.entur.auth.spring.common.server.TokenRejectedException;
+import org.entur.auth.spring.common.server.TokenRejection;
+import org.entur.auth.spring.common.server.VerifiedTokenCache;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationManagerResolver;
-import org.springframework.security.oauth2.server.resource.authentication.JwtIssuerAuthenticationManagerResolver;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+import org.springframework.util.Assert;
 
+@Slf4j
 public final class IssuerAuthenticationManagerResolver
-        implements AuthenticationManagerResolver<HttpServletRequest>, SupportsReadiness {
+        implements AuthenticationManagerResolver<HttpServletRequest>,
+                SupportsReadiness,
+                SupportsIssuerUpdates,
+                Closeable {
 
-    private final Map<String, AuthenticationManager> authenticationManagers;
-    private final @Getter List<JWKSourceWithIssuer<?>> remoteJWKSets;
+    private final IssuerRegistry<AuthenticationManager> registry = new IssuerRegistry<>();
     private final EnturAuthProperties enturAuthProperties;
+    private final IssuerBootstrap bootstrap;
+    private volatile Runnable readinessListener = () -> {};
     private final TenantJwtGrantedAuthoritiesConverter authoritiesConverter;
     private final HealthReportListener<
                     JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
             healthReportListener;
-    private final AuthenticationManagerResolver<HttpServletRequest> authenticationManagerResolver;
+    private final VerifiedTokenCache tokenCache;
+    private final RejectedTokenCache rejectedTokenCache;
+    private final TokenValidationMetrics metrics;
+    private final JwksMetrics jwksMetrics;
+    private final ResourceRetriever resourceRetriever;
+    private final ConditionalResourceRetriever ownedResourceRetriever;
+    private final JwksRefreshScheduler refreshScheduler;
+    private final JwksSnapshotStore snapshotStore;
+    private final AuthenticationManager authenticationManager;
 
+    /**
+     * @param authenticationManagers initial authentication managers by issuer, copied
+     * @param remoteJWKSets JWK sources of the initial authentication managers, copied
+     * @deprecated use {@code builder()}
+     */
+    @Deprecated
     public IssuerAuthenticationManagerResolver(
             @NonNull Map<String, AuthenticationManager> authenticationManagers,
             @NonNull List<JWKSourceWithIssuer<?>> remoteJWKSets,
@@ -40,47 +81,322 @@ public final class IssuerAuthenticationManagerResolver
             @NonNull TenantJwtGrantedAuthoritiesConverter authoritiesConverter,
             HealthReportListener<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
                     healthReportListener) {
+        this(
+                authenticationManagers,
+                remoteJWKSets,
+                enturAuthProperties,
+                authoritiesConverter,
+                healthReportListener,
+                null,
+                null,
+                null);
+    }
+
+    /**
+     * @param authenticationManagers initial authentication managers by issuer, copied, {@code null}
+     *     for none
+     * @param remoteJWKSets JWK sources of the initial authentication managers, copied, {@code null}
+     *     for none
+     * @param metrics records validation latency and outcome per issuer, {@code null} to disable
+     * @param jwksMetrics records JWKS cache state per issuer, {@code null} to disable
+     * @param resourceRetriever retrieves the JWKS of every issuer added, {@code null} for a {@link
+     *     ConditionalResourceRetriever} with the configured timeouts
+     */
+    @Builder
+    private IssuerAuthenticationManagerResolver(
+            Map<String, AuthenticationManager> authenticationManagers,
+            List<JWKSourceWithIssuer<?>> remoteJWKSets,
+            @NonNull EnturAuthProperties enturAuthProperties,
+            @NonNull TenantJwtGrantedAuthoritiesConverter authoritiesConverter,
+            HealthReportListener<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+                    healthReportListener,
+            TokenValidationMetrics metrics,
+            JwksMetrics jwksMetrics,
+            ResourceRetriever resourceRetriever) {
 
-        this.authenticationManagers = authenticationManagers;
-        this.remoteJWKSets = new ArrayList<>(remoteJWKSets);
+        if (remoteJWKSets != null && authenticationManagers != null) {
+            remoteJWKSets.forEach(
+                    jwkSource -> {
+                        var manager = authenticationManagers.get(jwkSource.getIssuerUrl());
+                        if (manager != null) {
+                            registry.add(
+                                    jwkSource.getIssuerUrl(), new IssuerRegistry.Registration<>(manager, jwkSource));
+                            track(jwkSource);
+                        }
+                    });
+        }
         this.enturAuthProperties = enturAuthProperties;
+        this.bootstrap =
+                new IssuerBootstrap(enturAuthProperties.getBootstrap(), this::readinessChanged);
         this.authoritiesConverter = authoritiesConverter;
         this.healthReportListener = healthReportListener;
+        this.tokenCache =
+                enturAuthProperties.getTokenCache().isEnabled()
+                        ? new VerifiedTokenCache(enturAuthProperties.getTokenCache())
+                        : null;
+        this.rejectedTokenCache =
+                enturAuthProperties.getRejectedTokenCache().isEnabled()
+                        ? new RejectedTokenCache(enturAuthProperties.getRejectedTokenCache())
+                        : null;
+        this.metrics = metrics;
+        this.jwksMetrics = jwksMetrics;
+        this.ownedResourceRetriever =
+                resourceRetriever == null
+                        ? new ConditionalResourceRetriever(
+                                enturAuthProperties.getConnectTimeout() * 1000,
+                                enturAuthProperties.getReadTimeout() * 1000)
+                        : null;
+        this.resourceRetriever = resourceRetriever != null ? resourceRetriever : ownedResourceRetriever;
+        this.refreshScheduler = new JwksRefreshScheduler(enturAuthProperties.getJwksRefresh());
+        this.snapshotStore =
+                enturAuthProperties.getJwksSnapshot().isEnabled()
+                        ? new JwksSnapshotStore(enturAuthProperties.getJwksSnapshot())
+                        : null;
 
-        this.authenticationManagerResolver =
-                new JwtIssuerAuthenticationManagerResolver(authenticationManagers::get);
+        this.authenticationManager = this::authenticate;
     }
 
     @Override
     public AuthenticationManager resolve(HttpServletRequest context) {
-        return authenticationManagerResolver.resolve(context);
+        return authenticationManager;
+    }
+
+    /** Answer recently rejected tokens from the {@link RejectedTokenCache}, when enabled. */
+    private Authentication authenticate(Authentication authentication) {
+        Assert.isTrue(
+                authentication instanceof BearerTokenAuthenticationToken,
+                "Authentication must be of type BearerTokenAuthenticationToken");
+        String token = ((BearerTokenAuthenticationToken) authentication).getToken();
+        if (rejectedTokenCache == null) {
+            return authenticate(authentication, token);
+        }
+
+        var rejection = rejectedTokenCache.get(token);
+        if (rejection != null) {
+            if (metrics != null) {
+                metrics.rejectedCacheHit();
+            }
+            throw rejection;
+        }
+
+        try {
+            return authenticate(authentication, token);
+        } catch (AuthenticationException ex) {
+            rejectedTokenCache.put(token, ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Parse the bearer token once, route on its {@code iss} claim and hand the parsed token on to the
+     * issuer's {@link SignedJwtDecoder}.
+     */
+    private Authentication authenticate(Authentication authentication, String token) {
+        long start = metrics != null ? metrics.unknownIssuer().start() : 0;
+
+        final JWT jwt;
+        final String issuer;
+        try {
+            jwt = JWTParser.parse(token);
+            issuer = jwt.getJWTClaimsSet().getIssuer();
+        } catch (Exception ex) {
+            throw rejected(start, TokenValidationOutcome.INVALID, TokenRejection.MALFORMED, ex);
+        }
+
+        if (issuer == null) {
+            throw rejected(
+                    start, TokenValidationOutcome.UNKNOWN_ISSUER, TokenRejection.UNKNOWN_ISSUER, null);
+        }
+
+        AuthenticationManager issuerAuthenticationManager = registry.get(issuer);
+        if (issuerAuthenticationManager == null) {
+            throw rejected(
+                    start, TokenValidationOutcome.UNKNOWN_ISSUER, TokenRejection.UNKNOWN_ISSUER, null);
+        }
+
+        return SignedJwtDecoder.withParsedToken(
+                token, jwt, () -> issuerAuthenticationManager.authenticate(authentication));
+    }
+
+    /** Record a token rejected before reaching an issuer, under the shared unknown issuer tag. */
+    private TokenRejectedException rejected(
+            long start, TokenValidationOutcome outcome, TokenRejection rejection, Exception cause) {
+        if (metrics != null) {
+            metrics.unknownIssuer().record(start, outcome);
+        }
+        return new TokenRejectedException(rejection, cause);
+    }
+
+    public List<JWKSourceWithIssuer<?>> getRemoteJWKSets() {
+        return registry.getJWKSources();
     }
 
     public Set<String> getIssuers() {
-        return remoteJWKSets.stream()
-                .map(JWKSourceWithIssuer::getIssuerUrl)
-                .collect(Collectors.toSet());
+        return registry.getIssuers();
     }
 
     public boolean getReadiness() {
-        return remoteJWKSets.stream().allMatch(JWKSourceWithIssuer::getReadiness);
+        return bootstrap.isComplete()
+                && registry.getJWKSources().stream().allMatch(JWKSourceWithIssuer::getReadiness);
+    }
+
+    /**
+     * Add issuers with their JWKS retrieved concurrently, as configured by {@code
+     * entur.auth.bootstrap}. Issuers not added by the deadline are added in the background, and hold
+     * readiness until then.
+     */
+    public void addIssuers(@NonNull Collection<IssuerProperties> issuerProperties) {
+        bootstrap.addAll(issuerProperties, this::addIssuer);
+    }
+
+    @Override
+    public void setReadinessListener(@NonNull Runnable listener) {
+        this.readinessListener = listener;
     }
 
     public void addIssuer(@NonNull IssuerProperties issuerProperties) {
-        if (remoteJWKSets.stream()
-                .anyMatch(
-                        jwkSourceWithIssuer ->
-                                Objects.equals(
-                                        jwkSourceWithIssuer.getIssuerUrl(), issuerProperties.getIssuerUrl()))) {
+        if (registry.contains(issuerProperties.getIssuerUrl())) {
             return;
         }
 
+        var registration = createRegistration(issuerProperties);
+        if (!registry.add(issuerProperties.getIssuerUrl(), registration)) {
+            close(registration);
+            return;
+        }
+        issuersChanged();
+        readinessChanged();
+    }
+
+    /**
+     * Remove an issuer, so its tokens are no longer accepted.
+     *
+     * @return {@code true} if the issuer was removed, {@code false} if it was not registered
+     */
+    public boolean removeIssuer(@NonNull String issuerUrl) {
+        var removed = registry.remove(issuerUrl);
+        if (removed == null) {
+            return false;
+        }
+
+        remove(removed);
+        readinessChanged();
+        return true;
+    }
+
+    /**
+     * Add an issuer, or replace it with new properties. The new authentication manager is created
+     * first and then swapped in, so tokens of the issuer are accepted throughout, and the JWK source
+     * of the replaced one is closed.
+     */
+    public void replaceIssuer(@NonNull IssuerProperties issuerProperties) {
+        var registration = createRegistration(issuerProperties);
+        var replaced = registry.put(issuerProperties.getIssuerUrl(), registration);
+        if (replaced != null) {
+            // Same issuer, so its authorities stay registered
+            close(replaced);
+        }
+        issuersChanged();
+        readinessChanged();
+    }
+
+    /**
+     * Replace every issuer in one step. Issuers that are already registered keep their authentication
+     * manager and cached JWK set.
+     */
+    public void replaceIssuers(@NonNull Collection<IssuerProperties> issuerProperties) {
+        Map<String, IssuerRegistry.Registration<AuthenticationManager>> registrations = new HashMap<>();
+        for (IssuerProperties properties : issuerProperties) {
+            var existing = registry.getRegistration(properties.getIssuerUrl());
+            registrations.putIfAbsent(
+                    properties.getIssuerUrl(), existing != null ? existing : createRegistration(properties));
+        }
+
+        registry.replace(registrations).forEach(this::remove);
+        issuersChanged();
+        readinessChanged();
+    }
+
+    /**
+     * Close the JWK sources of every issuer, stop their scheduled refreshes, finish writing JWKS
+     * snapshots and release the HTTP client created by the resolver.
+     */
+    @Override
+    public void close() {
+        bootstrap.close();
+        registry.replace(Map.of()).forEach(this::remove);
+        refreshScheduler.close();
+        if (snapshotStore != null) {
+            snapshotStore.close();
+        }
+        if (ownedResourceRetriever != null) {
+            try {
+                ownedResourceRetriever.close();
+            } catch (IOException ex) {
+                log.warn("Unable to close JWKS resource retriever", ex);
+            }
+        }
+    }
+
+    private IssuerRegistry.Registration<AuthenticationManager> createRegistration(
+            IssuerProperties issuerProperties) {
+        Map<String, AuthenticationManager> authenticationManagers = new HashMap<>();
+        List<JWKSourceWithIssuer<?>> remoteJWKSets = new ArrayList<>();
+        authoritiesConverter.addIssuer(issuerProperties.getIssuerUrl());
         AuthenticationManagerFactory.add(
                 authenticationManagers,
                 remoteJWKSets,
                 issuerProperties,
-                enturAuthProperties,
-                authoritiesConverter,
-                healthReportListener);
+                AuthenticationManagerOptions.builder()
+                        .enturAuthProperties(enturAuthProperties)
+                        .jwtGrantedAuthoritiesConverter(authoritiesConverter)
+                        .healthReportListener(healthReportListener)
+                        .tokenCache(tokenCache)
+                        .metrics(metrics)
+                        .jwksMetrics(jwksMetrics)
+                        .resourceRetriever(resourceRetriever)
+                        .refreshScheduler(refreshScheduler)
+                        .snapshotStore(snapshotStore)
+                        .build());
+
+        var jwkSource = remoteJWKSets.get(0);
+        track(jwkSource);
+        return new IssuerRegistry.Registration<>(
+                authenticationManagers.get(issuerProperties.getIssuerUrl()), jwkSource);
+    }
+
+    private void track(JWKSourceWithIssuer<?> jwkSource) {
+        var jwksReadiness = jwkSource.getJwksReadiness();
+        if (jwksReadiness != null) {
+            jwksReadiness.setChangeListener(this::readinessChanged);
+        }
+    }
+
+    /** Forget rejected tokens, which may have been rejected for an issuer that was not known. */
+    private void issuersChanged() {
+        if (rejectedTokenCache != null) {
+            rejectedTokenCache.invalidateAll();
+        }
+    }
+
+    private void readinessChanged() {
+        readinessListener.run();
+    }
+
+    /** Release the JWK source and authorities of an issuer that is no longer registered. */
+    private void remove(IssuerRegistry.Registration<?> registration) {
+        authoritiesConverter.removeIssuer(registration.jwkSource().getIssuerUrl());
+        close(registration);
+    }
+
+    private static void close(IssuerRegistry.Registration<?> registration) {
+        try {
+            registration.jwkSource().close();
+        } catch (IOException ex) {
+            log.warn(
+                    "Unable to close JWK source: issuerUri = {}",
+                    registration.jwkSource().getIssuerUrl(),
+                    ex);
+        }
     }
 }
@@ -0,0 +1,28 @@
+package org.entur.auth.spring.config.server;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.entur.auth.spring.common.metrics.TokenValidationMetrics.IssuerMetrics;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+/** Records the latency and outcome of every authentication of an issuer's tokens. */
+@RequiredArgsConstructor
+final class MeteredAuthenticationManager implements AuthenticationManager {
+    private final @NonNull AuthenticationManager delegate;
+    private final @NonNull IssuerMetrics metrics;
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        var start = metrics.start();
+        try {
+            var result = delegate.authenticate(authentication);
+            metrics.success(start);
+            return result;
+        } catch (RuntimeException ex) {
+            metrics.failure(start, ex);
+            throw ex;
+        }
+    }
+}
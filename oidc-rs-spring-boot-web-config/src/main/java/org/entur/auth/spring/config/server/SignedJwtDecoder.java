@@ -0,0 +1,144 @@
+package org.entur.auth.spring.config.server;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.RemoteKeySourceException;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.proc.JWTProcessor;
+import java.text.ParseException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import lombok.NonNull;
+import lombok.Setter;
+import org.entur.auth.spring.common.server.ClaimsPreCheck;
+import org.entur.auth.spring.common.server.TokenRejectedException;
+import org.entur.auth.spring.common.server.TokenRejection;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.oauth2.core.OAuth2Error;
+import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.MappedJwtClaimSetConverter;
+
+/**
+ * {@link JwtDecoder} with the same behaviour as Spring's {@code NimbusJwtDecoder}, except that it
+ * reuses a token already parsed by {@link IssuerAuthenticationManagerResolver} instead of parsing
+ * it a second time.
+ *
+ * <p>The parsed token is handed over on the calling thread through {@link #withParsedToken}, which
+ * holds for the servlet stack where authentication runs synchronously.
+ *
+ * <p>Rejected tokens are reported through a stackless {@link TokenRejectedException} rather than a
+ * {@code BadJwtException}, which {@code JwtAuthenticationProvider} passes on as it is instead of
+ * wrapping it in another {@code InvalidBearerTokenException}.
+ */
+final class SignedJwtDecoder implements JwtDecoder {
+    private static final String DECODING_ERROR_MESSAGE_TEMPLATE =
+            "An error occurred while attempting to decode the Jwt: %s";
+
+    private static final ThreadLocal<ParsedToken> PARSED_TOKEN = new ThreadLocal<>();
+
+    private final @NonNull JWTProcessor<SecurityContext> jwtProcessor;
+    private final @NonNull Converter<Map<String, Object>, Map<String, Object>> claimSetConverter =
+            MappedJwtClaimSetConverter.withDefaults(Collections.emptyMap());
+    private @NonNull @Setter OAuth2TokenValidator<Jwt> jwtValidator = JwtValidators.createDefault();
+
+    /** Checks the unverified claims before the signature, {@code null} to skip. */
+    private @Setter ClaimsPreCheck claimsPreCheck;
+
+    SignedJwtDecoder(final @NonNull JWTProcessor<SecurityContext> jwtProcessor) {
+        this.jwtProcessor = jwtProcessor;
+    }
+
+    /**
+     * Run {@code action} with {@code parsed} available to any {@link SignedJwtDecoder} decoding
+     * {@code token} on the current thread.
+     */
+    static <T> T withParsedToken(
+            final @NonNull String token, final @NonNull JWT parsed, final @NonNull Supplier<T> action) {
+        PARSED_TOKEN.set(new ParsedToken(token, parsed));
+        try {
+            return action.get();
+        } finally {
+            PARSED_TOKEN.remove();
+        }
+    }
+
+    @Override
+    public Jwt decode(final String token) throws JwtException {
+        JWT parsed = parsedToken(token);
+        if (parsed == null) {
+            parsed = parse(token);
+        }
+        if (claimsPreCheck != null) {
+            try {
+                claimsPreCheck.verify(parsed);
+            } catch (ClaimsPreCheck.ClaimsPreCheckException ex) {
+                throw TokenRejectedException.of(ex);
+            }
+        }
+
+        Jwt jwt = createJwt(token, parsed);
+        return validateJwt(jwt);
+    }
+
+    private static JWT parsedToken(final String token) {
+        ParsedToken parsedToken = PARSED_TOKEN.get();
+        if (parsedToken == null || !parsedToken.token().equals(token)) {
+            return null;
+        }
+        return parsedToken.jwt();
+    }
+
+    private static JWT parse(final String token) {
+        try {
+            return JWTParser.parse(token);
+        } catch (Exception ex) {
+            throw new TokenRejectedException(TokenRejection.MALFORMED, ex);
+        }
+    }
+
+    private Jwt createJwt(final String token, final JWT parsedJwt) {
+        try {
+            JWTClaimsSet jwtClaimsSet = jwtProcessor.process(parsedJwt, null);
+            Map<String, Object> headers = new LinkedHashMap<>(parsedJwt.getHeader().toJSONObject());
+            Map<String, Object> claims = claimSetConverter.convert(jwtClaimsSet.getClaims());
+            return Jwt.withTokenValue(token)
+                    .headers(h -> h.putAll(headers))
+                    .claims(c -> c.putAll(claims))
+                    .build();
+        } catch (RemoteKeySourceException ex) {
+            if (ex.getCause() instanceof ParseException) {
+                throw new JwtException(
+                        String.format(DECODING_ERROR_MESSAGE_TEMPLATE, "Malformed Jwk set"), ex);
+            }
+            throw new JwtException(String.format(DECODING_ERROR_MESSAGE_TEMPLATE, ex.getMessage()), ex);
+        } catch (JOSEException ex) {
+            throw new JwtException(String.format(DECODING_ERROR_MESSAGE_TEMPLATE, ex.getMessage()), ex);
+        } catch (Exception ex) {
+            if (ex.getCause() instanceof ParseException) {
+                throw new TokenRejectedException(TokenRejection.MALFORMED, ex);
+            }
+            throw TokenRejectedException.of(ex);
+        }
+    }
+
+    private Jwt validateJwt(final Jwt jwt) {
+        OAuth2TokenValidatorResult result = jwtValidator.validate(jwt);
+        if (result.hasErrors()) {
+            Collection<OAuth2Error> errors = result.getErrors();
+            throw new TokenRejectedException(TokenRejection.of(errors));
+        }
+        return jwt;
+    }
+
+    private record ParsedToken(@NonNull String token, @NonNull JWT jwt) {}
+}
@@ -0,0 +1,35 @@
+package org.entur.auth.spring.config.server;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.entur.auth.spring.common.server.TokenRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.server.resource.web.BearerTokenAuthenticationEntryPoint;
+import org.springframework.security.web.AuthenticationEntryPoint;
+
+/**
+ * Answers a rejected token with the {@code WWW-Authenticate} header precomputed for its {@link
+ * org.entur.auth.spring.common.server.TokenRejection}. Other failures are answered by {@link
+ * BearerTokenAuthenticationEntryPoint}.
+ */
+public final class TokenRejectionEntryPoint implements AuthenticationEntryPoint {
+    private final AuthenticationEntryPoint delegate = new BearerTokenAuthenticationEntryPoint();
+
+    @Override
+    public void commence(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            AuthenticationException authException)
+            throws IOException, ServletException {
+        if (authException instanceof TokenRejectedException rejectedException) {
+            response.setHeader(
+                    HttpHeaders.WWW_AUTHENTICATE, rejectedException.getRejection().getWwwAuthenticate());
+            response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        delegate.commence(request, response, authException);
+    }
+}
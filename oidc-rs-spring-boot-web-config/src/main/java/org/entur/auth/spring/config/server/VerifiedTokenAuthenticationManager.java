@@ -0,0 +1,45 @@
+package org.entur.auth.spring.config.server;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.entur.auth.spring.common.metrics.TokenValidationMetrics.IssuerMetrics;
+import org.entur.auth.spring.common.server.VerifiedTokenCache;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+
+/** Answers from {@link VerifiedTokenCache} before delegating to the issuer's provider. */
+@RequiredArgsConstructor
+final class VerifiedTokenAuthenticationManager implements AuthenticationManager {
+    private final @NonNull AuthenticationManager delegate;
+    private final @NonNull VerifiedTokenCache tokenCache;
+    private final IssuerMetrics metrics;
+
+    VerifiedTokenAuthenticationManager(
+            final @NonNull AuthenticationManager delegate, final @NonNull VerifiedTokenCache tokenCache) {
+        this(delegate, tokenCache, null);
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        if (!(authentication instanceof BearerTokenAuthenticationToken bearer)) {
+            return delegate.authenticate(authentication);
+        }
+
+        var cached = tokenCache.get(bearer.getToken(), bearer.getDetails());
+        if (cached != null) {
+            if (metrics != null) {
+                metrics.cacheHit();
+            }
+            return cached;
+        }
+
+        if (metrics != null) {
+            metrics.cacheMiss();
+        }
+        var result = delegate.authenticate(authentication);
+        tokenCache.put(bearer.getToken(), result);
+        return result;
+    }
+}
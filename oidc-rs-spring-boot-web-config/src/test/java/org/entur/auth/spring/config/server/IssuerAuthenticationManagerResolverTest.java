@@ -0,0 +1,151 @@
+package org.entur.auth.spring.config.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.entur.auth.spring.config.server.SignedJwtDecoderTest.ISSUER;
+import static org.entur.auth.spring.config.server.SignedJwtDecoderTest.token;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.proc.JWTProcessor;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.NonNull;
+import lombok.val;
+import org.entur.auth.spring.common.server.DefaultAuthProviders;
+import org.entur.auth.spring.common.server.EnturAuthProperties;
+import org.entur.auth.spring.common.server.JWKSourceWithIssuer;
+import org.entur.auth.spring.common.server.TenantJwtGrantedAuthoritiesConverter;
+import org.entur.auth.spring.common.server.TokenRejectedException;
+import org.entur.auth.spring.common.server.TokenRejection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("IssuerAuthenticationManagerResolver test suite")
+class IssuerAuthenticationManagerResolverTest {
+    @Mock private JWTProcessor<SecurityContext> jwtProcessor;
+
+    /** Every token the processor was given, to tell a reused token from one parsed again. */
+    private final @NonNull List<JWT> processed = new CopyOnWriteArrayList<>();
+
+    private final @NonNull AtomicInteger authenticated = new AtomicInteger();
+
+    private IssuerAuthenticationManagerResolver resolver;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(jwtProcessor.process(any(JWT.class), any()))
+                .thenAnswer(
+                        invocation -> {
+                            JWT jwt = invocation.getArgument(0);
+                            processed.add(jwt);
+                            return jwt.getJWTClaimsSet();
+                        });
+        var decoder = new SignedJwtDecoder(jwtProcessor);
+        decoder.setJwtValidator(jwt -> OAuth2TokenValidatorResult.success());
+
+        // Decodes twice, as a token parsed again would reach the processor as another instance
+        AuthenticationManager manager =
+                authentication -> {
+                    authenticated.incrementAndGet();
+                    var token = ((BearerTokenAuthenticationToken) authentication).getToken();
+                    decoder.decode(token);
+                    decoder.decode(token);
+                    return authentication;
+                };
+        resolver =
+                IssuerAuthenticationManagerResolver.builder()
+                        .authenticationManagers(Map.of(ISSUER, manager))
+                        .remoteJWKSets(
+                                List.of(new JWKSourceWithIssuer<>(ISSUER, new ImmutableJWKSet<>(new JWKSet()))))
+                        .enturAuthProperties(new EnturAuthProperties())
+                        .authoritiesConverter(
+                                new TenantJwtGrantedAuthoritiesConverter(new DefaultAuthProviders()))
+                        .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        resolver.close();
+    }
+
+    private Authentication authenticate(final @NonNull String token) {
+        return resolver.resolve(null).authenticate(new BearerTokenAuthenticationToken(token));
+    }
+
+    private void assertRejected(
+            final @NonNull String token, final @NonNull TokenRejection rejection) {
+        assertThatThrownBy(() -> authenticate(token))
+                .isInstanceOfSatisfying(
+                        TokenRejectedException.class, ex -> assertThat(ex.getRejection()).isEqualTo(rejection));
+        assertThat(authenticated).hasValue(0);
+    }
+
+    @Nested
+    @DisplayName("IssuerAuthenticationManagerResolver::authenticate test suite")
+    class AuthenticateTests {
+        @Test
+        void should_hand_parsed_token_to_issuer() {
+            val token = token(ISSUER);
+
+            assertThat(authenticate(token)).isNotNull();
+
+            assertThat(authenticated).hasValue(1);
+            assertThat(processed).hasSize(2);
+            assertThat(processed.get(1)).isSameAs(processed.get(0));
+        }
+
+        @Test
+        void should_reject_token_without_issuer() {
+            assertRejected(token(null), TokenRejection.UNKNOWN_ISSUER);
+        }
+
+        @Test
+        void should_reject_token_of_unknown_issuer() {
+            assertRejected(token("https://unknown"), TokenRejection.UNKNOWN_ISSUER);
+        }
+
+        @Test
+        void should_reject_malformed_token() {
+            assertRejected("not a token", TokenRejection.MALFORMED);
+        }
+
+        @Test
+        void should_clear_parsed_token_after_rejection() throws Exception {
+            val token = token(ISSUER);
+            when(jwtProcessor.process(any(JWT.class), any()))
+                    .thenAnswer(
+                            invocation -> {
+                                processed.add(invocation.getArgument(0));
+                                throw new TokenRejectedException(TokenRejection.BAD_SIGNATURE);
+                            });
+
+            assertThatThrownBy(() -> authenticate(token)).isInstanceOf(TokenRejectedException.class);
+            assertThatThrownBy(() -> new SignedJwtDecoder(jwtProcessor).decode(token))
+                    .isInstanceOf(TokenRejectedException.class);
+
+            assertThat(processed).hasSize(2);
+            assertThat(processed.get(1)).isNotSameAs(processed.get(0));
+        }
+    }
+}
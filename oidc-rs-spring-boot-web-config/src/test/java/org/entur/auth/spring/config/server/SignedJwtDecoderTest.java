@@ -0,0 +1,164 @@
+package org.entur.auth.spring.config.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.JWTProcessor;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.NonNull;
+import lombok.val;
+import org.entur.auth.spring.common.server.TokenRejectedException;
+import org.entur.auth.spring.common.server.TokenRejection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.security.oauth2.core.OAuth2TokenValidatorResult;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("SignedJwtDecoder test suite")
+class SignedJwtDecoderTest {
+    static final String ISSUER = "https://partner.dev.entur.org/";
+    private static final byte[] SECRET =
+            "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    @Mock private JWTProcessor<SecurityContext> jwtProcessor;
+
+    /** Every token the processor was given, to tell a reused token from one parsed again. */
+    private final @NonNull List<JWT> processed = new CopyOnWriteArrayList<>();
+
+    private SignedJwtDecoder decoder;
+
+    static @NonNull String token(final String issuer) {
+        try {
+            var claims = new JWTClaimsSet.Builder().issuer(issuer).subject("subject").build();
+            var jwt = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claims);
+            jwt.sign(new MACSigner(SECRET));
+            return jwt.serialize();
+        } catch (JOSEException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static @NonNull JWT parse(final @NonNull String token) {
+        try {
+            return JWTParser.parse(token);
+        } catch (ParseException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(jwtProcessor.process(any(JWT.class), any()))
+                .thenAnswer(
+                        invocation -> {
+                            JWT jwt = invocation.getArgument(0);
+                            processed.add(jwt);
+                            return jwt.getJWTClaimsSet();
+                        });
+        decoder = new SignedJwtDecoder(jwtProcessor);
+        decoder.setJwtValidator(jwt -> OAuth2TokenValidatorResult.success());
+    }
+
+    @Nested
+    @DisplayName("SignedJwtDecoder::decode test suite")
+    class DecodeTests {
+        @Test
+        void should_reuse_parsed_token() {
+            val token = token(ISSUER);
+            val parsed = parse(token);
+
+            val jwt = SignedJwtDecoder.withParsedToken(token, parsed, () -> decoder.decode(token));
+
+            assertThat(jwt.getClaimAsString("iss")).isEqualTo(ISSUER);
+            assertThat(processed).singleElement().isSameAs(parsed);
+        }
+
+        @Test
+        void should_parse_token_when_none_was_handed_over() {
+            val token = token(ISSUER);
+
+            val jwt = decoder.decode(token);
+
+            assertThat(jwt.getTokenValue()).isEqualTo(token);
+            assertThat(processed).hasSize(1);
+        }
+
+        @Test
+        void should_parse_token_when_other_token_was_handed_over() {
+            val token = token(ISSUER);
+            val parsed = parse(token);
+            val other = token("https://other");
+
+            val jwt = SignedJwtDecoder.withParsedToken(token, parsed, () -> decoder.decode(other));
+
+            assertThat(jwt.getClaimAsString("iss")).isEqualTo("https://other");
+            assertThat(processed).singleElement().isNotSameAs(parsed);
+        }
+
+        @Test
+        void should_reject_malformed_token() {
+            assertThatThrownBy(() -> decoder.decode("not a token"))
+                    .isInstanceOfSatisfying(
+                            TokenRejectedException.class,
+                            ex -> assertThat(ex.getRejection()).isEqualTo(TokenRejection.MALFORMED));
+            assertThat(processed).isEmpty();
+        }
+    }
+
+    @Nested
+    @DisplayName("SignedJwtDecoder::withParsedToken test suite")
+    class WithParsedTokenTests {
+        @Test
+        void should_clear_parsed_token_after_action() {
+            val token = token(ISSUER);
+            val parsed = parse(token);
+
+            SignedJwtDecoder.withParsedToken(token, parsed, () -> decoder.decode(token));
+            decoder.decode(token);
+
+            assertThat(processed).hasSize(2);
+            assertThat(processed.get(1)).isNotSameAs(parsed);
+        }
+
+        @Test
+        void should_clear_parsed_token_after_exception() {
+            val token = token(ISSUER);
+            val parsed = parse(token);
+
+            assertThatThrownBy(
+                            () ->
+                                    SignedJwtDecoder.withParsedToken(
+                                            token,
+                                            parsed,
+                                            () -> {
+                                                throw new IllegalStateException("Failed");
+                                            }))
+                    .isInstanceOf(IllegalStateException.class);
+            decoder.decode(token);
+
+            assertThat(processed).singleElement().isNotSameAs(parsed);
+        }
+    }
+}
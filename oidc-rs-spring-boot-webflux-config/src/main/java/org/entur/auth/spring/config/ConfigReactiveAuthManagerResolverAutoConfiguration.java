@@ -3,15 +3,16 @@ package org.entur.auth.spring.config;
 import com.nimbusds.jose.jwk.source.JWKSetSourceWithHealthStatusReporting;
 import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jose.util.health.HealthReportListener;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.entur.auth.spring.common.metrics.JwksMetrics;
+import org.entur.auth.spring.common.metrics.TokenValidationMetrics;
 import org.entur.auth.spring.common.server.AuthProviders;
 import org.entur.auth.spring.common.server.EnturAuthProperties;
-import org.entur.auth.spring.common.server.JWKSourceWithIssuer;
+import org.entur.auth.spring.common.server.IssuerProperties;
+import org.entur.auth.spring.common.server.JwksReadinessPublisher;
 import org.entur.auth.spring.common.server.ServerCondition;
 import org.entur.auth.spring.common.server.TenantJwtGrantedAuthoritiesConverter;
 import org.entur.auth.spring.config.server.ReactiveIssuerAuthenticationManagerResolver;
@@ -20,11 +21,12 @@ import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.authentication.ReactiveAuthenticationManagerResolver;
+import org.springframework.web.reactive.function.client.WebClient;
 
 @Slf4j
 @Configuration
@@ -41,11 +43,10 @@ public class ConfigReactiveAuthManagerResolverAutoConfiguration {
                     HealthReportListener<
                             JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>>
             healthReportListener;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final ObjectProvider<WebClient.Builder> webClientBuilder;
 
-    private final Map<String, ReactiveAuthenticationManager> authenticationManagers = new HashMap<>();
-    private final List<JWKSourceWithIssuer<?>> remoteJWKSets = new ArrayList<>();
-
-    @Bean
+    @Bean(destroyMethod = "close")
     public ReactiveIssuerAuthenticationManagerResolver reactiveAuthenticationManagerResolver() {
         log.debug("Configure AuthenticationManagerResolver");
         final var authoritiesConverter = new TenantJwtGrantedAuthoritiesConverter(authProviders);
@@ -68,16 +69,44 @@ public class ConfigReactiveAuthManagerResolverAutoConfiguration {
                 authProviders.get(tenantsProperties.getEnvironment(), tenantsProperties.getInclude());
 
         final var managerResolver =
-                new ReactiveIssuerAuthenticationManagerResolver(
-                        authenticationManagers,
-                        remoteJWKSets,
-                        enturAuthProperties,
-                        authoritiesConverter,
-                        listener);
-        environmentIssuerProperties.forEach(managerResolver::addIssuer);
-        issuerProperties.forEach(managerResolver::addIssuer);
-        externalProperties.getFilteredIssuers().forEach(managerResolver::addIssuer);
+                ReactiveIssuerAuthenticationManagerResolver.builder()
+                        .enturAuthProperties(enturAuthProperties)
+                        .authoritiesConverter(authoritiesConverter)
+                        .healthReportListener(listener)
+                        .webClient(webClientBuilder.getIfAvailable(WebClient::builder).build())
+                        .metrics(tokenValidationMetrics())
+                        .jwksMetrics(jwksMetrics())
+                        .build();
+        final var allIssuerProperties = new ArrayList<IssuerProperties>();
+        allIssuerProperties.addAll(environmentIssuerProperties);
+        allIssuerProperties.addAll(issuerProperties);
+        allIssuerProperties.addAll(externalProperties.getFilteredIssuers());
+        managerResolver.addIssuers(allIssuerProperties);
 
         return managerResolver;
     }
+
+    @Bean(initMethod = "publish")
+    public JwksReadinessPublisher jwksReadinessPublisher(
+            final ReactiveIssuerAuthenticationManagerResolver resolver,
+            final ApplicationEventPublisher eventPublisher) {
+        return new JwksReadinessPublisher(resolver, eventPublisher);
+    }
+
+    private TokenValidationMetrics tokenValidationMetrics() {
+        final var registry = meterRegistry.getIfAvailable();
+        if (registry == null || !enturAuthProperties.getMetrics().isEnabled()) {
+            log.info("Token validation metrics not configured");
+            return null;
+        }
+        return new TokenValidationMetrics(registry);
+    }
+
+    private JwksMetrics jwksMetrics() {
+        final var registry = meterRegistry.getIfAvailable();
+        if (registry == null || !enturAuthProperties.getMetrics().isEnabled()) {
+            return null;
+        }
+        return new JwksMetrics(registry);
+    }
 }
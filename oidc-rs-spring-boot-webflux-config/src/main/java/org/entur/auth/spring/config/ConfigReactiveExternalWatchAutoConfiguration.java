@@ -0,0 +1,75 @@
+package org.entur.auth.spring.config;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.entur.auth.spring.common.server.AuthProviders;
+import org.entur.auth.spring.common.server.EnturAuthProperties;
+import org.entur.auth.spring.common.server.ExternalIssuersWatcher;
+import org.entur.auth.spring.common.server.IssuerProperties;
+import org.entur.auth.spring.common.server.ServerExternalCondition;
+import org.entur.auth.spring.config.server.ReactiveIssuerAuthenticationManagerResolver;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.bind.PropertySourcesPlaceholdersResolver;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
+
+@Slf4j
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Conditional(ServerExternalCondition.class)
+@ConditionalOnProperty(name = {"entur.auth.external.resource"})
+@ConditionalOnProperty(name = "entur.auth.external.watch.enabled", havingValue = "true")
+@ConditionalOnBean(ReactiveIssuerAuthenticationManagerResolver.class)
+@AutoConfigureAfter(ConfigReactiveAuthManagerResolverAutoConfiguration.class)
+@RequiredArgsConstructor
+public class ConfigReactiveExternalWatchAutoConfiguration {
+    private final EnturAuthProperties enturAuthProperties;
+    private final AuthProviders authProviders;
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public ExternalIssuersWatcher externalIssuersWatcher(
+            ReactiveIssuerAuthenticationManagerResolver resolver,
+            Environment environment,
+            ResourceLoader resourceLoader)
+            throws IOException {
+        log.debug("Configure ExternalIssuersWatcher");
+        final var externalProperties = enturAuthProperties.getExternal();
+        final var tenantsProperties = enturAuthProperties.getTenants();
+
+        final var resource = resourceLoader.getResource(externalProperties.getResource());
+        if (!resource.isFile()) {
+            throw new IllegalStateException(
+                    "Only an external resource in the file system can be watched: "
+                            + externalProperties.getResource());
+        }
+
+        // Issuers that are not read from the external resource must survive a reload
+        Set<String> protectedIssuers = new HashSet<>();
+        authProviders.get(tenantsProperties.getEnvironment(), tenantsProperties.getInclude()).stream()
+                .map(IssuerProperties::getIssuerUrl)
+                .forEach(protectedIssuers::add);
+        enturAuthProperties.getIssuers().stream()
+                .map(IssuerProperties::getIssuerUrl)
+                .forEach(protectedIssuers::add);
+
+        var placeholdersResolver = new PropertySourcesPlaceholdersResolver(environment);
+        return new ExternalIssuersWatcher(
+                resource.getFile().toPath(),
+                Duration.ofSeconds(externalProperties.getWatch().getDebounce()),
+                ExternalIssuersWatcher.propertiesLoader(
+                        placeholdersResolver, externalProperties.getTenants()),
+                resolver,
+                externalProperties.getFilteredIssuers(),
+                protectedIssuers);
+    }
+}
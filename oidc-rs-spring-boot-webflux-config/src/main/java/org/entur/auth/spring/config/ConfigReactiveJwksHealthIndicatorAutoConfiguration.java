@@ -1,27 +1,20 @@
 package org.entur.auth.spring.config;
 
-import static java.time.Clock.systemDefaultZone;
-import static java.time.Duration.ofSeconds;
-import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type.REACTIVE;
 
-import java.time.Clock;
-import java.util.concurrent.ExecutorService;
 import lombok.NonNull;
-import org.entur.auth.spring.common.health.indicator.jwks.JwksHealthCache;
 import org.entur.auth.spring.common.health.indicator.jwks.JwksHealthIndicator;
+import org.entur.auth.spring.common.health.indicator.jwks.JwksReadinessHealthIndicator;
 import org.entur.auth.spring.common.server.ServerCondition;
+import org.entur.auth.spring.config.health.ReactiveJwksHealthIndicator;
 import org.entur.auth.spring.config.server.ReactiveIssuerAuthenticationManagerResolver;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.boot.health.autoconfigure.contributor.ConditionalOnEnabledHealthIndicator;
 import org.springframework.boot.health.contributor.HealthIndicator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /** Configuration class for a custom health indicator related to JWKS (JSON Web Key Set). */
 @Configuration
@@ -30,33 +23,16 @@ import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 @ConditionalOnWebApplication(type = REACTIVE)
 @ConditionalOnEnabledHealthIndicator("jwks")
 public class ConfigReactiveJwksHealthIndicatorAutoConfiguration {
-    private static final String JWKS_CLOCK_QUALIFIER = "jwksClock";
-    private static final String JWKS_HEALTH_EXECUTOR_QUALIFIER = "jwksHealthExecutor";
-
-    @Bean
-    @ConditionalOnMissingBean(name = JWKS_CLOCK_QUALIFIER)
-    public @NonNull Clock jwksClock() {
-        return systemDefaultZone();
-    }
-
-    @Bean(destroyMethod = "shutdown")
-    @ConditionalOnMissingBean(name = JWKS_HEALTH_EXECUTOR_QUALIFIER)
-    public @NonNull ExecutorService jwksHealthExecutor() {
-        return newSingleThreadExecutor(new CustomizableThreadFactory("jwks-health-"));
-    }
-
-    @Bean
-    @ConditionalOnMissingBean
-    public @NonNull JwksHealthCache jwksHealthCache(
-            final @NonNull @Qualifier(JWKS_CLOCK_QUALIFIER) Clock clock,
-            final @NonNull @Qualifier(JWKS_HEALTH_EXECUTOR_QUALIFIER) ExecutorService executor) {
-        return new JwksHealthCache(clock, executor, ofSeconds(5));
+    @Bean("jwksState")
+    public @NonNull ReactiveJwksHealthIndicator jwksHealthIndicator(
+            final @NonNull ReactiveIssuerAuthenticationManagerResolver resolver) {
+        return new ReactiveJwksHealthIndicator(new JwksHealthIndicator(resolver::getRemoteJWKSets));
     }
 
-    @Bean("jwksState")
-    public @NonNull JwksHealthIndicator jwksHealthIndicator(
-            final @NonNull ReactiveIssuerAuthenticationManagerResolver resolver,
-            final @NonNull JwksHealthCache cache) {
-        return new JwksHealthIndicator(resolver.getRemoteJWKSets(), cache);
+    /** Readiness contributor, to be added to the readiness group as {@code jwksReadinessState}. */
+    @Bean("jwksReadinessState")
+    public @NonNull JwksReadinessHealthIndicator jwksReadinessHealthIndicator(
+            final @NonNull ReactiveIssuerAuthenticationManagerResolver resolver) {
+        return new JwksReadinessHealthIndicator(resolver);
     }
 }
@@ -9,6 +9,7 @@ import org.entur.auth.spring.common.server.ServerCondition;
 import org.entur.auth.spring.config.authorization.ReactiveAuthorizationHelper;
 import org.entur.auth.spring.config.cors.ReactiveCorsHelper;
 import org.entur.auth.spring.config.mdc.ReactiveMdcRequestFilter;
+import org.entur.auth.spring.config.server.ReactiveTokenRejectionEntryPoint;
 import org.entur.auth.spring.webflux.autorization.ReactiveConfigureAuthorizeExchange;
 import org.entur.auth.spring.webflux.cors.ReactiveConfigureCors;
 import org.entur.auth.spring.webflux.mdc.ReactiveConfigureMdcRequestFilter;
@@ -76,6 +77,9 @@ public class ConfigReactiveResourceServerAutoConfiguration {
     public ReactiveConfigureAuth2ResourceServer reactiveConfigureAuth2ResourceServer(
             ReactiveAuthenticationManagerResolver<ServerWebExchange> authenticationManagerResolver) {
         log.debug("Configure Reactive ResourceServer");
-        return configurer -> configurer.authenticationManagerResolver(authenticationManagerResolver);
+        return configurer ->
+                configurer
+                        .authenticationManagerResolver(authenticationManagerResolver)
+                        .authenticationEntryPoint(new ReactiveTokenRejectionEntryPoint());
     }
 }
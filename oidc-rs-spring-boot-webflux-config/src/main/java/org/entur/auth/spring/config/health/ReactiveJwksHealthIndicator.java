@@ -0,0 +1,22 @@
+package org.entur.auth.spring.config.health;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.entur.auth.spring.common.health.indicator.jwks.JwksHealthIndicator;
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.ReactiveHealthIndicator;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive variant of {@link JwksHealthIndicator}. The check only reads the state recorded by the
+ * JWK sources, so it is evaluated on the subscribing thread without blocking.
+ */
+@RequiredArgsConstructor
+public final class ReactiveJwksHealthIndicator implements ReactiveHealthIndicator {
+    private final @NonNull JwksHealthIndicator jwksHealthIndicator;
+
+    @Override
+    public Mono<Health> health() {
+        return Mono.fromSupplier(jwksHealthIndicator::health);
+    }
+}
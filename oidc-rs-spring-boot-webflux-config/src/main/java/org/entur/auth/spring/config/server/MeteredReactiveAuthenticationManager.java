@@ -0,0 +1,27 @@
+package org.entur.auth.spring.config.server;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.entur.auth.spring.common.metrics.TokenValidationMetrics.IssuerMetrics;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.core.Authentication;
+import reactor.core.publisher.Mono;
+
+/** Records the latency and outcome of every authentication of an issuer's tokens. */
+@RequiredArgsConstructor
+final class MeteredReactiveAuthenticationManager implements ReactiveAuthenticationManager {
+    private final @NonNull ReactiveAuthenticationManager delegate;
+    private final @NonNull IssuerMetrics metrics;
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        return Mono.defer(
+                () -> {
+                    var start = metrics.start();
+                    return delegate
+                            .authenticate(authentication)
+                            .doOnSuccess(result -> metrics.success(start))
+                            .doOnError(ex -> metrics.failure(start, ex));
+                });
+    }
+}
@@ -1,51 +1,72 @@
 package org.entur.auth.spring.config.server;
 
+import static com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator.noRefresh;
+
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.KeySourceException;
-import com.nimbusds.jose.jwk.JWK;
-import com.nimbusds.jose.jwk.JWKMatcher;
-import com.nimbusds.jose.jwk.JWKSelector;
-import com.nimbusds.jose.jwk.KeyType;
-import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSetBasedJWKSource;
+import com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
 import com.nimbusds.jose.jwk.source.JWKSetSourceWithHealthStatusReporting;
-import com.nimbusds.jose.jwk.source.JWKSource;
-import com.nimbusds.jose.jwk.source.JWKSourceBuilder;
+import com.nimbusds.jose.proc.BadJOSEException;
 import com.nimbusds.jose.proc.JWKSecurityContext;
-import com.nimbusds.jose.proc.JWSVerificationKeySelector;
 import com.nimbusds.jose.proc.SecurityContext;
-import com.nimbusds.jose.util.DefaultResourceRetriever;
 import com.nimbusds.jose.util.health.HealthReportListener;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.entur.auth.spring.common.metrics.JwksMetrics;
 import org.entur.auth.spring.common.server.AudienceValidator;
+import org.entur.auth.spring.common.server.CachingJWSKeySelector;
+import org.entur.auth.spring.common.server.CachingJWSVerifierFactory;
+import org.entur.auth.spring.common.server.ClaimsPreCheck;
+import org.entur.auth.spring.common.server.ClassifyingJwtValidator;
 import org.entur.auth.spring.common.server.EnturAuthProperties;
 import org.entur.auth.spring.common.server.IssuerProperties;
 import org.entur.auth.spring.common.server.JWKSourceWithIssuer;
+import org.entur.auth.spring.common.server.JwksReadiness;
+import org.entur.auth.spring.common.server.TokenRejectedException;
+import org.entur.auth.spring.common.server.UnknownKeyIdRefresh;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
 import org.springframework.security.oauth2.core.OAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.BadJwtException;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtException;
 import org.springframework.security.oauth2.jwt.JwtValidators;
 import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
 import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
 import org.springframework.security.oauth2.server.resource.authentication.JwtReactiveAuthenticationManager;
 import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverterAdapter;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 @Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class ReactiveAuthenticationManagerFactory {
+    /**
+     * @deprecated use {@link #add(Map, List, IssuerProperties, ReactiveAuthenticationManagerOptions)}
+     */
+    @Deprecated
     public static void add(
             Map<String, ReactiveAuthenticationManager> authenticationManagers,
             List<JWKSourceWithIssuer<?>> remoteJWKSets,
@@ -54,6 +75,38 @@ public class ReactiveAuthenticationManagerFactory {
             @NonNull Converter<Jwt, Collection<GrantedAuthority>> jwtGrantedAuthoritiesConverter,
             HealthReportListener<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
                     healthReportListener) {
+        add(
+                authenticationManagers,
+                remoteJWKSets,
+                provider,
+                ReactiveAuthenticationManagerOptions.builder()
+                        .enturAuthProperties(enturAuthProperties)
+                        .jwtGrantedAuthoritiesConverter(jwtGrantedAuthoritiesConverter)
+                        .healthReportListener(healthReportListener)
+                        .webClient(WebClient.create())
+                        .build());
+    }
+
+    /**
+     * Create the authentication manager and JWK source of an issuer.
+     *
+     * @param authenticationManagers the authentication manager is put here by issuer
+     * @param remoteJWKSets the JWK source is added here
+     * @param provider the issuer, with its overrides of the cache settings
+     * @param options shared by every issuer
+     */
+    public static void add(
+            Map<String, ReactiveAuthenticationManager> authenticationManagers,
+            List<JWKSourceWithIssuer<?>> remoteJWKSets,
+            IssuerProperties provider,
+            @NonNull ReactiveAuthenticationManagerOptions options) {
+        var enturAuthProperties = options.getEnturAuthProperties();
+        var jwtGrantedAuthoritiesConverter = options.getJwtGrantedAuthoritiesConverter();
+        var healthReportListener = options.getHealthReportListener();
+        var webClient = options.getWebClient();
+        var metrics = options.getMetrics();
+        var jwksMetrics = options.getJwksMetrics();
+        var snapshotStore = options.getSnapshotStore();
 
         long cacheLifespan =
                 (provider.getCacheLifespan() != null
@@ -75,56 +128,87 @@ public class ReactiveAuthenticationManagerFactory {
                 provider.getRetryOnFailure() != null
                         ? provider.getRetryOnFailure()
                         : enturAuthProperties.isRetryOnFailure();
+        long outageTolerant =
+                provider.getOutageTolerant() != null
+                        ? provider.getOutageTolerant()
+                        : enturAuthProperties.getOutageTolerant();
+        boolean cacheControl =
+                provider.getCacheControl() != null
+                        ? provider.getCacheControl()
+                        : enturAuthProperties.isCacheControl();
 
+        var issuerJwksMetrics =
+                jwksMetrics != null ? jwksMetrics.forIssuer(provider.getIssuerUrl()) : null;
+        var readiness =
+                new JwksReadiness(
+                        Duration.ofSeconds(cacheLifespan > 0 ? outageTolerant : 0),
+                        Boolean.TRUE.equals(enturAuthProperties.getLazyLoad()));
         try {
-            final JWKSourceBuilder<SecurityContext> jwkSourceBuilder;
-            var resourceRetriever =
-                    new DefaultResourceRetriever(
-                            enturAuthProperties.getConnectTimeout() * 1000,
-                            enturAuthProperties.getReadTimeout() * 1000);
-            if (cacheLifespan <= 0) {
-                jwkSourceBuilder =
-                        JWKSourceBuilder.create(new URL(provider.getCertificateUrl()), resourceRetriever)
-                                .cache(Long.MAX_VALUE, cacheRefreshTimeout * 1000)
-                                .refreshAheadCache(false)
-                                .rateLimited(jwksThrottleWait * 1000)
-                                .retrying(retryOnFailure)
-                                .outageTolerant(false);
-            } else {
-                jwkSourceBuilder =
-                        JWKSourceBuilder.create(new URL(provider.getCertificateUrl()), resourceRetriever)
-                                .cache(cacheLifespan * 1000, cacheRefreshTimeout * 1000)
-                                .refreshAheadCache(refreshAheadTime * 1000, true)
-                                .rateLimited(jwksThrottleWait * 1000)
-                                .retrying(retryOnFailure)
-                                .outageTolerantForever();
-            }
-
-            if (healthReportListener != null) {
-                jwkSourceBuilder.healthReporting(healthReportListener);
-            }
+            var jwkSetSource =
+                    ReactiveJWKSetSource.builder()
+                            .webClient(webClient)
+                            .certificateUrl(new URL(provider.getCertificateUrl()).toString())
+                            .timeToLive(
+                                    cacheLifespan <= 0
+                                            ? Duration.ofMillis(Long.MAX_VALUE)
+                                            : Duration.ofSeconds(cacheLifespan))
+                            .refreshAheadTime(
+                                    cacheLifespan <= 0 ? Duration.ZERO : Duration.ofSeconds(refreshAheadTime))
+                            .minTimeInterval(Duration.ofSeconds(jwksThrottleWait))
+                            .timeout(
+                                    Duration.ofSeconds(
+                                            enturAuthProperties.getConnectTimeout()
+                                                    + enturAuthProperties.getReadTimeout()))
+                            .retrying(retryOnFailure)
+                            .outageTolerant(cacheLifespan > 0)
+                            .cacheControl(cacheControl)
+                            .healthReportListener(
+                                    JwksMetrics.withMetrics(healthReportListener, issuerJwksMetrics))
+                            .jwksMetrics(issuerJwksMetrics)
+                            .readiness(readiness)
+                            .snapshotStore(cacheLifespan > 0 ? snapshotStore : null)
+                            .issuerUrl(provider.getIssuerUrl())
+                            .snapshotMaxAge(Duration.ofSeconds(outageTolerant))
+                            .build();
 
             var jwkSource =
                     new JWKSourceWithIssuer<JWKSecurityContext>(
-                            provider.getIssuerUrl(), jwkSourceBuilder.build());
+                            provider.getIssuerUrl(), new JWKSetBasedJWKSource<>(jwkSetSource), readiness);
             remoteJWKSets.add(jwkSource);
 
-            // Create selector
-            final JWSVerificationKeySelector<JWKSecurityContext> keySelector;
+            // Accept the algorithms of the published keys, selected from an index per kid
+            final Set<JWSAlgorithm> algorithms;
             if (Boolean.TRUE.equals(enturAuthProperties.getLazyLoad())) {
-                log.info("Notice: Lazy load of JWKS only supports RSA algorithms");
-                keySelector = new JWSVerificationKeySelector<>(JWSAlgorithm.Family.RSA, jwkSource);
+                // The key type follows the token's alg and the JWK set retrieved on first use
+                algorithms = CachingJWSKeySelector.ASYMMETRIC_ALGORITHMS;
             } else {
-                keySelector = fromJWKSource(jwkSource);
+                algorithms =
+                        CachingJWSKeySelector.algorithmsFromJWKSet(
+                                jwkSetSource.getJWKSet(noRefresh(), System.currentTimeMillis(), null));
             }
 
             NimbusReactiveJwtDecoder jwtDecoder =
-                    createNimbusJwtDecoder(enturAuthProperties, provider, keySelector);
+                    createNimbusJwtDecoder(
+                            enturAuthProperties,
+                            provider,
+                            jwkSetSource,
+                            algorithms,
+                            new UnknownKeyIdRefresh(
+                                    enturAuthProperties.getUnknownKid(),
+                                    enturAuthProperties.getReadTimeout(),
+                                    issuerJwksMetrics));
             JwtReactiveAuthenticationManager authenticationProvider =
-                    createJwtAuthenticationProvider(jwtGrantedAuthoritiesConverter, jwtDecoder);
+                    createJwtAuthenticationProvider(
+                            jwtGrantedAuthoritiesConverter, rejectingJwtDecoder(jwtDecoder));
 
             // Add AuthenticationManager to map
-            authenticationManagers.put(provider.getIssuerUrl(), authenticationProvider);
+            ReactiveAuthenticationManager authenticationManager = authenticationProvider;
+            if (metrics != null) {
+                authenticationManager =
+                        new MeteredReactiveAuthenticationManager(
+                                authenticationManager, metrics.forIssuer(provider.getIssuerUrl()));
+            }
+            authenticationManagers.put(provider.getIssuerUrl(), authenticationManager);
 
             log.info(
                     "Added authorization server: issuerUri = {}, cacheLifespan:  = {}, cacheRefreshTimeout = {}, refreshAheadTime = {}, jwksThrottleWait = {}, lazyLoad = {}, certificateUrl = {}",
@@ -150,27 +234,6 @@ public class ReactiveAuthenticationManagerFactory {
         }
     }
 
-    private static <C extends SecurityContext> JWSVerificationKeySelector<C> fromJWKSource(
-            final JWKSource<C> jwkSource) throws KeySourceException {
-
-        JWKMatcher jwkMatcher =
-                new JWKMatcher.Builder()
-                        .publicOnly(true)
-                        .keyUses(KeyUse.SIGNATURE, null) // use=sig is optional
-                        .keyTypes(KeyType.RSA, KeyType.EC)
-                        .build();
-        List<? extends JWK> jwks = jwkSource.get(new JWKSelector(jwkMatcher), null);
-        for (JWK jwk : jwks) {
-            if (KeyType.RSA.equals(jwk.getKeyType())) {
-                return new JWSVerificationKeySelector<>(JWSAlgorithm.Family.RSA, jwkSource);
-            }
-            if (KeyType.EC.equals(jwk.getKeyType())) {
-                return new JWSVerificationKeySelector<>(JWSAlgorithm.Family.EC, jwkSource);
-            }
-        }
-        throw new KeySourceException("Couldn't retrieve JWKs");
-    }
-
     private static JwtReactiveAuthenticationManager createJwtAuthenticationProvider(
             Converter<Jwt, Collection<GrantedAuthority>> jwtGrantedAuthoritiesConverter,
             ReactiveJwtDecoder decoder) {
@@ -188,15 +251,30 @@ public class ReactiveAuthenticationManagerFactory {
         return authenticationManager;
     }
 
+    /**
+     * Report tokens rejected by {@code jwtDecoder} through a stackless {@link
+     * TokenRejectedException}, which {@link JwtReactiveAuthenticationManager} passes on as it is
+     * instead of wrapping the {@link BadJwtException} in another {@code InvalidBearerTokenException}.
+     */
+    private static ReactiveJwtDecoder rejectingJwtDecoder(final ReactiveJwtDecoder jwtDecoder) {
+        return token -> {
+            try {
+                return jwtDecoder
+                        .decode(token)
+                        .onErrorMap(BadJwtException.class, TokenRejectedException::of);
+            } catch (BadJwtException ex) {
+                return Mono.error(TokenRejectedException.of(ex));
+            }
+        };
+    }
+
     private static NimbusReactiveJwtDecoder createNimbusJwtDecoder(
             EnturAuthProperties enturAuthProperties,
             IssuerProperties provider,
-            JWSVerificationKeySelector<JWKSecurityContext> keySelector) {
+            ReactiveJWKSetSource jwkSetSource,
+            Set<JWSAlgorithm> algorithms,
+            UnknownKeyIdRefresh unknownKeyIdRefresh) {
 
-        NimbusReactiveJwtDecoder jwtDecoder =
-                NimbusReactiveJwtDecoder.withJwkSetUri(provider.getCertificateUrl())
-                        .jwtProcessorCustomizer(processor -> processor.setJWSKeySelector(keySelector))
-                        .build();
         var apis = enturAuthProperties.getApis();
         var audiences =
                 apis.stream()
@@ -205,15 +283,154 @@ public class ReactiveAuthenticationManagerFactory {
                                         Objects.equals(provider.getIssuerUrl(), apiProperties.getIssuerUrl()))
                         .flatMap(apiProperties -> apiProperties.getAudiences().stream())
                         .collect(Collectors.toSet());
+        var claimsPreCheck =
+                enturAuthProperties.getPreCheck().isEnabled()
+                        ? new ClaimsPreCheck(
+                                enturAuthProperties.getPreCheck(), provider.getIssuerUrl(), audiences)
+                        : null;
+
+        NimbusReactiveJwtDecoder jwtDecoder =
+                new NimbusReactiveJwtDecoder(
+                        createJwtProcessor(jwkSetSource, algorithms, claimsPreCheck, unknownKeyIdRefresh));
 
+        OAuth2TokenValidator<Jwt> jwtValidator = JwtValidators.createDefault();
         if (!audiences.isEmpty()) {
             OAuth2TokenValidator<Jwt> audienceValidator = new AudienceValidator(audiences);
             OAuth2TokenValidator<Jwt> withIssuer =
                     JwtValidators.createDefaultWithIssuer(provider.getIssuerUrl());
-            OAuth2TokenValidator<Jwt> withAudience =
-                    new DelegatingOAuth2TokenValidator<>(withIssuer, audienceValidator);
-            jwtDecoder.setJwtValidator(withAudience);
+            jwtValidator = new DelegatingOAuth2TokenValidator<>(withIssuer, audienceValidator);
         }
+        // Rejections are classified by the claims of the token, not by the errors of the validators
+        jwtDecoder.setJwtValidator(
+                new ClassifyingJwtValidator(jwtValidator, provider.getIssuerUrl(), audiences));
         return jwtDecoder;
     }
+
+    /**
+     * Process signed tokens with keys and verifiers cached per kid, retrieving the JWK set again once
+     * if no key matches, for instance after a key rotation, in a refresh shared by all tokens with an
+     * unknown kid. Tokens still without a key are rejected without reaching the processor. Claims are
+     * left to the Spring Security validators, as in {@link NimbusReactiveJwtDecoder#withJwkSource},
+     * after the optional claims pre-check has rejected tokens that would fail them before any key is
+     * looked up.
+     */
+    private static Converter<JWT, Mono<JWTClaimsSet>> createJwtProcessor(
+            final ReactiveJWKSetSource jwkSetSource,
+            final Set<JWSAlgorithm> algorithms,
+            final ClaimsPreCheck claimsPreCheck,
+            final UnknownKeyIdRefresh unknownKeyIdRefresh) {
+        var keySelector = new CachingJWSKeySelector<>(algorithms, JWKSetSecurityContext.JWK_SET_SOURCE);
+        DefaultJWTProcessor<JWKSetSecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(keySelector);
+        jwtProcessor.setJWSVerifierFactory(new CachingJWSVerifierFactory());
+        jwtProcessor.setJWSTypeVerifier((type, context) -> {});
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {});
+
+        return jwt -> {
+            if (!(jwt instanceof SignedJWT signedJwt)) {
+                return Mono.error(
+                        new BadJwtException("Unsupported algorithm of " + jwt.getHeader().getAlgorithm()));
+            }
+            if (claimsPreCheck != null) {
+                try {
+                    claimsPreCheck.verify(signedJwt);
+                } catch (ClaimsPreCheck.ClaimsPreCheckException ex) {
+                    return Mono.error(ex);
+                }
+            }
+
+            return jwkSetSource
+                    .getJWKSet(false)
+                    .flatMap(
+                            jwkSet ->
+                                    hasKeys(keySelector, signedJwt, jwkSet)
+                                            ? Mono.just(jwkSet)
+                                            : refresh(jwkSetSource, unknownKeyIdRefresh, jwkSet)
+                                                    .filter(refreshed -> hasKeys(keySelector, signedJwt, refreshed))
+                                                    .switchIfEmpty(
+                                                            Mono.error(ReactiveAuthenticationManagerFactory::noMatchingKey)))
+                    .map(jwkSet -> process(jwtProcessor, signedJwt, jwkSet));
+        };
+    }
+
+    /**
+     * Refresh the JWK set on an unknown kid, sharing one rate limited refresh between tokens. Tokens
+     * stop waiting for a refresh started by another token after the wait budget, and are verified
+     * against the current JWK set.
+     */
+    private static Mono<JWKSet> refresh(
+            final ReactiveJWKSetSource jwkSetSource,
+            final UnknownKeyIdRefresh unknownKeyIdRefresh,
+            final JWKSet current) {
+        return Mono.defer(
+                () -> {
+                    var refresh =
+                            unknownKeyIdRefresh.refreshAsync(() -> jwkSetSource.getJWKSet(true).toFuture());
+                    if (refresh == null) {
+                        return Mono.just(current);
+                    }
+                    // Giving up on the wait must not cancel the refresh other tokens wait for
+                    return Mono.fromFuture(refresh, true)
+                            .timeout(unknownKeyIdRefresh.getMaxWait(), Mono.just(current));
+                });
+    }
+
+    /**
+     * Reject a token whose kid is not in the JWK set with a {@link KeySourceException} as cause, so
+     * the rejection is not cached while the JWK set may still be rotating.
+     */
+    private static BadJwtException noMatchingKey() {
+        return new BadJwtException(
+                "Failed to validate the token",
+                new KeySourceException("No key matching the token in the JWK set"));
+    }
+
+    private static boolean hasKeys(
+            final CachingJWSKeySelector<JWKSetSecurityContext> keySelector,
+            final SignedJWT signedJwt,
+            final JWKSet jwkSet) {
+        try {
+            return !keySelector
+                    .selectJWSKeys(signedJwt.getHeader(), new JWKSetSecurityContext(jwkSet))
+                    .isEmpty();
+        } catch (KeySourceException ex) {
+            return false;
+        }
+    }
+
+    private static JWTClaimsSet process(
+            final DefaultJWTProcessor<JWKSetSecurityContext> jwtProcessor,
+            final SignedJWT signedJwt,
+            final JWKSet jwkSet) {
+        try {
+            return jwtProcessor.process(signedJwt, new JWKSetSecurityContext(jwkSet));
+        } catch (BadJOSEException ex) {
+            throw new BadJwtException("Failed to validate the token", ex);
+        } catch (JOSEException ex) {
+            throw new JwtException("Failed to validate the token", ex);
+        }
+    }
+
+    /** Security context carrying the JWK set retrieved for the token being processed. */
+    private record JWKSetSecurityContext(@NonNull JWKSet jwkSet) implements SecurityContext {
+        static final JWKSetSource<JWKSetSecurityContext> JWK_SET_SOURCE =
+                new JWKSetSource<>() {
+                    @Override
+                    public JWKSet getJWKSet(
+                            final JWKSetCacheRefreshEvaluator refreshEvaluator,
+                            final long currentTime,
+                            final JWKSetSecurityContext context)
+                            throws KeySourceException {
+                        if (context == null) {
+                            throw new KeySourceException("Missing JWK set");
+                        }
+                        return context.jwkSet();
+                    }
+
+                    @Override
+                    public void close() {
+                        // Nothing to release, the JWK set is owned by the context
+                    }
+                };
+    }
 }
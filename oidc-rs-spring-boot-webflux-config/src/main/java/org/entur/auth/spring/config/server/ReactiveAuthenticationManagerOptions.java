@@ -0,0 +1,47 @@
+package org.entur.auth.spring.config.server;
+
+import com.nimbusds.jose.jwk.source.JWKSetSourceWithHealthStatusReporting;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.health.HealthReportListener;
+import java.util.Collection;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import org.entur.auth.spring.common.metrics.JwksMetrics;
+import org.entur.auth.spring.common.metrics.TokenValidationMetrics;
+import org.entur.auth.spring.common.server.EnturAuthProperties;
+import org.entur.auth.spring.common.server.JwksSnapshotStore;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * What {@link ReactiveAuthenticationManagerFactory} needs besides the {@code IssuerProperties} of
+ * the issuer, shared by every issuer added with the same options. Everything but the properties,
+ * the authorities converter and the client is optional.
+ */
+@Value
+@Builder
+public class ReactiveAuthenticationManagerOptions {
+    @NonNull EnturAuthProperties enturAuthProperties;
+    @NonNull Converter<Jwt, Collection<GrantedAuthority>> jwtGrantedAuthoritiesConverter;
+
+    HealthReportListener<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+            healthReportListener;
+
+    /** Client retrieving the JWKS, shared between issuers so they share its connections. */
+    @NonNull WebClient webClient;
+
+    /** Records validation latency and outcome per issuer, {@code null} to disable. */
+    TokenValidationMetrics metrics;
+
+    /** Records JWKS cache state per issuer, {@code null} to disable. */
+    JwksMetrics jwksMetrics;
+
+    /**
+     * Starts from a snapshot of the JWKS no older than {@code outageTolerant}, and saves every
+     * retrieved JWKS, {@code null} to disable.
+     */
+    JwksSnapshotStore snapshotStore;
+}
@@ -3,38 +3,69 @@ package org.entur.auth.spring.config.server;
 import com.nimbusds.jose.jwk.source.JWKSetSourceWithHealthStatusReporting;
 import com.nimbusds.jose.proc.SecurityContext;
 import com.nimbusds.jose.util.health.HealthReportListener;
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
-import lombok.Getter;
+import lombok.Builder;
 import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.entur.auth.spring.common.metrics.JwksMetrics;
+import org.entur.auth.spring.common.metrics.TokenValidationMetrics;
+import org.entur.auth.spring.common.metrics.TokenValidationOutcome;
 import org.entur.auth.spring.common.server.EnturAuthProperties;
+import org.entur.auth.spring.common.server.IssuerBootstrap;
 import org.entur.auth.spring.common.server.IssuerProperties;
+import org.entur.auth.spring.common.server.IssuerRegistry;
 import org.entur.auth.spring.common.server.JWKSourceWithIssuer;
+import org.entur.auth.spring.common.server.JwksSnapshotStore;
+import org.entur.auth.spring.common.server.RejectedTokenCache;
+import org.entur.auth.spring.common.server.SupportsIssuerUpdates;
 import org.entur.auth.spring.common.server.SupportsReadiness;
 import org.entur.auth.spring.common.server.TenantJwtGrantedAuthoritiesConverter;
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
 import org.springframework.security.authentication.ReactiveAuthenticationManagerResolver;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
 import org.springframework.security.oauth2.server.resource.authentication.JwtIssuerReactiveAuthenticationManagerResolver;
+import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
+@Slf4j
 public final class ReactiveIssuerAuthenticationManagerResolver
-        implements ReactiveAuthenticationManagerResolver<ServerWebExchange>, SupportsReadiness {
+        implements ReactiveAuthenticationManagerResolver<ServerWebExchange>,
+                SupportsReadiness,
+                SupportsIssuerUpdates,
+                Closeable {
 
-    private final Map<String, ReactiveAuthenticationManager> authenticationManagers;
-    private final @Getter List<JWKSourceWithIssuer<?>> remoteJWKSets;
+    private final IssuerRegistry<ReactiveAuthenticationManager> registry = new IssuerRegistry<>();
     private final EnturAuthProperties enturAuthProperties;
+    private final IssuerBootstrap bootstrap;
+    private volatile Runnable readinessListener = () -> {};
     private final TenantJwtGrantedAuthoritiesConverter authoritiesConverter;
     private final HealthReportListener<
                     JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
             healthReportListener;
+    private final WebClient webClient;
+    private final RejectedTokenCache rejectedTokenCache;
+    private final TokenValidationMetrics metrics;
+    private final JwksMetrics jwksMetrics;
+    private final JwksSnapshotStore snapshotStore;
     private final ReactiveAuthenticationManagerResolver<ServerWebExchange>
             authenticationManagerResolver;
 
+    /**
+     * @param authenticationManagers initial authentication managers by issuer, copied
+     * @param remoteJWKSets JWK sources of the initial authentication managers, copied
+     * @deprecated use {@code builder()}
+     */
+    @Deprecated
     public ReactiveIssuerAuthenticationManagerResolver(
             @NonNull Map<String, ReactiveAuthenticationManager> authenticationManagers,
             @NonNull List<JWKSourceWithIssuer<?>> remoteJWKSets,
@@ -42,48 +73,276 @@ public final class ReactiveIssuerAuthenticationManagerResolver
             @NonNull TenantJwtGrantedAuthoritiesConverter authoritiesConverter,
             HealthReportListener<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
                     healthReportListener) {
+        this(
+                authenticationManagers,
+                remoteJWKSets,
+                enturAuthProperties,
+                authoritiesConverter,
+                healthReportListener,
+                null,
+                null,
+                null);
+    }
+
+    /**
+     * @param authenticationManagers initial authentication managers by issuer, copied, {@code null}
+     *     for none
+     * @param remoteJWKSets JWK sources of the initial authentication managers, copied, {@code null}
+     *     for none
+     * @param webClient client retrieving the JWKS of every issuer, {@code null} for {@link
+     *     WebClient#create()}
+     * @param metrics records validation latency and outcome per issuer, {@code null} to disable
+     * @param jwksMetrics records JWKS cache state per issuer, {@code null} to disable
+     */
+    @Builder
+    private ReactiveIssuerAuthenticationManagerResolver(
+            Map<String, ReactiveAuthenticationManager> authenticationManagers,
+            List<JWKSourceWithIssuer<?>> remoteJWKSets,
+            @NonNull EnturAuthProperties enturAuthProperties,
+            @NonNull TenantJwtGrantedAuthoritiesConverter authoritiesConverter,
+            HealthReportListener<JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+                    healthReportListener,
+            WebClient webClient,
+            TokenValidationMetrics metrics,
+            JwksMetrics jwksMetrics) {
 
-        this.authenticationManagers = authenticationManagers;
-        this.remoteJWKSets = new ArrayList<>(remoteJWKSets);
+        if (remoteJWKSets != null && authenticationManagers != null) {
+            remoteJWKSets.forEach(
+                    jwkSource -> {
+                        var manager = authenticationManagers.get(jwkSource.getIssuerUrl());
+                        if (manager != null) {
+                            registry.add(
+                                    jwkSource.getIssuerUrl(), new IssuerRegistry.Registration<>(manager, jwkSource));
+                            track(jwkSource);
+                        }
+                    });
+        }
         this.enturAuthProperties = enturAuthProperties;
+        this.bootstrap =
+                new IssuerBootstrap(enturAuthProperties.getBootstrap(), this::readinessChanged);
         this.authoritiesConverter = authoritiesConverter;
         this.healthReportListener = healthReportListener;
+        this.webClient = webClient != null ? webClient : WebClient.create();
+        this.rejectedTokenCache =
+                enturAuthProperties.getRejectedTokenCache().isEnabled()
+                        ? new RejectedTokenCache(enturAuthProperties.getRejectedTokenCache())
+                        : null;
+        this.metrics = metrics;
+        this.jwksMetrics = jwksMetrics;
+        this.snapshotStore =
+                enturAuthProperties.getJwksSnapshot().isEnabled()
+                        ? new JwksSnapshotStore(enturAuthProperties.getJwksSnapshot())
+                        : null;
 
         this.authenticationManagerResolver =
                 new JwtIssuerReactiveAuthenticationManagerResolver(
-                        issuer -> Mono.justOrEmpty(authenticationManagers.get(issuer)));
+                        issuer -> Mono.justOrEmpty(resolveIssuer(issuer)));
     }
 
     @Override
     public Mono<ReactiveAuthenticationManager> resolve(ServerWebExchange exchange) {
-        return authenticationManagerResolver.resolve(exchange);
+        if (rejectedTokenCache == null) {
+            return authenticationManagerResolver.resolve(exchange);
+        }
+        return Mono.just(authentication -> authenticate(exchange, authentication));
+    }
+
+    /**
+     * Answer recently rejected tokens from the {@link RejectedTokenCache}, before the issuer of the
+     * token is resolved.
+     */
+    private Mono<Authentication> authenticate(
+            ServerWebExchange exchange, Authentication authentication) {
+        var authenticationManager = authenticationManagerResolver.resolve(exchange);
+        if (!(authentication instanceof BearerTokenAuthenticationToken bearer)) {
+            return authenticationManager.flatMap(manager -> manager.authenticate(authentication));
+        }
+
+        var rejection = rejectedTokenCache.get(bearer.getToken());
+        if (rejection != null) {
+            if (metrics != null) {
+                metrics.rejectedCacheHit();
+            }
+            return Mono.error(rejection);
+        }
+
+        return authenticationManager
+                .flatMap(manager -> manager.authenticate(authentication))
+                .doOnError(
+                        AuthenticationException.class, ex -> rejectedTokenCache.put(bearer.getToken(), ex));
+    }
+
+    private ReactiveAuthenticationManager resolveIssuer(String issuer) {
+        var authenticationManager = registry.get(issuer);
+        if (authenticationManager == null && metrics != null) {
+            // Rejected by Spring Security once the issuer is resolved, without further work to time
+            var unknownIssuer = metrics.unknownIssuer();
+            unknownIssuer.record(unknownIssuer.start(), TokenValidationOutcome.UNKNOWN_ISSUER);
+        }
+        return authenticationManager;
+    }
+
+    public List<JWKSourceWithIssuer<?>> getRemoteJWKSets() {
+        return registry.getJWKSources();
     }
 
     public Set<String> getIssuers() {
-        return remoteJWKSets.stream()
-                .map(JWKSourceWithIssuer::getIssuerUrl)
-                .collect(Collectors.toSet());
+        return registry.getIssuers();
     }
 
     public boolean getReadiness() {
-        return remoteJWKSets.stream().allMatch(JWKSourceWithIssuer::getReadiness);
+        return bootstrap.isComplete()
+                && registry.getJWKSources().stream().allMatch(JWKSourceWithIssuer::getReadiness);
+    }
+
+    /**
+     * Add issuers with their JWKS retrieved concurrently, as configured by {@code
+     * entur.auth.bootstrap}. Issuers not added by the deadline are added in the background, and hold
+     * readiness until then.
+     */
+    public void addIssuers(@NonNull Collection<IssuerProperties> issuerProperties) {
+        bootstrap.addAll(issuerProperties, this::addIssuer);
+    }
+
+    @Override
+    public void setReadinessListener(@NonNull Runnable listener) {
+        this.readinessListener = listener;
     }
 
     public void addIssuer(@NonNull IssuerProperties issuerProperties) {
-        if (remoteJWKSets.stream()
-                .anyMatch(
-                        jwkSourceWithIssuer ->
-                                Objects.equals(
-                                        jwkSourceWithIssuer.getIssuerUrl(), issuerProperties.getIssuerUrl()))) {
+        if (registry.contains(issuerProperties.getIssuerUrl())) {
             return;
         }
 
+        var registration = createRegistration(issuerProperties);
+        if (!registry.add(issuerProperties.getIssuerUrl(), registration)) {
+            close(registration);
+            return;
+        }
+        issuersChanged();
+        readinessChanged();
+    }
+
+    /**
+     * Remove an issuer, so its tokens are no longer accepted.
+     *
+     * @return {@code true} if the issuer was removed, {@code false} if it was not registered
+     */
+    public boolean removeIssuer(@NonNull String issuerUrl) {
+        var removed = registry.remove(issuerUrl);
+        if (removed == null) {
+            return false;
+        }
+
+        remove(removed);
+        readinessChanged();
+        return true;
+    }
+
+    /**
+     * Add an issuer, or replace it with new properties. The new authentication manager is created
+     * first and then swapped in, so tokens of the issuer are accepted throughout, and the JWK source
+     * of the replaced one is closed.
+     */
+    public void replaceIssuer(@NonNull IssuerProperties issuerProperties) {
+        var registration = createRegistration(issuerProperties);
+        var replaced = registry.put(issuerProperties.getIssuerUrl(), registration);
+        if (replaced != null) {
+            // Same issuer, so its authorities stay registered
+            close(replaced);
+        }
+        issuersChanged();
+        readinessChanged();
+    }
+
+    /**
+     * Replace every issuer in one step. Issuers that are already registered keep their authentication
+     * manager and cached JWK set.
+     */
+    public void replaceIssuers(@NonNull Collection<IssuerProperties> issuerProperties) {
+        Map<String, IssuerRegistry.Registration<ReactiveAuthenticationManager>> registrations =
+                new HashMap<>();
+        for (IssuerProperties properties : issuerProperties) {
+            var existing = registry.getRegistration(properties.getIssuerUrl());
+            registrations.putIfAbsent(
+                    properties.getIssuerUrl(), existing != null ? existing : createRegistration(properties));
+        }
+
+        registry.replace(registrations).forEach(this::remove);
+        issuersChanged();
+        readinessChanged();
+    }
+
+    /**
+     * Stop adding issuers in the background, close the JWK sources of every issuer and finish writing
+     * JWKS snapshots.
+     */
+    @Override
+    public void close() {
+        bootstrap.close();
+        registry.replace(Map.of()).forEach(this::remove);
+        if (snapshotStore != null) {
+            snapshotStore.close();
+        }
+    }
+
+    private IssuerRegistry.Registration<ReactiveAuthenticationManager> createRegistration(
+            IssuerProperties issuerProperties) {
+        Map<String, ReactiveAuthenticationManager> authenticationManagers = new HashMap<>();
+        List<JWKSourceWithIssuer<?>> remoteJWKSets = new ArrayList<>();
+        authoritiesConverter.addIssuer(issuerProperties.getIssuerUrl());
         ReactiveAuthenticationManagerFactory.add(
                 authenticationManagers,
                 remoteJWKSets,
                 issuerProperties,
-                enturAuthProperties,
-                authoritiesConverter,
-                healthReportListener);
+                ReactiveAuthenticationManagerOptions.builder()
+                        .enturAuthProperties(enturAuthProperties)
+                        .jwtGrantedAuthoritiesConverter(authoritiesConverter)
+                        .healthReportListener(healthReportListener)
+                        .webClient(webClient)
+                        .metrics(metrics)
+                        .jwksMetrics(jwksMetrics)
+                        .snapshotStore(snapshotStore)
+                        .build());
+
+        var jwkSource = remoteJWKSets.get(0);
+        track(jwkSource);
+        return new IssuerRegistry.Registration<>(
+                authenticationManagers.get(issuerProperties.getIssuerUrl()), jwkSource);
+    }
+
+    private void track(JWKSourceWithIssuer<?> jwkSource) {
+        var jwksReadiness = jwkSource.getJwksReadiness();
+        if (jwksReadiness != null) {
+            jwksReadiness.setChangeListener(this::readinessChanged);
+        }
+    }
+
+    /** Forget rejected tokens, which may have been rejected for an issuer that was not known. */
+    private void issuersChanged() {
+        if (rejectedTokenCache != null) {
+            rejectedTokenCache.invalidateAll();
+        }
+    }
+
+    private void readinessChanged() {
+        readinessListener.run();
+    }
+
+    /** Release the JWK source and authorities of an issuer that is no longer registered. */
+    private void remove(IssuerRegistry.Registration<?> registration) {
+        authoritiesConverter.removeIssuer(registration.jwkSource().getIssuerUrl());
+        close(registration);
+    }
+
+    private static void close(IssuerRegistry.Registration<?> registration) {
+        try {
+            registration.jwkSource().close();
+        } catch (IOException ex) {
+            log.warn(
+                    "Unable to close JWK source: issuerUri = {}",
+                    registration.jwkSource().getIssuerUrl(),
+                    ex);
+        }
     }
 }
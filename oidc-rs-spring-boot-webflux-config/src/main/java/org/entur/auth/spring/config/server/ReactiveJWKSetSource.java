@@ -0,0 +1,471 @@
+package org.entur.auth.spring.config.server;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.RemoteKeySourceException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator;
+import com.nimbusds.jose.jwk.source.JWKSetSource;
+import com.nimbusds.jose.jwk.source.JWKSetSourceWithHealthStatusReporting;
+import com.nimbusds.jose.jwk.source.RateLimitReachedException;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jose.util.health.HealthReport;
+import com.nimbusds.jose.util.health.HealthReportListener;
+import com.nimbusds.jose.util.health.HealthStatus;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.entur.auth.spring.common.metrics.JwksMetrics.IssuerJwksMetrics;
+import org.entur.auth.spring.common.server.JwksReadiness;
+import org.entur.auth.spring.common.server.JwksSnapshotStore;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Non-blocking JWK set source retrieving the JWKS with {@link WebClient}.
+ *
+ * <p>Mirrors the caching, refresh-ahead, rate limiting and outage tolerance of the source built by
+ * {@link com.nimbusds.jose.jwk.source.JWKSourceBuilder}, without ever blocking the calling thread.
+ * Concurrent callers waiting on a retrieval share the same in-flight {@link Mono}.
+ *
+ * <p>Retrievals are conditional on the {@code ETag} and {@code Last-Modified} of the cached JWK
+ * set. A {@code 304 Not Modified} answer extends the cached set without parsing it again. With
+ * {@code cacheControl}, the time to live of a retrieved set follows the {@code Cache-Control:
+ * max-age} of the response, bounded by the minimum time interval and the configured time to live.
+ *
+ * <p>With a {@link JwksSnapshotStore}, the source starts from the snapshot of its issuer, served
+ * until it is older than the maximum snapshot age and refreshed in the background on first use.
+ * Every retrieved JWK set is saved off the event loop.
+ *
+ * <p>The blocking {@link JWKSetSource} methods are kept for health checks and for the startup
+ * retrieval, and must not be called from an event loop.
+ */
+@Slf4j
+final class ReactiveJWKSetSource implements JWKSetSource<SecurityContext> {
+    private static final MediaType JWK_SET_JSON =
+            MediaType.parseMediaType("application/jwk-set+json");
+
+    private final @NonNull WebClient webClient;
+    private final @NonNull String certificateUrl;
+    private final @NonNull Clock clock;
+    private final @NonNull Duration timeToLive;
+    private final @NonNull Duration refreshAheadTime;
+    private final @NonNull Duration minTimeInterval;
+    private final @NonNull Duration timeout;
+    private final boolean retrying;
+    private final boolean outageTolerant;
+    private final boolean cacheControl;
+    private final HealthReportListener<
+                    JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+            healthReportListener;
+    private final JWKSetSourceWithHealthStatusReporting<SecurityContext> healthReportSource;
+    private final IssuerJwksMetrics jwksMetrics;
+    private final JwksReadiness readiness;
+    private final JwksSnapshotStore snapshotStore;
+    private final String issuerUrl;
+
+    private final AtomicReference<CachedJWKSet> cachedJWKSet = new AtomicReference<>();
+    private final AtomicReference<Mono<JWKSet>> inFlight = new AtomicReference<>();
+    private final AtomicReference<Instant> lastRetrieval = new AtomicReference<>(Instant.MIN);
+
+    /**
+     * @param timeToLive how long a retrieved JWK set is used before it expires
+     * @param refreshAheadTime how long before expiry a background refresh starts, zero to disable
+     * @param minTimeInterval minimum time between two retrievals that are not caused by expiry
+     * @param timeout maximum time for one retrieval, connecting and reading included
+     * @param retrying retry a failed retrieval once
+     * @param outageTolerant keep serving the last JWK set when retrieval fails
+     * @param cacheControl derive the time to live of a retrieved JWK set from its {@code
+     *     Cache-Control: max-age}, bounded by {@code minTimeInterval} and {@code timeToLive}
+     * @param jwksMetrics records retrievals, rate limiting, retries and outages, may be {@code null}
+     * @param readiness records the outcome of every retrieval, may be {@code null}
+     * @param snapshotStore starts from a snapshot and saves every retrieved JWK set, may be {@code
+     *     null}, requires a finite {@code timeToLive}
+     * @param issuerUrl the issuer the snapshot belongs to, required with {@code snapshotStore}
+     * @param snapshotMaxAge how old a snapshot may be to be used, required with {@code snapshotStore}
+     */
+    @Builder
+    ReactiveJWKSetSource(
+            final @NonNull WebClient webClient,
+            final @NonNull String certificateUrl,
+            final Clock clock,
+            final @NonNull Duration timeToLive,
+            final @NonNull Duration refreshAheadTime,
+            final @NonNull Duration minTimeInterval,
+            final @NonNull Duration timeout,
+            final boolean retrying,
+            final boolean outageTolerant,
+            final boolean cacheControl,
+            final HealthReportListener<
+                            JWKSetSourceWithHealthStatusReporting<SecurityContext>, SecurityContext>
+                    healthReportListener,
+            final IssuerJwksMetrics jwksMetrics,
+            final JwksReadiness readiness,
+            final JwksSnapshotStore snapshotStore,
+            final String issuerUrl,
+            final Duration snapshotMaxAge) {
+        this.webClient = webClient;
+        this.certificateUrl = certificateUrl;
+        this.clock = clock != null ? clock : Clock.systemUTC();
+        this.timeToLive = timeToLive;
+        this.refreshAheadTime = refreshAheadTime;
+        this.minTimeInterval = minTimeInterval;
+        this.timeout = timeout;
+        this.retrying = retrying;
+        this.outageTolerant = outageTolerant;
+        this.cacheControl = cacheControl;
+        this.healthReportListener = healthReportListener;
+        this.healthReportSource =
+                healthReportListener != null
+                        ? new JWKSetSourceWithHealthStatusReporting<>(this, healthReportListener)
+                        : null;
+        this.jwksMetrics = jwksMetrics;
+        this.readiness = readiness;
+        this.snapshotStore = issuerUrl != null ? snapshotStore : null;
+        this.issuerUrl = issuerUrl;
+
+        var snapshot =
+                this.snapshotStore != null && snapshotMaxAge != null
+                        ? this.snapshotStore.load(issuerUrl, snapshotMaxAge)
+                        : null;
+        if (snapshot != null) {
+            // Served until it is older than the maximum age, and refreshed in the background on first use
+            cachedJWKSet.set(
+                    new CachedJWKSet(
+                            snapshot.jwkSet(),
+                            snapshot.retrievedAt(),
+                            snapshotMaxAge,
+                            refreshAheadTime,
+                            null,
+                            null,
+                            true));
+            if (readiness != null) {
+                readiness.success(snapshot.jwkSet().size());
+            }
+        }
+    }
+
+    /**
+     * Get the JWK set, retrieving it when nothing is cached or the cached set has expired.
+     *
+     * @param forceRefresh retrieve a new JWK set even if the cached one is valid, for instance on an
+     *     unknown key id. Subject to the minimum time interval between retrievals.
+     * @return the JWK set, or a {@link KeySourceException} error if it could not be retrieved, a
+     *     {@link RateLimitReachedException} if nothing is cached and the last retrieval was within
+     *     the minimum time interval
+     */
+    Mono<JWKSet> getJWKSet(final boolean forceRefresh) {
+        return Mono.defer(
+                () -> {
+                    var now = clock.instant();
+                    var cached = cachedJWKSet.get();
+                    if (cached == null) {
+                        if (inFlight.get() == null && isRateLimited(now)) {
+                            if (jwksMetrics != null) {
+                                jwksMetrics.rateLimited();
+                            }
+                            // Nothing to serve, so fail fast instead of hammering an issuer that just failed
+                            return Mono.error(new RateLimitReachedException());
+                        }
+                        return retrieve(now);
+                    }
+
+                    if (cached.isExpired(now)) {
+                        if (inFlight.get() == null && isRateLimited(now)) {
+                            if (jwksMetrics != null) {
+                                jwksMetrics.rateLimited();
+                            }
+                            return outageTolerant
+                                    ? Mono.just(cached.jwkSet())
+                                    : Mono.error(new KeySourceException("Rate limited: JWK set has expired"));
+                        }
+                        return retrieve(now);
+                    }
+
+                    if (forceRefresh) {
+                        if (inFlight.get() != null || !isRateLimited(now)) {
+                            return retrieve(now);
+                        }
+                        if (jwksMetrics != null) {
+                            jwksMetrics.rateLimited();
+                        }
+                    }
+
+                    if ((cached.snapshot()
+                                    || !cached.refreshAheadTime().isZero()
+                                            && cached.isExpired(now.plus(cached.refreshAheadTime())))
+                            && !isRateLimited(now)) {
+                        retrieve(now).subscribe(jwkSet -> {}, ex -> {});
+                    }
+
+                    return Mono.just(cached.jwkSet());
+                });
+    }
+
+    @Override
+    public JWKSet getJWKSet(
+            final JWKSetCacheRefreshEvaluator refreshEvaluator,
+            final long currentTime,
+            final SecurityContext context)
+            throws KeySourceException {
+        var cached = cachedJWKSet.get();
+        var forceRefresh = cached != null && refreshEvaluator.requiresRefresh(cached.jwkSet());
+        try {
+            return getJWKSet(forceRefresh).block();
+        } catch (RuntimeException ex) {
+            if (Exceptions.unwrap(ex) instanceof KeySourceException keySourceException) {
+                throw keySourceException;
+            }
+            throw new KeySourceException(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the WebClient is owned by the application
+    }
+
+    private boolean isRateLimited(final Instant now) {
+        return lastRetrieval.get().plus(minTimeInterval).isAfter(now);
+    }
+
+    /** Start a retrieval, or join the one already in flight. */
+    private Mono<JWKSet> retrieve(final Instant now) {
+        while (true) {
+            var existing = inFlight.get();
+            if (existing != null) {
+                return existing;
+            }
+
+            Sinks.One<JWKSet> sink = Sinks.one();
+            var shared = sink.asMono();
+            if (inFlight.compareAndSet(null, shared)) {
+                lastRetrieval.set(now);
+                load()
+                        .subscribe(
+                                jwkSet -> {
+                                    inFlight.compareAndSet(shared, null);
+                                    sink.tryEmitValue(jwkSet);
+                                },
+                                ex -> {
+                                    inFlight.compareAndSet(shared, null);
+                                    sink.tryEmitError(ex);
+                                });
+                return shared;
+            }
+        }
+    }
+
+    private Mono<JWKSet> load() {
+        var start = clock.instant();
+        var previous = cachedJWKSet.get();
+        var retrieval =
+                webClient
+                        .get()
+                        .uri(certificateUrl)
+                        .accept(MediaType.APPLICATION_JSON, JWK_SET_JSON)
+                        .headers(headers -> conditional(headers, previous))
+                        .exchangeToMono(response -> retrieved(response, previous))
+                        .timeout(timeout);
+        if (retrying) {
+            var retry = retrieval;
+            retrieval =
+                    retrieval.onErrorResume(
+                            ex -> {
+                                if (jwksMetrics != null) {
+                                    jwksMetrics.retried();
+                                }
+                                return retry;
+                            });
+        }
+
+        return retrieval
+                .map(
+                        retrieved -> {
+                            var retrievedAt = clock.instant();
+                            var jwkSet = retrieved.jwkSet();
+                            cachedJWKSet.set(cached(retrieved, retrievedAt));
+                            if (jwksMetrics != null) {
+                                jwksMetrics.refreshed(jwkSet, Duration.between(start, retrievedAt));
+                            }
+                            if (readiness != null) {
+                                readiness.success(jwkSet.size(), Duration.between(start, retrievedAt));
+                            }
+                            report(HealthStatus.HEALTHY, null);
+                            if (snapshotStore != null) {
+                                Mono.fromRunnable(() -> snapshotStore.save(issuerUrl, jwkSet))
+                                        .subscribeOn(Schedulers.boundedElastic())
+                                        .subscribe();
+                            }
+                            return jwkSet;
+                        })
+                .onErrorResume(
+                        ex -> {
+                            var cause = Exceptions.unwrap(ex);
+                            report(HealthStatus.NOT_HEALTHY, cause);
+                            if (readiness != null) {
+                                readiness.failure(Duration.between(start, clock.instant()));
+                            }
+
+                            var cached = cachedJWKSet.get();
+                            if (outageTolerant && cached != null) {
+                                if (jwksMetrics != null) {
+                                    jwksMetrics.outageServed();
+                                }
+                                log.warn(
+                                        "Unable to retrieve JWK set from {}, using cached JWK set: {}",
+                                        certificateUrl,
+                                        cause.getMessage());
+                                return Mono.just(cached.jwkSet());
+                            }
+
+                            return Mono.error(
+                                    new RemoteKeySourceException(
+                                            "Couldn't retrieve JWK set from URL: " + cause.getMessage(), cause));
+                        });
+    }
+
+    private static void conditional(final HttpHeaders headers, final CachedJWKSet previous) {
+        if (previous == null) {
+            return;
+        }
+        if (previous.etag() != null) {
+            headers.set(HttpHeaders.IF_NONE_MATCH, previous.etag());
+        }
+        if (previous.lastModified() != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified());
+        }
+    }
+
+    /** Parse a retrieved JWK set, or reuse the previous one when it has not been modified. */
+    private static Mono<Retrieved> retrieved(
+            final ClientResponse response, final CachedJWKSet previous) {
+        var headers = response.headers().asHttpHeaders();
+        if (response.statusCode().value() == HttpStatus.NOT_MODIFIED.value() && previous != null) {
+            return response
+                    .releaseBody()
+                    .thenReturn(
+                            new Retrieved(
+                                    previous.jwkSet(),
+                                    headers.getETag() != null ? headers.getETag() : previous.etag(),
+                                    previous.lastModified(),
+                                    headers.getCacheControl()));
+        }
+        if (!response.statusCode().is2xxSuccessful()) {
+            return response.createError();
+        }
+
+        return response
+                .bodyToMono(String.class)
+                .switchIfEmpty(Mono.error(new ParseException("Empty JWK set", 0)))
+                .map(
+                        json ->
+                                new Retrieved(
+                                        parse(json),
+                                        headers.getETag(),
+                                        headers.getFirst(HttpHeaders.LAST_MODIFIED),
+                                        headers.getCacheControl()));
+    }
+
+    private CachedJWKSet cached(final Retrieved retrieved, final Instant retrievedAt) {
+        var maxAge = cacheControl ? maxAge(retrieved.cacheControl()) : null;
+        if (maxAge == null) {
+            return new CachedJWKSet(
+                    retrieved.jwkSet(),
+                    retrievedAt,
+                    timeToLive,
+                    refreshAheadTime,
+                    retrieved.etag(),
+                    retrieved.lastModified(),
+                    false);
+        }
+
+        var boundedTimeToLive =
+                maxAge.compareTo(minTimeInterval) < 0
+                        ? minTimeInterval
+                        : maxAge.compareTo(timeToLive) > 0 ? timeToLive : maxAge;
+        var halfTimeToLive = boundedTimeToLive.dividedBy(2);
+        return new CachedJWKSet(
+                retrieved.jwkSet(),
+                retrievedAt,
+                boundedTimeToLive,
+                refreshAheadTime.compareTo(halfTimeToLive) > 0 ? halfTimeToLive : refreshAheadTime,
+                retrieved.etag(),
+                retrieved.lastModified(),
+                false);
+    }
+
+    /**
+     * @return the {@code max-age} of a {@code Cache-Control} header, zero for {@code no-cache} or
+     *     {@code no-store}, {@code null} if it has neither
+     */
+    static Duration maxAge(final String cacheControl) {
+        if (cacheControl == null) {
+            return null;
+        }
+
+        for (String directive : cacheControl.split(",")) {
+            var value = directive.trim().toLowerCase(Locale.ROOT);
+            if (value.equals("no-cache") || value.equals("no-store")) {
+                return Duration.ZERO;
+            }
+            if (value.startsWith("max-age=")) {
+                try {
+                    return Duration.ofSeconds(Long.parseLong(value.substring("max-age=".length())));
+                } catch (NumberFormatException ex) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static JWKSet parse(final String json) {
+        try {
+            return JWKSet.parse(json);
+        } catch (ParseException ex) {
+            throw Exceptions.propagate(ex);
+        }
+    }
+
+    private void report(final HealthStatus status, final Throwable cause) {
+        if (healthReportListener == null) {
+            return;
+        }
+
+        var exception =
+                cause == null || cause instanceof Exception
+                        ? (Exception) cause
+                        : new RuntimeException(cause.getMessage(), cause);
+        healthReportListener.notify(
+                new HealthReport<>(healthReportSource, status, exception, clock.millis(), null));
+    }
+
+    private record Retrieved(
+            @NonNull JWKSet jwkSet, String etag, String lastModified, String cacheControl) {}
+
+    private record CachedJWKSet(
+            @NonNull JWKSet jwkSet,
+            @NonNull Instant retrievedAt,
+            @NonNull Duration timeToLive,
+            @NonNull Duration refreshAheadTime,
+            String etag,
+            String lastModified,
+            boolean snapshot) {
+        boolean isExpired(final Instant now) {
+            return Duration.between(retrievedAt, now).compareTo(timeToLive) >= 0;
+        }
+    }
+}
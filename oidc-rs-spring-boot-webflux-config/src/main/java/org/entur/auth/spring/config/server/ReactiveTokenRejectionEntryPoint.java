@@ -0,0 +1,38 @@
+package org.entur.auth.spring.config.server;
+
+import org.entur.auth.spring.common.server.TokenRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.server.resource.web.server.BearerTokenServerAuthenticationEntryPoint;
+import org.springframework.security.web.server.ServerAuthenticationEntryPoint;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+/**
+ * Answers a rejected token with the {@code WWW-Authenticate} header precomputed for its {@link
+ * org.entur.auth.spring.common.server.TokenRejection}. Other failures are answered by {@link
+ * BearerTokenServerAuthenticationEntryPoint}.
+ */
+public final class ReactiveTokenRejectionEntryPoint implements ServerAuthenticationEntryPoint {
+    private final ServerAuthenticationEntryPoint delegate =
+            new BearerTokenServerAuthenticationEntryPoint();
+
+    @Override
+    public Mono<Void> commence(ServerWebExchange exchange, AuthenticationException ex) {
+        if (ex instanceof TokenRejectedException rejectedException) {
+            return Mono.defer(
+                    () -> {
+                        var response = exchange.getResponse();
+                        response.setStatusCode(HttpStatus.UNAUTHORIZED);
+                        response
+                                .getHeaders()
+                                .set(
+                                        HttpHeaders.WWW_AUTHENTICATE,
+                                        rejectedException.getRejection().getWwwAuthenticate());
+                        return response.setComplete();
+                    });
+        }
+        return delegate.commence(exchange, ex);
+    }
+}
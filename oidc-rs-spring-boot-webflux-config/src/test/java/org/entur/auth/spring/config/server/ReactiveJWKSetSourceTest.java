@@ -0,0 +1,389 @@
+package org.entur.auth.spring.config.server;
+
+import static com.nimbusds.jose.jwk.source.JWKSetCacheRefreshEvaluator.noRefresh;
+import static java.time.Duration.ofSeconds;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.OctetSequenceKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.jwk.source.RateLimitReachedException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.NonNull;
+import lombok.val;
+import org.entur.auth.spring.common.server.JwksSnapshotStore;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+@DisplayName("ReactiveJWKSetSource test suite")
+final class ReactiveJWKSetSourceTest {
+    private static final String ISSUER = "https://partner.dev.entur.org";
+
+    private static @NonNull JWKSet jwkSet(final @NonNull String keyId) {
+        return new JWKSet(
+                new OctetSequenceKey.Builder(keyId.getBytes(StandardCharsets.UTF_8)).keyID(keyId).build());
+    }
+
+    private static @NonNull Mono<ClientResponse> ok(final @NonNull JWKSet jwkSet) {
+        return Mono.just(
+                ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .body(jwkSet.toString(false))
+                        .build());
+    }
+
+    private static @NonNull Mono<ClientResponse> ok(
+            final @NonNull JWKSet jwkSet, final @NonNull String etag, final String cacheControl) {
+        var builder =
+                ClientResponse.create(HttpStatus.OK)
+                        .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .header(HttpHeaders.ETAG, etag);
+        if (cacheControl != null) {
+            builder.header(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+        return Mono.just(builder.body(jwkSet.toString(false)).build());
+    }
+
+    private static @NonNull Mono<ClientResponse> notModified() {
+        return Mono.just(ClientResponse.create(HttpStatus.NOT_MODIFIED).build());
+    }
+
+    private static @NonNull Mono<ClientResponse> serverError() {
+        return Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build());
+    }
+
+    private final @NonNull AtomicReference<Instant> instant = new AtomicReference<>(Instant.now());
+
+    private final @NonNull Clock clock =
+            new Clock() {
+                @Override
+                public ZoneId getZone() {
+                    return null;
+                }
+
+                @Override
+                public Clock withZone(ZoneId zone) {
+                    return null;
+                }
+
+                @Override
+                public Instant instant() {
+                    return instant.get();
+                }
+            };
+
+    private final @NonNull AtomicInteger requests = new AtomicInteger();
+    private final @NonNull AtomicReference<ClientRequest> lastRequest = new AtomicReference<>();
+    private final @NonNull AtomicReference<Mono<ClientResponse>> response =
+            new AtomicReference<>(ok(jwkSet("first")));
+
+    private final @NonNull WebClient webClient =
+            WebClient.builder()
+                    .exchangeFunction(
+                            request -> {
+                                requests.incrementAndGet();
+                                lastRequest.set(request);
+                                return response.get();
+                            })
+                    .build();
+
+    private @NonNull ReactiveJWKSetSource.ReactiveJWKSetSourceBuilder sourceBuilder() {
+        return ReactiveJWKSetSource.builder()
+                .webClient(webClient)
+                .certificateUrl("http://localhost/.well-known/jwks.json")
+                .clock(clock)
+                .timeToLive(ofSeconds(60))
+                .refreshAheadTime(ofSeconds(10))
+                .minTimeInterval(ofSeconds(30))
+                .timeout(ofSeconds(5));
+    }
+
+    private static @NonNull String keyId(final JWKSet jwkSet) {
+        return jwkSet.getKeys().get(0).getKeyID();
+    }
+
+    @Nested
+    @DisplayName("ReactiveJWKSetSource::getJWKSet test suite")
+    class GetJWKSetTests {
+        @Test
+        void should_share_one_retrieval_between_concurrent_callers() {
+            val source = sourceBuilder().build();
+            Sinks.One<ClientResponse> pending = Sinks.one();
+            response.set(pending.asMono());
+
+            val first = new AtomicReference<JWKSet>();
+            val second = new AtomicReference<JWKSet>();
+            source.getJWKSet(false).subscribe(first::set);
+            source.getJWKSet(false).subscribe(second::set);
+            pending.tryEmitValue(ok(jwkSet("first")).block());
+
+            assertThat(requests).hasValue(1);
+            assertThat(first.get()).isNotNull().isSameAs(second.get());
+        }
+
+        @Test
+        void should_use_cached_jwk_set_until_expired() {
+            val source = sourceBuilder().refreshAheadTime(ofSeconds(0)).build();
+
+            source.getJWKSet(false).block();
+            instant.updateAndGet(t -> t.plusSeconds(59));
+            source.getJWKSet(false).block();
+            assertThat(requests).hasValue(1);
+
+            response.set(ok(jwkSet("second")));
+            instant.updateAndGet(t -> t.plusSeconds(1));
+            assertThat(keyId(source.getJWKSet(false).block())).isEqualTo("second");
+            assertThat(requests).hasValue(2);
+        }
+
+        @Test
+        void should_refresh_ahead_of_expiry_in_background() {
+            val source = sourceBuilder().build();
+            source.getJWKSet(false).block();
+
+            response.set(ok(jwkSet("second")));
+            instant.updateAndGet(t -> t.plusSeconds(55));
+            assertThat(keyId(source.getJWKSet(false).block())).isEqualTo("first");
+            assertThat(requests).hasValue(2);
+
+            assertThat(keyId(source.getJWKSet(false).block())).isEqualTo("second");
+            assertThat(requests).hasValue(2);
+        }
+
+        @Test
+        void should_rate_limit_forced_refresh() {
+            val source = sourceBuilder().build();
+            source.getJWKSet(false).block();
+
+            instant.updateAndGet(t -> t.plusSeconds(10));
+            source.getJWKSet(true).block();
+            assertThat(requests).hasValue(1);
+
+            instant.updateAndGet(t -> t.plusSeconds(21));
+            source.getJWKSet(true).block();
+            assertThat(requests).hasValue(2);
+        }
+
+        @Test
+        void should_retry_once_when_retrying() {
+            val source = sourceBuilder().retrying(true).build();
+            response.set(serverError());
+
+            assertThatThrownBy(() -> source.getJWKSet(noRefresh(), 0, null))
+                    .isInstanceOf(KeySourceException.class);
+            assertThat(requests).hasValue(2);
+        }
+    }
+
+    @Nested
+    @DisplayName("ReactiveJWKSetSource conditional retrieval test suite")
+    class ConditionalRetrievalTests {
+        @Test
+        void should_reuse_jwk_set_when_not_modified() {
+            val source = sourceBuilder().refreshAheadTime(ofSeconds(0)).build();
+            response.set(ok(jwkSet("first"), "\"v1\"", null));
+            val first = source.getJWKSet(false).block();
+            assertThat(lastRequest.get().headers().getFirst(HttpHeaders.IF_NONE_MATCH)).isNull();
+
+            response.set(notModified());
+            instant.updateAndGet(t -> t.plusSeconds(60));
+            assertThat(source.getJWKSet(false).block()).isSameAs(first);
+            assertThat(lastRequest.get().headers().getFirst(HttpHeaders.IF_NONE_MATCH))
+                    .isEqualTo("\"v1\"");
+
+            // The cached JWK set is extended from the 304 answer
+            instant.updateAndGet(t -> t.plusSeconds(59));
+            source.getJWKSet(false).block();
+            assertThat(requests).hasValue(2);
+        }
+
+        @Test
+        void should_follow_max_age_within_bounds_when_cache_control() {
+            val source = sourceBuilder().cacheControl(true).build();
+            response.set(ok(jwkSet("first"), "\"v1\"", "public, max-age=40"));
+            source.getJWKSet(false).block();
+
+            // The JWK set expires after max-age rather than the time to live
+            instant.updateAndGet(t -> t.plusSeconds(29));
+            source.getJWKSet(false).block();
+            assertThat(requests).hasValue(1);
+
+            response.set(ok(jwkSet("second"), "\"v2\"", "max-age=3600"));
+            instant.updateAndGet(t -> t.plusSeconds(11));
+            assertThat(keyId(source.getJWKSet(false).block())).isEqualTo("second");
+            assertThat(requests).hasValue(2);
+
+            // max-age is bounded by the time to live
+            instant.updateAndGet(t -> t.plusSeconds(49));
+            source.getJWKSet(false).block();
+            assertThat(requests).hasValue(2);
+        }
+
+        @Test
+        void should_ignore_max_age_without_cache_control() {
+            val source = sourceBuilder().refreshAheadTime(ofSeconds(0)).build();
+            response.set(ok(jwkSet("first"), "\"v1\"", "max-age=0"));
+            source.getJWKSet(false).block();
+
+            instant.updateAndGet(t -> t.plusSeconds(59));
+            source.getJWKSet(false).block();
+            assertThat(requests).hasValue(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("ReactiveJWKSetSource snapshot test suite")
+    class SnapshotTests {
+        @TempDir private Path directory;
+
+        /** Wait for the retrieved JWK set to replace the snapshot, saved off the calling thread. */
+        private void awaitSaved(final @NonNull JwksSnapshotStore store) {
+            long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (System.nanoTime() < until) {
+                var snapshot = store.load(ISSUER, ofSeconds(3600));
+                if (snapshot != null && snapshot.jwkSet().getKeyByKeyId("snapshot") == null) {
+                    return;
+                }
+                Thread.onSpinWait();
+            }
+            fail("Snapshot not saved");
+        }
+
+        @Test
+        void should_start_from_snapshot_and_refresh_it() throws JOSEException {
+            val store = new JwksSnapshotStore(directory, clock);
+            store.save(ISSUER, new JWKSet(new RSAKeyGenerator(2048).keyID("snapshot").generate()));
+
+            val source =
+                    sourceBuilder()
+                            .snapshotStore(store)
+                            .issuerUrl(ISSUER)
+                            .snapshotMaxAge(ofSeconds(3600))
+                            .build();
+
+            assertThat(keyId(source.getJWKSet(false).block())).isEqualTo("snapshot");
+            assertThat(requests).hasValue(1);
+            assertThat(keyId(source.getJWKSet(false).block())).isEqualTo("first");
+            awaitSaved(store);
+        }
+
+        @Test
+        void should_refresh_snapshot_in_background_without_refresh_ahead() throws JOSEException {
+            val store = new JwksSnapshotStore(directory, clock);
+            store.save(ISSUER, new JWKSet(new RSAKeyGenerator(2048).keyID("snapshot").generate()));
+            instant.updateAndGet(t -> t.plusSeconds(120));
+            Sinks.One<ClientResponse> pending = Sinks.one();
+            response.set(pending.asMono());
+
+            val source =
+                    sourceBuilder()
+                            .refreshAheadTime(ofSeconds(0))
+                            .snapshotStore(store)
+                            .issuerUrl(ISSUER)
+                            .snapshotMaxAge(ofSeconds(3600))
+                            .build();
+
+            // Older than the time to live, but served while the refresh is in flight
+            assertThat(keyId(source.getJWKSet(false).block())).isEqualTo("snapshot");
+            assertThat(requests).hasValue(1);
+
+            pending.tryEmitValue(ok(jwkSet("first")).block());
+            assertThat(keyId(source.getJWKSet(false).block())).isEqualTo("first");
+            assertThat(requests).hasValue(1);
+            awaitSaved(store);
+        }
+
+        @Test
+        void should_ignore_snapshot_older_than_max_age() throws JOSEException {
+            val store = new JwksSnapshotStore(directory, clock);
+            store.save(ISSUER, new JWKSet(new RSAKeyGenerator(2048).keyID("snapshot").generate()));
+            instant.updateAndGet(t -> t.plusSeconds(3601));
+
+            val source =
+                    sourceBuilder()
+                            .snapshotStore(store)
+                            .issuerUrl(ISSUER)
+                            .snapshotMaxAge(ofSeconds(3600))
+                            .build();
+
+            assertThat(keyId(source.getJWKSet(false).block())).isEqualTo("first");
+            awaitSaved(store);
+        }
+    }
+
+    @Nested
+    @DisplayName("ReactiveJWKSetSource outage test suite")
+    class OutageTests {
+        @Test
+        void should_use_cached_jwk_set_when_outage_tolerant() throws KeySourceException {
+            val source = sourceBuilder().outageTolerant(true).build();
+            source.getJWKSet(false).block();
+
+            response.set(serverError());
+            instant.updateAndGet(t -> t.plusSeconds(61));
+
+            assertThat(keyId(source.getJWKSet(noRefresh(), 0, null))).isEqualTo("first");
+            assertThat(requests).hasValue(2);
+        }
+
+        @Test
+        void should_fail_when_not_outage_tolerant() {
+            val source = sourceBuilder().outageTolerant(false).build();
+            source.getJWKSet(false).block();
+
+            response.set(serverError());
+            instant.updateAndGet(t -> t.plusSeconds(61));
+
+            assertThatThrownBy(() -> source.getJWKSet(noRefresh(), 0, null))
+                    .isInstanceOf(KeySourceException.class);
+        }
+
+        @Test
+        void should_fail_without_cached_jwk_set() {
+            val source = sourceBuilder().outageTolerant(true).build();
+            response.set(serverError());
+
+            assertThatThrownBy(() -> source.getJWKSet(noRefresh(), 0, null))
+                    .isInstanceOf(KeySourceException.class);
+        }
+
+        @Test
+        void should_rate_limit_retrieval_without_cached_jwk_set() {
+            val source = sourceBuilder().build();
+            response.set(serverError());
+            assertThatThrownBy(() -> source.getJWKSet(noRefresh(), 0, null))
+                    .isInstanceOf(KeySourceException.class);
+
+            response.set(ok(jwkSet("first")));
+            instant.updateAndGet(t -> t.plusSeconds(10));
+            assertThatThrownBy(() -> source.getJWKSet(noRefresh(), 0, null))
+                    .isInstanceOf(RateLimitReachedException.class);
+            assertThat(requests).hasValue(1);
+
+            instant.updateAndGet(t -> t.plusSeconds(20));
+            assertThat(keyId(source.getJWKSet(false).block())).isEqualTo("first");
+            assertThat(requests).hasValue(2);
+        }
+    }
+}